@@ -0,0 +1,233 @@
+package bench;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Accès aux méthodes mesurées du programme depuis les bancs d'essai.
+ * <p>JMH refuse les bancs d'essai du paquet par défaut, et une classe d'un paquet nommé ne peut pas importer les classes du
+ * programme, qui sont toutes dans le paquet par défaut. Chaque méthode mesurée est donc résolue une seule fois en
+ * <code>MethodHandle</code> constant, que le compilateur JIT traite comme un appel direct. Les arbres ({@code BinTree}) et les
+ * noeuds ({@code Node}) sont manipulés comme des <code>Object</code>.</p>
+ */
+final class Pipeline {
+
+	private static final MethodHandle DISTANCE;
+	private static final MethodHandle MATRICE_DISTANCE;
+	private static final MethodHandle NEIGHBOR_JOINING;
+	private static final MethodHandle FROM_NEWICK_TO_TREE;
+	private static final MethodHandle LIRE_NEWICK;
+	private static final MethodHandle TO_NEWICK_DIST;
+	private static final MethodHandle SET_SEQ_TO_LEAVES;
+	private static final MethodHandle RF;
+	private static final MethodHandle MID_POINT;
+	private static final MethodHandle REMOVE_GAPS;
+	private static final MethodHandle GET_PROTEINS;
+	private static final MethodHandle LIRE_SEQUENCES;
+	private static final MethodHandle GET_ARBRES;
+	private static final MethodHandle GET_BLOSUM;
+
+	/* Les deux valeurs de NJEngine.Recherche */
+	private static final Object COMPLETE;
+	private static final Object BORNEE;
+
+	static {
+		try {
+			MethodHandles.Lookup lookup = MethodHandles.lookup();
+			Class<?> programme = Class.forName("PhylogenyNeighborJoining");
+			Class<?> binTree = Class.forName("BinTree");
+			Class<?> njEngine = Class.forName("NJEngine");
+			Class<?> recherche = Class.forName("NJEngine$Recherche");
+
+			DISTANCE = lookup.findStatic(programme, "distance",
+					MethodType.methodType(double.class, double[][].class, HashMap.class, String.class, String.class));
+			MATRICE_DISTANCE = lookup.findStatic(programme, "matriceDistance",
+					MethodType.methodType(Object[].class, binTree, double[][].class, HashMap.class))
+					.asType(MethodType.methodType(Object[].class, Object.class, double[][].class, HashMap.class));
+			NEIGHBOR_JOINING = lookup.findStatic(njEngine, "neighborJoining",
+					MethodType.methodType(binTree, double[][].class, HashMap.class, recherche, ForkJoinPool.class))
+					.asType(MethodType.methodType(Object.class, double[][].class, HashMap.class, Object.class, ForkJoinPool.class));
+			FROM_NEWICK_TO_TREE = lookup.findStatic(binTree, "fromNewickToTree", MethodType.methodType(binTree, String.class))
+					.asType(MethodType.methodType(Object.class, String.class));
+			LIRE_NEWICK = lookup.findStatic(Class.forName("NewickReader"), "lire", MethodType.methodType(binTree, String.class))
+					.asType(MethodType.methodType(Object.class, String.class));
+			TO_NEWICK_DIST = lookup.findVirtual(binTree, "toNewickDist", MethodType.methodType(String.class))
+					.asType(MethodType.methodType(String.class, Object.class));
+			SET_SEQ_TO_LEAVES = lookup.findVirtual(binTree, "setSeqToLeaves", MethodType.methodType(void.class, HashMap.class))
+					.asType(MethodType.methodType(void.class, Object.class, HashMap.class));
+			RF = lookup.findVirtual(binTree, "rf", MethodType.methodType(double.class, binTree))
+					.asType(MethodType.methodType(double.class, Object.class, Object.class));
+			MID_POINT = lookup.findVirtual(binTree, "midPoint", MethodType.methodType(void.class))
+					.asType(MethodType.methodType(void.class, Object.class));
+			REMOVE_GAPS = lookup.findStatic(programme, "removeGaps", MethodType.methodType(HashMap.class, HashMap.class));
+			GET_PROTEINS = lookup.findStatic(programme, "getProteins",
+					MethodType.methodType(HashMap.class, HashMap.class, String.class));
+			LIRE_SEQUENCES = lookup.findStatic(Class.forName("FastaReader"), "lireSequences",
+					MethodType.methodType(Class.forName("FastaReader$Enregistrements"), HashMap.class, String.class, ForkJoinPool.class))
+					.asType(MethodType.methodType(Object.class, HashMap.class, String.class, ForkJoinPool.class));
+			GET_ARBRES = lookup.findStatic(programme, "getArbres", MethodType.methodType(ArrayList.class, String.class));
+			GET_BLOSUM = lookup.findStatic(programme, "getBlosum", MethodType.methodType(Object[].class, String.class));
+
+			COMPLETE = recherche.getField("COMPLETE").get(null);
+			BORNEE = recherche.getField("BORNEE").get(null);
+		}
+		catch (ReflectiveOperationException e) {
+			throw new ExceptionInInitializerError(e);
+		}
+	}
+
+	private Pipeline() {
+	}
+
+	static double distance(double[][] matriceMutations, HashMap<String, Integer> tableIndex, String seq1, String seq2) {
+		try {
+			return (double) DISTANCE.invokeExact(matriceMutations, tableIndex, seq1, seq2);
+		}
+		catch (Throwable e) {
+			throw relancer(e);
+		}
+	}
+
+	static Object[] matriceDistance(Object tree, double[][] matriceMutations, HashMap<String, Integer> tableIndex) {
+		try {
+			return (Object[]) MATRICE_DISTANCE.invokeExact(tree, matriceMutations, tableIndex);
+		}
+		catch (Throwable e) {
+			throw relancer(e);
+		}
+	}
+
+	/**
+	 * Algorithme NJ en place et séquentiel, avec la recherche complète ou bornée de la paire minimale.
+	 */
+	static Object neighborJoining(double[][] matriceDistance, HashMap<Integer, Object> tableNoeud, boolean bornee) {
+		try {
+			return (Object) NEIGHBOR_JOINING.invokeExact(matriceDistance, tableNoeud, bornee ? BORNEE : COMPLETE, (ForkJoinPool) null);
+		}
+		catch (Throwable e) {
+			throw relancer(e);
+		}
+	}
+
+	static Object fromNewickToTree(String newickTree) {
+		try {
+			return (Object) FROM_NEWICK_TO_TREE.invokeExact(newickTree);
+		}
+		catch (Throwable e) {
+			throw relancer(e);
+		}
+	}
+
+	/**
+	 * Lire un arbre avec ses longueurs d'arêtes, que {@code BinTree.fromNewickToTree} ignore.
+	 */
+	static Object lireNewick(String newickTree) {
+		try {
+			return (Object) LIRE_NEWICK.invokeExact(newickTree);
+		}
+		catch (Throwable e) {
+			throw relancer(e);
+		}
+	}
+
+	static String toNewickDist(Object tree) {
+		try {
+			return (String) TO_NEWICK_DIST.invokeExact(tree);
+		}
+		catch (Throwable e) {
+			throw relancer(e);
+		}
+	}
+
+	static void setSeqToLeaves(Object tree, HashMap<String, String> proteins) {
+		try {
+			SET_SEQ_TO_LEAVES.invokeExact(tree, proteins);
+		}
+		catch (Throwable e) {
+			throw relancer(e);
+		}
+	}
+
+	static double rf(Object tree, Object t2) {
+		try {
+			return (double) RF.invokeExact(tree, t2);
+		}
+		catch (Throwable e) {
+			throw relancer(e);
+		}
+	}
+
+	static void midPoint(Object tree) {
+		try {
+			MID_POINT.invokeExact(tree);
+		}
+		catch (Throwable e) {
+			throw relancer(e);
+		}
+	}
+
+	static HashMap<String, String> removeGaps(HashMap<String, String> proteins) {
+		try {
+			return (HashMap<String, String>) REMOVE_GAPS.invokeExact(proteins);
+		}
+		catch (Throwable e) {
+			throw relancer(e);
+		}
+	}
+
+	static HashMap<String, String> getProteins(HashMap<String, Integer> tableIndex, String file) {
+		try {
+			return (HashMap<String, String>) GET_PROTEINS.invokeExact(tableIndex, file);
+		}
+		catch (Throwable e) {
+			throw relancer(e);
+		}
+	}
+
+	/**
+	 * Lire un fichier "*.fa" en séquences encodées et filtrées des gaps, comme le programme ({@code FastaReader.lireSequences}),
+	 * séquentiellement.
+	 */
+	static Object lireSequences(HashMap<String, Integer> tableIndex, String file) {
+		try {
+			return (Object) LIRE_SEQUENCES.invokeExact(tableIndex, file, (ForkJoinPool) null);
+		}
+		catch (Throwable e) {
+			throw relancer(e);
+		}
+	}
+
+	/**
+	 * Lire tous les arbres d'un fichier "*.nw" comme le programme: fichier projeté en mémoire et {@code NewickReader}.
+	 */
+	static ArrayList<Object> getArbres(String file) {
+		try {
+			return (ArrayList<Object>) GET_ARBRES.invokeExact(file);
+		}
+		catch (Throwable e) {
+			throw relancer(e);
+		}
+	}
+
+	static Object[] getBlosum(String file) {
+		try {
+			return (Object[]) GET_BLOSUM.invokeExact(file);
+		}
+		catch (Throwable e) {
+			throw relancer(e);
+		}
+	}
+
+	/* Les méthodes mesurées ne lèvent que des exceptions non vérifiées */
+	private static RuntimeException relancer(Throwable e) {
+		if (e instanceof RuntimeException)
+			return (RuntimeException) e;
+		if (e instanceof Error)
+			throw (Error) e;
+		return new IllegalStateException(e);
+	}
+}
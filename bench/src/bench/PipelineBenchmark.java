@@ -0,0 +1,199 @@
+package bench;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Bancs d'essai JMH des étapes coûteuses du programme: lecture des fichiers, construction des arbres, matrice des distances,
+ * algorithme NJ, distance RF et enracinement par mid-point.
+ * <p>Les données sont générées par {@link SyntheticData} à partir de la graine: deux exécutions avec les mêmes paramètres
+ * mesurent exactement les mêmes entrées. La matrice BLOSUM est lue dans le fichier donné par le paramètre
+ * <code>blosum</code> (BLOSUM62.txt du dépôt par défaut, les bancs d'essai étant lancés depuis la racine du dépôt).</p>
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PipelineBenchmark {
+
+	/**
+	 * Les données partagées par les bancs d'essai, générées une seule fois pour chaque combinaison de paramètres.
+	 */
+	@State(Scope.Benchmark)
+	public static class Donnees {
+
+		/* Nombre de protéines, donc de feuilles des arbres */
+		@Param({"64", "256", "1024"})
+		public int feuilles;
+
+		/* Longueur des séquences alignées, gaps compris */
+		@Param({"400"})
+		public int longueur;
+
+		@Param({"42"})
+		public long graine;
+
+		@Param({"BLOSUM62.txt"})
+		public String blosum;
+
+		HashMap<String, Integer> tableIndex;
+		double[][] matriceMutations;
+
+		/* L'alignement avec ses gaps, en mémoire et dans un fichier "*.fa" temporaire */
+		HashMap<String, String> alignement;
+		Path fasta;
+
+		/* Deux séquences filtrées des gaps */
+		String seq1;
+		String seq2;
+
+		/* Un arbre aléatoire, et un deuxième sur les mêmes protéines pour RF */
+		String newick;
+		Object arbre;
+		Object autreArbre;
+
+		/* Le premier arbre dans un fichier "*.nw" temporaire */
+		Path arbres;
+
+		/* Le même arbre avec les séquences filtrées aux feuilles, pour la matrice des distances */
+		Object arbreSequences;
+
+		/* La matrice des distances et la table des noeuds d'un arbre réservé à NJ, l'algorithme rattachant ses feuilles */
+		double[][] distances;
+		HashMap<Integer, Object> tableNoeuds;
+
+		/* L'arbre NJ avec ses longueurs d'arêtes, à enraciner */
+		String newickNJ;
+
+		@Setup(Level.Trial)
+		@SuppressWarnings("unchecked")
+		public void generer() throws IOException {
+			Object[] resultat = Pipeline.getBlosum(this.blosum);
+			this.tableIndex = (HashMap<String, Integer>) resultat[0];
+			this.matriceMutations = (double[][]) resultat[1];
+
+			Random aleatoire = new Random(this.graine);
+			ArrayList<String> noms = SyntheticData.noms(this.feuilles);
+			this.alignement = new HashMap<String, String>(SyntheticData.alignement(noms, this.longueur, 0.3, aleatoire));
+			this.fasta = SyntheticData.ecrireFasta(this.alignement);
+			HashMap<String, String> proteins = Pipeline.removeGaps(new HashMap<String, String>(this.alignement));
+			this.seq1 = proteins.get(noms.get(0));
+			this.seq2 = proteins.get(noms.get(1));
+
+			this.newick = SyntheticData.arbre(noms, aleatoire);
+			this.arbres = SyntheticData.ecrireArbres(Collections.singletonList(this.newick));
+			this.arbre = Pipeline.fromNewickToTree(this.newick);
+			this.autreArbre = Pipeline.fromNewickToTree(SyntheticData.arbre(noms, aleatoire));
+
+			this.arbreSequences = Pipeline.fromNewickToTree(this.newick);
+			Pipeline.setSeqToLeaves(this.arbreSequences, proteins);
+
+			Object arbreNJ = Pipeline.fromNewickToTree(this.newick);
+			Pipeline.setSeqToLeaves(arbreNJ, proteins);
+			Object[] objets = Pipeline.matriceDistance(arbreNJ, this.matriceMutations, this.tableIndex);
+			this.tableNoeuds = (HashMap<Integer, Object>) objets[0];
+			this.distances = (double[][]) objets[1];
+
+			this.newickNJ = Pipeline.toNewickDist(Pipeline.neighborJoining(copie(this.distances), new HashMap<Integer, Object>(this.tableNoeuds), false));
+		}
+
+		@TearDown(Level.Trial)
+		public void nettoyer() throws IOException {
+			Files.deleteIfExists(this.fasta);
+			Files.deleteIfExists(this.arbres);
+		}
+	}
+
+	/**
+	 * Un arbre NJ neuf pour chaque appel, {@code BinTree.midPoint} modifiant l'arbre en place.
+	 */
+	@State(Scope.Thread)
+	public static class Enracinement {
+		Object arbre;
+
+		@Setup(Level.Invocation)
+		public void preparer(Donnees donnees) {
+			this.arbre = Pipeline.lireNewick(donnees.newickNJ);
+		}
+	}
+
+	@Benchmark
+	public double distance(Donnees donnees) {
+		return Pipeline.distance(donnees.matriceMutations, donnees.tableIndex, donnees.seq1, donnees.seq2);
+	}
+
+	@Benchmark
+	public Object[] matriceDistance(Donnees donnees) {
+		return Pipeline.matriceDistance(donnees.arbreSequences, donnees.matriceMutations, donnees.tableIndex);
+	}
+
+	/* NJ modifie en place la matrice et la table: la copie, quadratique, est mesurée avec l'algorithme, cubique. */
+	@Benchmark
+	public Object neighborJoiningComplete(Donnees donnees) {
+		return Pipeline.neighborJoining(copie(donnees.distances), new HashMap<Integer, Object>(donnees.tableNoeuds), false);
+	}
+
+	@Benchmark
+	public Object neighborJoiningBornee(Donnees donnees) {
+		return Pipeline.neighborJoining(copie(donnees.distances), new HashMap<Integer, Object>(donnees.tableNoeuds), true);
+	}
+
+	/* Lecture d'origine d'une chaîne de Newick, gardée comme référence pour lireNewick et getArbres. */
+	@Benchmark
+	public Object fromNewickToTree(Donnees donnees) {
+		return Pipeline.fromNewickToTree(donnees.newick);
+	}
+
+	@Benchmark
+	public Object lireNewick(Donnees donnees) {
+		return Pipeline.lireNewick(donnees.newick);
+	}
+
+	/* La lecture du fichier "*.nw" faite par le programme */
+	@Benchmark
+	public ArrayList<Object> getArbres(Donnees donnees) {
+		return Pipeline.getArbres(donnees.arbres.toString());
+	}
+
+	@Benchmark
+	public double rf(Donnees donnees) {
+		return Pipeline.rf(donnees.arbre, donnees.autreArbre);
+	}
+
+	/* removeGaps modifie la map reçue: on lui donne une copie de l'alignement. */
+	@Benchmark
+	public HashMap<String, String> removeGaps(Donnees donnees) {
+		return Pipeline.removeGaps(new HashMap<String, String>(donnees.alignement));
+	}
+
+	/* Lecture d'origine du fichier "*.fa", gardée comme référence pour lireSequences. */
+	@Benchmark
+	public HashMap<String, String> getProteins(Donnees donnees) {
+		return Pipeline.getProteins(donnees.tableIndex, donnees.fasta.toString());
+	}
+
+	/* La lecture du fichier "*.fa" faite par le programme: séquences encodées et filtrées des gaps */
+	@Benchmark
+	public Object lireSequences(Donnees donnees) {
+		return Pipeline.lireSequences(donnees.tableIndex, donnees.fasta.toString());
+	}
+
+	@Benchmark
+	public Object midPoint(Enracinement enracinement) {
+		Pipeline.midPoint(enracinement.arbre);
+		return enracinement.arbre;
+	}
+
+	private static double[][] copie(double[][] matrice) {
+		double[][] copie = new double[matrice.length][];
+		for (int i = 0; i < matrice.length; i++)
+			copie[i] = matrice[i].clone();
+		return copie;
+	}
+}
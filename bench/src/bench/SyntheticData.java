@@ -0,0 +1,123 @@
+package bench;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+
+/**
+ * Générateur de données synthétiques pour les bancs d'essai: un alignement de protéines et un arbre Newick sur les mêmes
+ * protéines, entièrement déterminés par la graine du <code>Random</code> utilisé.
+ */
+final class SyntheticData {
+
+	/* Les 20 acides aminés standards, tous présents dans BLOSUM62.txt */
+	static final String ACIDES = "ARNDCQEGHILKMFPSTWYV";
+
+	/* Les colonnes de l'alignement qui peuvent contenir des gaps, et la probabilité d'un gap dans une de ces colonnes */
+	private static final double COLONNES_GAP = 0.1;
+	private static final double GAP = 0.3;
+
+	private SyntheticData() {
+	}
+
+	/**
+	 * @return les noms des protéines: P0000, P0001, ...
+	 */
+	static ArrayList<String> noms(int nb) {
+		ArrayList<String> noms = new ArrayList<String>(nb);
+		for (int i = 0; i < nb; i++)
+			noms.add(String.format("P%04d", i));
+		return noms;
+	}
+
+	/**
+	 * Générer un alignement: chaque protéine dérive d'une même séquence ancêtre aléatoire, chaque acide aminé étant remplacé
+	 * avec la probabilité <code>mutation</code>. Environ 10% des colonnes contiennent des gaps, qui sont enlevés par
+	 * {@code PhylogenyNeighborJoining.removeGaps}: les autres colonnes restent pour le calcul des distances.
+	 *
+	 * @return une map qui à une protéine associe sa séquence alignée, dans l'ordre des noms.
+	 */
+	static LinkedHashMap<String, String> alignement(List<String> noms, int longueur, double mutation, Random aleatoire) {
+		char[] ancetre = new char[longueur];
+		boolean[] colonnesGap = new boolean[longueur];
+		for (int i = 0; i < longueur; i++) {
+			ancetre[i] = ACIDES.charAt(aleatoire.nextInt(ACIDES.length()));
+			colonnesGap[i] = aleatoire.nextDouble() < COLONNES_GAP;
+		}
+
+		LinkedHashMap<String, String> alignement = new LinkedHashMap<String, String>();
+		char[] seq = new char[longueur];
+		for (String nom : noms) {
+			for (int i = 0; i < longueur; i++) {
+				if (colonnesGap[i] && aleatoire.nextDouble() < GAP)
+					seq[i] = '-';
+				else if (aleatoire.nextDouble() < mutation)
+					seq[i] = ACIDES.charAt(aleatoire.nextInt(ACIDES.length()));
+				else
+					seq[i] = ancetre[i];
+			}
+			alignement.put(nom, new String(seq));
+		}
+		return alignement;
+	}
+
+	/**
+	 * Générer un arbre binaire aléatoire sans longueurs d'arêtes, comme ceux de arbres.nw: on réunit deux sous-arbres choisis
+	 * au hasard jusqu'à n'en avoir plus qu'un.
+	 *
+	 * @return la chaîne Newick de l'arbre
+	 */
+	static String arbre(List<String> noms, Random aleatoire) {
+		ArrayList<String> sousArbres = new ArrayList<String>(noms);
+		while (sousArbres.size() > 1) {
+			String a = retirer(sousArbres, aleatoire.nextInt(sousArbres.size()));
+			String b = retirer(sousArbres, aleatoire.nextInt(sousArbres.size()));
+			sousArbres.add("(" + a + "," + b + ")");
+		}
+		return sousArbres.get(0) + ";";
+	}
+
+	/**
+	 * Écrire un alignement dans un fichier temporaire "*.fa", les séquences étant coupées en lignes de 60 caractères comme
+	 * dans proteines.fa.
+	 *
+	 * @return le chemin du fichier, à supprimer par l'appelant
+	 */
+	static Path ecrireFasta(Map<String, String> alignement) throws IOException {
+		Path fichier = Files.createTempFile("proteines", ".fa");
+		try (BufferedWriter ecrivain = Files.newBufferedWriter(fichier, StandardCharsets.UTF_8)) {
+			for (Map.Entry<String, String> entree : alignement.entrySet()) {
+				ecrivain.write(">" + entree.getKey());
+				ecrivain.newLine();
+				String seq = entree.getValue();
+				for (int i = 0; i < seq.length(); i += 60) {
+					ecrivain.write(seq, i, Math.min(60, seq.length() - i));
+					ecrivain.newLine();
+				}
+			}
+		}
+		return fichier;
+	}
+
+	/**
+	 * Écrire des arbres dans un fichier temporaire "*.nw", un arbre par ligne comme dans arbres.nw.
+	 *
+	 * @return le chemin du fichier, à supprimer par l'appelant
+	 */
+	static Path ecrireArbres(List<String> arbres) throws IOException {
+		Path fichier = Files.createTempFile("arbres", ".nw");
+		Files.write(fichier, arbres, StandardCharsets.UTF_8);
+		return fichier;
+	}
+
+	/* Retirer un élément en temps constant, l'ordre de la liste important peu */
+	private static String retirer(ArrayList<String> liste, int i) {
+		String element = liste.get(i);
+		liste.set(i, liste.get(liste.size() - 1));
+		liste.remove(liste.size() - 1);
+		return element;
+	}
+}
@@ -0,0 +1,61 @@
+import jdk.incubator.vector.*;
+
+/**
+ * Noyau de score SIMD basé sur l'API Vector (<code>jdk.incubator.vector</code>) pour {@link EncodedAlignment}.
+ * <p>Pour chaque bloc de colonnes, les acides aminés encodés des deux séquences sont chargés en octets puis convertis en
+ * entiers, l'index <code>a * taille + b</code> de chaque colonne est calculé en une instruction et les coûts sont lus dans la
+ * matrice de mutations aplatie par une lecture groupée (<i>gather</i>). Les coûts sont accumulés en entiers par voie, puis
+ * reportés dans un <code>long</code> assez souvent pour qu'aucune voie ne puisse déborder: la somme obtenue est exactement
+ * celle du noyau scalaire.</p>
+ * <p>Cette classe ne doit être chargée que par {@link EncodedAlignment#noyauVectoriel()}, qui revient au calcul scalaire si le
+ * module n'est pas disponible. Elle est dans sa propre racine de sources (<code>simd/src</code>), compilée à part avec l'option
+ * <code>--add-modules jdk.incubator.vector</code>, pour que les sources de <code>src</code> se compilent sans ce module. L'exécution
+ * demande la même option.</p>
+ */
+public class VectorKernel implements EncodedAlignment.Noyau {
+
+	private static final VectorSpecies<Integer> ENTIERS = IntVector.SPECIES_PREFERRED;
+
+	/* Les octets d'un bloc de colonnes: autant de voies que pour les entiers, sur une forme 4 fois plus petite. */
+	private static final VectorSpecies<Byte> OCTETS = VectorSpecies.of(byte.class, VectorShape.forBitSize(ENTIERS.length() * 8));
+
+	/* Nombre de blocs accumulés en entiers avant de reporter la somme dans un long. Un coût de la matrice est inférieur à 2^20
+	 * en valeur absolue (voir EncodedAlignment), une voie reste donc sous 2^31. */
+	private static final int BLOCS_PAR_REPORT = 1 << 10;
+
+	/**
+	 * Construit le noyau.
+	 *
+	 * @throws UnsupportedOperationException si la plateforme n'a pas de vecteurs d'au moins 8 entiers.
+	 */
+	public VectorKernel() {
+		if (ENTIERS.length() < 8)
+			throw new UnsupportedOperationException("Les vecteurs de " + ENTIERS + " sont trop petits.");
+	}
+
+	@Override
+	public long scoreEntier(int[] matrice, int taille, byte[] seq1, byte[] seq2) {
+		int voies = ENTIERS.length();
+		int[] index = new int[voies];
+		int limite = seq1.length - seq1.length % voies;
+		long p = 0;
+		int c = 0;
+
+		while (c < limite) {
+			IntVector somme = IntVector.zero(ENTIERS);
+			int finReport = Math.min(limite, c + BLOCS_PAR_REPORT * voies);
+			for (; c < finReport; c += voies) {
+				IntVector a = (IntVector) ByteVector.fromArray(OCTETS, seq1, c).convertShape(VectorOperators.B2I, ENTIERS, 0);
+				IntVector b = (IntVector) ByteVector.fromArray(OCTETS, seq2, c).convertShape(VectorOperators.B2I, ENTIERS, 0);
+				a.mul(taille).add(b).intoArray(index, 0);
+				somme = somme.add(IntVector.fromArray(ENTIERS, matrice, 0, index, 0));
+			}
+			p += somme.reduceLanesToLong(VectorOperators.ADD);
+		}
+
+		/* Les dernières colonnes, moins nombreuses qu'un bloc */
+		for (; c < seq1.length; c++)
+			p += matrice[seq1[c] * taille + seq2[c]];
+		return p;
+	}
+}
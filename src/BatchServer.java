@@ -0,0 +1,306 @@
+import java.io.*;
+import java.net.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Mode serveur: une seule machine virtuelle exécute une suite de tâches, chacune équivalente à une exécution de
+ * {@link PhylogenyNeighborJoining#main(String[])}. Le démarrage de la machine virtuelle, le chargement des classes et la
+ * compilation JIT ne sont payés qu'une fois pour toutes les tâches.
+ * <p>Les tâches sont lues ligne par ligne sur l'entrée standard, ou sur les connexions d'un port local avec l'option
+ * <code>--port=P</code> (adresse de bouclage seulement). Une ligne contient l'identifiant de la tâche, choisi par le client,
+ * puis les arguments de la ligne de commande:</p>
+ * <pre>
+ * famille42 arbres.nw proteines.fa BLOSUM62.txt --threads=2
+ * </pre>
+ * <p>Les champs sont séparés par des espaces ou des tabulations; un champ qui contient des espaces s'écrit entre guillemets.
+ * Les lignes vides et celles qui commencent par "#" sont ignorées, et la ligne "quitter" termine la lecture. La réponse à une
+ * tâche est un bloc: une ligne d'en-tête "identifiant OK n" ou "identifiant ERREUR n", suivie des n lignes de l'affichage de la
+ * tâche ou du message d'erreur. L'avancement ("--progression") et le rapport ("--rapport" sans fichier), écrits sur la sortie
+ * d'erreur en ligne de commande, font partie de l'affichage de la tâche. Les tâches s'exécutent en même temps: les blocs
+ * arrivent dans l'ordre de fin des tâches, mais ne sont jamais entremêlés.</p>
+ * <ol>
+ * 		<li>Au plus <code>--travaux=N</code> tâches s'exécutent en même temps (par défaut le nombre de processeurs), et au plus
+ * 			2N tâches sont acceptées sans être terminées: au-delà, la lecture des lignes attend.</li>
+ * 		<li>Les matrices BLOSUM lues sont gardées en mémoire, par chemin de fichier, tant que la date de modification et la taille
+ * 			du fichier ne changent pas.</li>
+ * 		<li>Une erreur ({@link PipelineException} ou toute autre exception) termine seulement sa tâche et devient sa réponse.</li>
+ * </ol>
+ */
+public class BatchServer {
+
+	private static final String[] OPTIONS = {"port", "travaux"};
+
+	/* Une matrice BLOSUM lue, avec la date de modification et la taille de son fichier au moment de la lecture. */
+	private static final class Blosum {
+		private final long modification;
+		private final long taille;
+		private final Object[] resultat;
+
+		Blosum(long modification, long taille, Object[] resultat) {
+			this.modification = modification;
+			this.taille = taille;
+			this.resultat = resultat;
+		}
+	}
+
+	private final ExecutorService executeur;
+
+	/* Les tâches acceptées et non terminées, au plus 2 fois le nombre de tâches simultanées. */
+	private final Semaphore places;
+
+	private final ConcurrentHashMap<Path, Blosum> blosums = new ConcurrentHashMap<Path, Blosum>();
+
+	/**
+	 * @param travaux
+	 * 		  le nombre maximal de tâches exécutées en même temps
+	 */
+	public BatchServer(int travaux) {
+		this.executeur = Executors.newFixedThreadPool(travaux);
+		this.places = new Semaphore(2 * travaux);
+	}
+
+	/**
+	 * Lire et exécuter les tâches d'un flux jusqu'à la fin du flux ou la ligne "quitter", puis attendre la fin des tâches
+	 * lues avant de retourner.
+	 *
+	 * @param entree
+	 * 		  les lignes des tâches
+	 * @param sortie
+	 * 		  la destination des réponses
+	 *
+	 * @throws IOException si la lecture des tâches échoue
+	 * @throws InterruptedException si le thread est interrompu pendant l'attente d'une place ou de la fin des tâches
+	 */
+	public void servir(BufferedReader entree, Writer sortie) throws IOException, InterruptedException {
+		Phaser enCours = new Phaser(1);
+		try {
+			String ligne;
+			while ((ligne = entree.readLine()) != null) {
+				ligne = ligne.trim();
+				if (ligne.isEmpty() || ligne.startsWith("#"))
+					continue;
+				if (ligne.equals("quitter"))
+					break;
+
+				List<String> champs = champs(ligne);
+				String id = champs.get(0);
+				String[] args = champs.subList(1, champs.size()).toArray(new String[0]);
+				this.places.acquire();
+				enCours.register();
+				try {
+					this.executeur.execute(() -> {
+						try {
+							this.repondre(sortie, id, args);
+						}
+						finally {
+							this.places.release();
+							enCours.arriveAndDeregister();
+						}
+					});
+				}
+				catch (RejectedExecutionException e) {
+					this.places.release();
+					enCours.arriveAndDeregister();
+					throw e;
+				}
+			}
+		}
+		finally {
+			enCours.awaitAdvanceInterruptibly(enCours.arrive());
+		}
+	}
+
+	/**
+	 * Accepter les connexions sur un port de l'adresse de bouclage: chaque connexion est servie par {@link #servir} dans son
+	 * propre thread, les tâches de toutes les connexions partageant les mêmes places. Cette méthode ne retourne pas.
+	 *
+	 * @param port
+	 * 		  le port local
+	 *
+	 * @throws IOException si le port ne peut pas être ouvert
+	 */
+	public void ecouter(int port) throws IOException {
+		try (ServerSocket serveur = new ServerSocket(port, 50, InetAddress.getLoopbackAddress())) {
+			System.err.println("En attente de tâches sur " + serveur.getLocalSocketAddress() + ".");
+			while (true) {
+				Socket connexion = serveur.accept();
+				Thread thread = new Thread(() -> {
+					try (Socket s = connexion;
+							BufferedReader entree = new BufferedReader(new InputStreamReader(s.getInputStream(), StandardCharsets.UTF_8));
+							Writer sortie = new BufferedWriter(new OutputStreamWriter(s.getOutputStream(), StandardCharsets.UTF_8))) {
+						this.servir(entree, sortie);
+					}
+					catch (IOException | InterruptedException e) {
+						/* La connexion est perdue: les tâches qu'elle a soumises ne peuvent plus répondre */
+						System.err.println("Connexion " + connexion.getRemoteSocketAddress() + " interrompue: " + e);
+					}
+				}, "connexion-" + connexion.getPort());
+				thread.start();
+			}
+		}
+	}
+
+	/**
+	 * Arrêter l'exécuteur une fois les tâches en cours terminées.
+	 */
+	public void arreter() {
+		this.executeur.shutdown();
+	}
+
+	/**
+	 * Exécuter une tâche et écrire sa réponse d'un seul bloc.
+	 */
+	private void repondre(Writer sortie, String id, String[] args) {
+		ByteArrayOutputStream tampon = new ByteArrayOutputStream();
+		String statut = "OK";
+		List<String> lignes;
+		try (PrintStream affichage = new PrintStream(tampon, true, "UTF-8")) {
+			PhylogenyNeighborJoining.executer(args, affichage, affichage, this.blosum(args));
+			affichage.flush();
+			lignes = lignes(new String(tampon.toByteArray(), StandardCharsets.UTF_8));
+		}
+		catch (PipelineException e) {
+			statut = "ERREUR";
+			lignes = lignes(e.getMessage());
+			if (e.getCause() != null)
+				lignes.add(e.getCause().toString());
+		}
+		catch (Throwable e) {
+			statut = "ERREUR";
+			lignes = lignes(e.toString());
+		}
+
+		synchronized (sortie) {
+			try {
+				sortie.write(id + " " + statut + " " + lignes.size() + "\n");
+				for (String ligne : lignes)
+					sortie.write(ligne + "\n");
+				sortie.flush();
+			}
+			catch (IOException e) {
+				System.err.println("La réponse de la tâche " + id + " n'a pas pu être écrite: " + e);
+			}
+		}
+	}
+
+	/**
+	 * Obtenir la matrice BLOSUM d'une tâche, lue une seule fois tant que son fichier ne change pas.
+	 *
+	 * @return le résultat de {@link PhylogenyNeighborJoining#getBlosum(String)}, ou <code>null</code> si les arguments ou le
+	 * 		   fichier ne permettent pas de la lire: l'exécution de la tâche signale alors l'erreur.
+	 */
+	private Object[] blosum(String[] args) {
+		if (!PhylogenyNeighborJoining.areValidArgs(args))
+			return null;
+		Path fichier = Paths.get(args[2]).toAbsolutePath().normalize();
+		BasicFileAttributes attributs;
+		try {
+			attributs = Files.readAttributes(fichier, BasicFileAttributes.class);
+		}
+		catch (IOException e) {
+			return null;
+		}
+		long modification = attributs.lastModifiedTime().toMillis();
+		Blosum connue = this.blosums.get(fichier);
+		if (connue != null && connue.modification == modification && connue.taille == attributs.size())
+			return connue.resultat;
+
+		/* Deux tâches peuvent lire la même matrice en même temps: la dernière lue remplace l'autre */
+		Object[] resultat = PhylogenyNeighborJoining.getBlosum(fichier.toString());
+		this.blosums.put(fichier, new Blosum(modification, attributs.size(), resultat));
+		return resultat;
+	}
+
+	/**
+	 * Découper une ligne en champs séparés par des espaces ou des tabulations, un champ entre guillemets pouvant contenir
+	 * des espaces.
+	 */
+	static List<String> champs(String ligne) {
+		ArrayList<String> champs = new ArrayList<String>();
+		StringBuilder champ = new StringBuilder();
+		boolean guillemets = false;
+		boolean commence = false;
+		for (int i = 0; i < ligne.length(); i++) {
+			char c = ligne.charAt(i);
+			if (c == '"') {
+				guillemets = !guillemets;
+				commence = true;
+			}
+			else if (!guillemets && (c == ' ' || c == '\t')) {
+				if (commence)
+					champs.add(champ.toString());
+				champ.setLength(0);
+				commence = false;
+			}
+			else {
+				champ.append(c);
+				commence = true;
+			}
+		}
+		if (commence)
+			champs.add(champ.toString());
+		return champs;
+	}
+
+	/**
+	 * @return les lignes d'un texte, sans la ligne vide qui suit le dernier saut de ligne.
+	 */
+	private static List<String> lignes(String texte) {
+		ArrayList<String> lignes = new ArrayList<String>(Arrays.asList(texte.split("\r?\n", -1)));
+		if (!lignes.isEmpty() && lignes.get(lignes.size() - 1).isEmpty())
+			lignes.remove(lignes.size() - 1);
+		return lignes;
+	}
+
+	/**
+	 * Lance le serveur: sur l'entrée et la sortie standard, ou sur un port local avec <code>--port=P</code>.
+	 * <ol>
+	 * 		<li>"--port=P": accepte les connexions sur le port P de l'adresse de bouclage au lieu de lire l'entrée standard.</li>
+	 * 		<li>"--travaux=N": nombre maximal de tâches exécutées en même temps. Par défaut le nombre de processeurs.</li>
+	 * </ol>
+	 */
+	public static void main(String[] args) {
+		HashMap<String, String> options = new HashMap<String, String>();
+		for (String arg : args) {
+			int egal = arg.indexOf('=');
+			String nom = arg.startsWith("--") ? arg.substring(2, egal < 0 ? arg.length() : egal) : null;
+			if (nom == null || !Arrays.asList(OPTIONS).contains(nom)) {
+				System.out.println("Option inconnue: " + arg + "\n\n"
+						+ "Options facultatives:\n"
+						+ "--port=P                      lit les tâches sur le port local P au lieu de l'entrée standard\n"
+						+ "--travaux=N                   nombre maximal de tâches exécutées en même temps (nombre de processeurs par défaut)\n");
+				System.exit(1);
+			}
+			options.put(nom, egal < 0 ? "" : arg.substring(egal + 1));
+		}
+
+		BatchServer serveur = null;
+		try {
+			serveur = new BatchServer(PhylogenyNeighborJoining.getOptionEntier(options, "travaux",
+					Runtime.getRuntime().availableProcessors()));
+			if (options.containsKey("port"))
+				serveur.ecouter(PhylogenyNeighborJoining.getOptionEntier(options, "port", 1));
+			else {
+				serveur.servir(new BufferedReader(new InputStreamReader(System.in, StandardCharsets.UTF_8)),
+						new BufferedWriter(new OutputStreamWriter(System.out, StandardCharsets.UTF_8)));
+			}
+		}
+		catch (PipelineException e) {
+			System.out.println(e.getMessage());
+			System.exit(1);
+		}
+		catch (IOException | InterruptedException e) {
+			e.printStackTrace();
+			System.out.println("Un problème est survenu dans le serveur.");
+			System.exit(1);
+		}
+		finally {
+			if (serveur != null)
+				serveur.arreter();
+		}
+	}
+}
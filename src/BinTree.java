@@ -13,6 +13,16 @@ public class BinTree {
 	private Node root;
 	private HashSet<HashSet<HashSet<String>>> bipartitions;
 	
+	/* Index dense des noeuds (en pre-order), position du parent et des enfants de chaque noeud, position de chaque noeud et
+	 * index des protéines, construits à la demande. Ils sont propres à cet arbre: un noeud partagé avec un autre arbre (par
+	 * exemple une feuille reprise par l'arbre NJ) garde ici son parent dans cet arbre. Voir invaliderIndex(). */
+	private Node[] noeuds;
+	private int[] parents;
+	private int[] gauches;
+	private int[] droits;
+	private IdentityHashMap<Node, Integer> positions;
+	private HashMap<String, Node> etiquettes;
+	
 	/* Constructeurs */
 	public BinTree() {
 		this.root = null;
@@ -82,90 +92,182 @@ public class BinTree {
 	}
 	
 	/**
-	 * Rechercher le noeud dans l'arbre enraciné binaire possédant la valeur {@code prot} passée en argument.
-	 * 
-	 * @param prot
-	 * 		  une chaîne de caractère correspondant à la protéine du noeud recherché.
-	 * @return un objet de type <code>Node</code> de l'arbre enraciné qui a comme attribut protéine {@code prot}.
-	 * 
-	 * @see #findNode(Node, String)
+	 * Construit, si nécessaire, les index de l'arbre. Les noeuds sont numérotés de 0 à m - 1 en pre-order (gauche puis
+	 * droite), sans appel récursif.
 	 */
-	public Node find(String prot) {
-		if (this.root == null)
-			return null;
-		else
-			return findNode(this.root, prot);
+	private void indexer() {
+		if (this.noeuds != null)
+			return;
+		
+		ArrayList<Node> ordre = new ArrayList<Node>();
+		ArrayList<Integer> parents = new ArrayList<Integer>();
+		HashMap<String, Node> etiquettes = new HashMap<String, Node>();
+		ArrayDeque<Node> pile = new ArrayDeque<Node>();
+		ArrayDeque<Integer> pileParents = new ArrayDeque<Integer>();
+		if (this.root != null) {
+			pile.push(this.root);
+			pileParents.push(-1);
+		}
+		while (!pile.isEmpty()) {
+			Node noeud = pile.pop();
+			int index = ordre.size();
+			ordre.add(noeud);
+			parents.add(pileParents.pop());
+			/* Comme l'ancienne recherche récursive (gauche, puis droite), on garde le premier noeud rencontré pour une protéine */
+			if (noeud.getProt() != null)
+				etiquettes.putIfAbsent(noeud.getProt(), noeud);
+			if (noeud.getRightChild() != null) {
+				pile.push(noeud.getRightChild());
+				pileParents.push(index);
+			}
+			if (noeud.getLeftChild() != null) {
+				pile.push(noeud.getLeftChild());
+				pileParents.push(index);
+			}
+		}
+		
+		int m = ordre.size();
+		this.parents = new int[m];
+		this.gauches = new int[m];
+		this.droits = new int[m];
+		this.positions = new IdentityHashMap<Node, Integer>(m);
+		Arrays.fill(this.gauches, -1);
+		Arrays.fill(this.droits, -1);
+		for (int k = 0; k < m; k++) {
+			Node noeud = ordre.get(k);
+			int parent = parents.get(k);
+			this.parents[k] = parent;
+			this.positions.put(noeud, k);
+			if (parent >= 0) {
+				if (ordre.get(parent).getLeftChild() == noeud)
+					this.gauches[parent] = k;
+				else
+					this.droits[parent] = k;
+			}
+		}
+		this.noeuds = ordre.toArray(new Node[0]);
+		this.etiquettes = etiquettes;
+	}
+	
+	/**
+	 * Oublier les index de l'arbre: ils seront reconstruits au prochain accès. Les modifications faites par l'arbre lui-même
+	 * ({@link #midPoint()}) les invalident déjà; il faut appeler cette méthode après avoir modifié directement les enfants de
+	 * ses noeuds ({@link Node#addChild(Node)}, {@link Node#addLeftChild(Node)}, {@link Node#addRightChild(Node)}).
+	 * {@link #getParent(Node)} vérifie de plus, en temps constant, que le parent indexé a encore le noeud pour enfant.
+	 */
+	public void invaliderIndex() {
+		this.noeuds = null;
+		this.parents = null;
+		this.gauches = null;
+		this.droits = null;
+		this.positions = null;
+		this.etiquettes = null;
 	}
 	
 	/**
-	 * Permet de rechercher un noeud contenant la protéine <code>prot</code> en recherchant récursivement à gauche, puis à droite.
+	 * @return le nombre de noeuds de l'arbre.
+	 */
+	public int getNbNoeuds() {
+		this.indexer();
+		return this.noeuds.length;
+	}
+	
+	/**
+	 * Obtenir un noeud par sa position dans l'index dense de l'arbre.
 	 * 
-	 * @param root
-	 * 		  le noeud actuel sur lequel nous somme situés dans la récursion.
-	 * @param prot
-	 * 		  la protéine recherchée
+	 * @param index
+	 * 		  la position du noeud, entre 0 et {@link #getNbNoeuds()} - 1 (pre-order)
 	 * 
-	 * @return un <code>Node</code> qui contient la protéine, <code>null</code> sinon.
+	 * @return le noeud à cette position.
 	 */
-	private Node findNode(Node root, String prot) {
-		if (root != null ) {
-			if (root.getProt() != null && root.getProt().equals(prot))
-				return root;
-			else {
-				Node result = findNode(root.getLeftChild(), prot);
-				if (result != null)
-					return result;
-				else
-					result = findNode(root.getRightChild(), prot);
-				return result;
-			}
-		}
-		return null;
+	public Node getNoeud(int index) {
+		this.indexer();
+		return this.noeuds[index];
 	}
 	
 	/**
-	 * Obtenir le noeud parent de <code>node</code> dans l'arbre
+	 * @param index
+	 * 		  la position d'un noeud, entre 0 et {@link #getNbNoeuds()} - 1
 	 * 
-	 * @param node
-	 * 		  le noeud dont on veut obtenir le parent
+	 * @return la position du parent du noeud dans l'index dense de l'arbre, -1 pour la racine. Elle est plus petite que
+	 * 		   <code>index</code>.
+	 */
+	public int getPositionParent(int index) {
+		this.indexer();
+		return this.parents[index];
+	}
+	
+	/**
+	 * @param index
+	 * 		  la position d'un noeud, entre 0 et {@link #getNbNoeuds()} - 1
 	 * 
-	 * @return le noeud parent de <code>node</code>
+	 * @return la position de l'enfant gauche du noeud dans l'index dense de l'arbre, -1 s'il n'en a pas.
+	 */
+	public int getPositionGauche(int index) {
+		this.indexer();
+		return this.gauches[index];
+	}
+	
+	/**
+	 * @param index
+	 * 		  la position d'un noeud, entre 0 et {@link #getNbNoeuds()} - 1
 	 * 
-	 * @see #getParent(Node, Node)
+	 * @return la position de l'enfant droit du noeud dans l'index dense de l'arbre, -1 s'il n'en a pas.
 	 */
-	public Node getParent(Node node) {
-		return getParent(this.root, node);
+	public int getPositionDroit(int index) {
+		this.indexer();
+		return this.droits[index];
 	}
 	
 	/**
-	 * On recherche le parent d'un noeud de manière récursive sur son sous-arbre droit, puis sur son sous-arbre gauche.
+	 * Rechercher le noeud dans l'arbre enraciné binaire possédant la valeur {@code prot} passée en argument.
+	 * La recherche se fait dans l'index des protéines de l'arbre, construit une seule fois tant que l'arbre n'est pas modifié.
 	 * 
-	 * @param parent
-	 * 		  le noeud parent actuel dans l'arbre
+	 * @param prot
+	 * 		  une chaîne de caractère correspondant à la protéine du noeud recherché.
+	 * @return un objet de type <code>Node</code> de l'arbre enraciné qui a comme attribut protéine {@code prot}: le premier
+	 * 		   rencontré en pre-order, <code>null</code> sinon.
+	 */
+	public Node find(String prot) {
+		if (this.root == null)
+			return null;
+		this.indexer();
+		return this.etiquettes.get(prot);
+	}
+	
+	/**
+	 * Obtenir le noeud parent de <code>node</code> dans l'arbre, en temps constant grâce à la position du parent de chaque
+	 * noeud dans l'index de l'arbre. Si le noeud n'est pas dans l'index ou si le parent indexé ne l'a plus pour enfant, l'index
+	 * est reconstruit.
 	 * 
 	 * @param node
-	 * 		  le noeud dont on recherche le parent
+	 * 		  le noeud dont on veut obtenir le parent
 	 * 
-	 * @return Le noeud parent de <code>node</code>, <code>null</code> sinon.
+	 * @return le noeud parent de <code>node</code>, <code>null</code> si <code>node</code> est la racine de l'arbre ou n'est
+	 * 		   pas dans l'arbre.
 	 */
-	private Node getParent(Node parent, Node node) {
-		if (parent == node || parent == null){
-            return null;
-		}
-		else {
-			if (parent.getLeftChild() == node || parent.getRightChild() == node)
-				return parent;
-			else {
-				Node temp;
-				temp = getParent(parent.getRightChild(), node);
-				if (temp == null) {
-					temp = getParent(parent.getLeftChild(), node);
-				}
-				return temp;
-			}
+	public Node getParent(Node node) {
+		if (node == null || node == this.root)
+			return null;
+		this.indexer();
+		Integer k = this.positions.get(node);
+		if (k == null || !this.estParent(this.parents[k], node)) {
+			this.invaliderIndex();
+			this.indexer();
+			k = this.positions.get(node);
+			if (k == null)
+				return null;
 		}
+		return this.parents[k] < 0 ? null : this.noeuds[this.parents[k]];
 	}
-
+	
+	/**
+	 * @return <code>true</code> si le noeud à la position <code>parent</code> de l'index a encore <code>node</code> pour enfant.
+	 */
+	private boolean estParent(int parent, Node node) {
+		return parent >= 0 && (this.noeuds[parent].getLeftChild() == node || this.noeuds[parent].getRightChild() == node);
+	}
+	
 /// Fin bloc ,éthodes pratiques sur les arbres binaires	///////////////////////////////////////////////////////////////////////////////////////////////////////////////	
 	
 /// Question 1: Parcours post-Ordre de l'arbre binaire enraciné /////////////////////////////////////////////////////////////////////////////////////////////////////////
@@ -331,6 +433,7 @@ public class BinTree {
 	
 	/**
 	 * Cette méthode permet d'obtenir un arbre binaire enraciné dans un format de chaîne de Newick avec les distances.
+	 * Le support bootstrap d'un noeud interne, s'il a été calculé, est écrit comme étiquette du noeud: <code>(A:0.1,B:0.2)0.95:0.3</code>.
 	 * 
 	 * @return Une chaîne de caractère en format Newick valide
 	 */
@@ -402,6 +505,9 @@ public class BinTree {
 		/* Si c'est un noeud feuille, alors on retourne la protéine contenue dans la feuille */
 		if (root.isLeave())
 			return root.getProt().concat(":" + Double.toString(Math.round(root.getDist() * 10000.0) / 10000.0));
+		else if (root.getSupport() >= 0)
+			return "(".concat(newickTree).concat(")").concat(Double.toString(Math.round(root.getSupport() * 10000.0) / 10000.0))
+					.concat(":" + Double.toString(Math.round(root.getDist() * 10000.0) / 10000.0));
 		else
 			return "(".concat(newickTree).concat(")").concat(":" + Double.toString(Math.round(root.getDist() * 10000.0) / 10000.0));
 	}
@@ -427,16 +533,18 @@ public class BinTree {
 	
 	/**
 	 * Mettre à jour l'ensemble de bipartitions non triviales d'un arbre enraciné.
+	 * Le nombre de feuilles et l'ensemble des protéines de l'arbre sont calculés une seule fois, puis transmis au parcours.
 	 * 
 	 * @return Un ensemble de bipartitions correspondant aux protéines contenues aux feuilles. Possiblement vide.
 	 * 
 	 * @see #bipartitions
-	 * @see #partitionner(Node)
+	 * @see #partitionner(Node, int, HashSet)
 	 */
 	private HashSet<HashSet<HashSet<String>>> partitionnerArbre() {
 		this.bipartitions = new HashSet<HashSet<HashSet<String>>>();
-		if (this.countLeaves() > 3)
-			this.partitionner(this.root);
+		int nbFeuilles = this.countLeaves();
+		if (nbFeuilles > 3)
+			this.partitionner(this.root, nbFeuilles, this.getLeavesProt());
 		return this.bipartitions;
 	}
 	
@@ -445,13 +553,16 @@ public class BinTree {
 	 * 
 	 * @param root
 	 * 		  un noeud racine à partir duquel l'on souhaite bipartition un arbre.
+	 * @param nbFeuilles
+	 * 		  le nombre de feuilles de l'arbre
+	 * @param feuilles
+	 * 		  l'ensemble des protéines situées aux feuilles de l'arbre
 	 * 
 	 * @return Un ensemble de bipartitions correspondant aux protéines contenues aux feuilles. Possiblement vide.
 	 * 
-	 * @see #transformBipartition(BinTree, HashSet)
-	 * @see #countLeaves()
+	 * @see #transformBipartition(HashSet, HashSet)
 	 */
-	private HashSet<String> partitionner(Node root) {
+	private HashSet<String> partitionner(Node root, int nbFeuilles, HashSet<String> feuilles) {
 		
 		/* Une partition est un ensemble de string {"PCDHA1_Humain", "PCDHA1_Rat"} forme par exemple une partition.
 		 * Par exemple, {"PCDHA1_Humain", "PCDHA1_Rat"} est une partition de 
@@ -464,8 +575,8 @@ public class BinTree {
 		
 		/* Appels récursifs sur les partitions existantes aux enfants gauches et droit. En fait, on va effectuer un parcours post-order
 		 * dans le but de trouver les bipartitions correspondantes à cet arbre.*/
-		HashSet<String> partitionGauche = partitionner(root.getLeftChild());
-		HashSet<String> partitionDroite = partitionner(root.getRightChild());
+		HashSet<String> partitionGauche = partitionner(root.getLeftChild(), nbFeuilles, feuilles);
+		HashSet<String> partitionDroite = partitionner(root.getRightChild(), nbFeuilles, feuilles);
 		
 		/* Si la racine est une feuille, on retourne une partition contenant la protéine contenue dans ce noeud*/
 		if (root.isLeave()) 
@@ -478,30 +589,30 @@ public class BinTree {
 			
 			/* On recherche les bipartitions non-triviales, la partition doit donc avoir une taille d'au moins 2 pour constituer une bipartition potentielle.
 			 * et ne doit pas dépasser n - 2 feuilles (pour que l'autre partie de la bipartition soit de taille d'au moins 2)*/
-			if (partition.size() >= 2 && partition.size() <= this.countLeaves() - 2)
+			if (partition.size() >= 2 && partition.size() <= nbFeuilles - 2)
 				/* On peut donc ajouter la partition en faisant appel à transformBipartition
 				 * qui va chercher les feuilles correspondant au reste de la partition et on forme donc une bipartition qui peut être ajouté
 				 * dans l'ensemble de bipartitions de l'arbre.*/
-				this.bipartitions.add(transformBipartition(this, partition));
+				this.bipartitions.add(transformBipartition(feuilles, partition));
 		}
 		return partition;
 	}
 	
 	
 	/**
-	 * À partir d'une partition fournie en paramètre, et d'un arbre, obtenir la bipartition non-triviale correspondante.
+	 * À partir d'une partition fournie en paramètre, et de l'ensemble des protéines d'un arbre, obtenir la bipartition non-triviale correspondante.
 	 *
-	 * @param tree
-	 * 		  un arbre binaire pour lequel on souhaite les valeurs contenues aux feuilles
+	 * @param feuilles
+	 * 		  l'ensemble des protéines situées aux feuilles de l'arbre. Cet ensemble n'est pas modifié.
 	 * 
 	 * @param partition
 	 * 		  un ensemble qui contient 2 à n - 2 feuilles.
 	 * 		 
 	 * @return une bipartition, qui correspond à un ensemble de partition, chaque partition étant de de taille au moins 2.			
 	 */
-	private static HashSet<HashSet<String>> transformBipartition(BinTree tree, HashSet<String> partition) {
-		/* On obtient toutes les protéines contenues aux feuilles d'un arbre que l'on met dans un ensemble reste*/
-		HashSet<String> reste = tree.getLeavesProt();
+	private static HashSet<HashSet<String>> transformBipartition(HashSet<String> feuilles, HashSet<String> partition) {
+		/* On copie l'ensemble des protéines de l'arbre dans un ensemble reste*/
+		HashSet<String> reste = new HashSet<String>(feuilles);
 		
 		/* On retire de cet ensemble reste les feuilles existantes dans la partition.*/
 		reste.removeAll(partition);
@@ -516,26 +627,19 @@ public class BinTree {
 	
 	/**
 	 * Calculer la distance topologique entre deux arbres binaires enracinés.
+	 * Les bipartitions des deux arbres sont calculées sous forme de tableaux de bits ({@link Bipartitions}): la distance est
+	 * la même que celle obtenue en fusionnant les ensembles de {@link #getBipartitions()}.
 	 * 
 	 * @param t2
 	 * 		  un arbre binaire enraciné par rapport à lequel on souhaite calculer une distance topologique.
 	 * 
 	 * @return La distance topologique entre <code>this</code> et <code>t2</code>.
 	 * 
-	 * @see #getBipartitions()	 
+	 * @see Bipartitions#distanceTopo(Bipartitions)
 	 */
 	public double distanceTopo(BinTree t2) {
-		HashSet<HashSet<HashSet<String>>> bipartitions = new HashSet<HashSet<HashSet<String>>>();
-		HashSet<HashSet<HashSet<String>>> bipartT1 = this.getBipartitions();
-		HashSet<HashSet<HashSet<String>>> bipartT2 = t2.getBipartitions();
-		
-		/* On fusionne l'ensemble de bipartitions de l'arbre T1 et de l'arbre T2 en n'autorisant pas les doublons*/
-		bipartitions.addAll(bipartT1);
-		bipartitions.addAll(bipartT2);
-		
-		/* S'il n'y pas de différence de taille, la valeur de la différence entre les bipartitions est de 0. 
-		 * Sinon elle sera de 1, etc.*/
-		return (double) 2 * ((double) bipartitions.size() - (double) bipartT1.size());
+		HashMap<String, Integer> taxons = new HashMap<String, Integer>();
+		return new Bipartitions(this, taxons).distanceTopo(new Bipartitions(t2, taxons));
 	}
 	
 	
@@ -548,9 +652,21 @@ public class BinTree {
 	 * @return RF entre <code>this</code> et <code>t2</code>
 	 * 
 	 * @see #distanceTopo(BinTree)
+	 * @see Bipartitions#rf(Bipartitions)
 	 */
 	public double rf(BinTree t2) {
-		double rf = ((double) this.distanceTopo(t2)) / ((double) (2 * (this.countLeaves() - 3)));
+		FlightEvents.RFComparison evenement = new FlightEvents.RFComparison();
+		evenement.begin();
+		HashMap<String, Integer> taxons = new HashMap<String, Integer>();
+		Bipartitions bipartitions = new Bipartitions(this, taxons);
+		Bipartitions autres = new Bipartitions(t2, taxons);
+		double rf = bipartitions.rf(autres);
+		if (evenement.shouldCommit()) {
+			evenement.feuilles = bipartitions.getNbFeuilles();
+			evenement.absentes = (int) (bipartitions.distanceTopo(autres) / 2);
+			evenement.distance = rf;
+			evenement.commit();
+		}
 		return rf;
 	}
 	
@@ -782,20 +898,103 @@ public class BinTree {
 		return path;
 	}
 	
+	/**
+	 * Trouver le chemin le plus long de l'arbre, comme <code>maxPath(getPaths())</code>, en temps et en mémoire linéaires.
+	 * <p>Au lieu de construire le chemin de chaque paire de feuilles, on calcule en post-order, pour chaque noeud, la plus
+	 * grande distance de ce noeud à une feuille de son sous-arbre. Le chemin le plus long entre deux feuilles passe par leur
+	 * ancêtre commun le plus proche: c'est, parmi les noeuds à deux enfants, celui qui maximise la somme des distances de ses
+	 * deux côtés. Les distances suivent les règles de {@link #distNode(ArrayList, Node)}: si l'ancêtre commun est la racine,
+	 * seule l'arête de l'enfant gauche de la racine est comptée. En cas d'égalité, on garde la première paire de feuilles dans
+	 * l'ordre de {@link #getPaths()}, comme {@link #maxPath(ArrayList)}.</p>
+	 * 
+	 * @return le chemin le plus long, d'une feuille à une autre, ou <code>null</code> si aucun chemin n'a une longueur
+	 * 		   strictement positive.
+	 */
+	public ArrayList<Node> diametre() {
+		if (this.root == null)
+			return null;
+		this.indexer();
+		int m = this.noeuds.length;
+		
+		/* hauteur[k]: la plus grande distance du noeud k à une feuille de son sous-arbre, sans compter l'arête du noeud k.
+		 * feuille[k]: l'index de la première feuille (en pre-order) qui atteint cette distance. */
+		double[] hauteur = new double[m];
+		int[] feuille = new int[m];
+		
+		double max = Double.MIN_VALUE;
+		int debut = -1;
+		int fin = -1;
+		int ancetre = -1;
+		
+		/* En pre-order, les enfants ont un index plus grand que leur parent: parcourir les index à l'envers est un post-order */
+		for (int k = m - 1; k >= 0; k--) {
+			Node noeud = this.noeuds[k];
+			if (noeud.isLeave()) {
+				hauteur[k] = 0;
+				feuille[k] = k;
+				continue;
+			}
+			int left = this.gauches[k];
+			int right = this.droits[k];
+			double gauche = left < 0 ? 0 : hauteur[left] + this.noeuds[left].getDist();
+			double droite = right < 0 ? 0 : hauteur[right] + this.noeuds[right].getDist();
+			
+			if (right < 0 || (left >= 0 && (gauche > droite || (gauche == droite && feuille[left] < feuille[right])))) {
+				hauteur[k] = gauche;
+				feuille[k] = feuille[left];
+			}
+			else {
+				hauteur[k] = droite;
+				feuille[k] = feuille[right];
+			}
+			
+			if (left < 0 || right < 0)
+				continue;
+			
+			/* Un chemin dont ce noeud est l'ancêtre commun. Sous la racine, l'arête de l'enfant droit n'est pas comptée. */
+			double longueur = gauche + (noeud == this.root ? hauteur[right] : droite);
+			int a = feuille[left];
+			int b = feuille[right];
+			if (longueur > max || (longueur == max && (a < debut || (a == debut && b < fin)))) {
+				max = longueur;
+				debut = a;
+				fin = b;
+				ancetre = k;
+			}
+		}
+		if (ancetre < 0)
+			return null;
+		
+		/* Le chemin remonte de la première feuille jusqu'à l'ancêtre commun, puis redescend jusqu'à la seconde */
+		ArrayList<Node> path = new ArrayList<Node>();
+		Node sommet = this.noeuds[ancetre];
+		for (int k = debut; k != ancetre; k = this.parents[k])
+			path.add(this.noeuds[k]);
+		path.add(sommet);
+		int milieu = path.size();
+		for (int k = fin; k != ancetre; k = this.parents[k])
+			path.add(this.noeuds[k]);
+		Collections.reverse(path.subList(milieu, path.size()));
+		return path;
+	}
+	
 	/**
 	 * Algorithme midPoint qui enracine un arbre binaire non-enraciné.
+	 * <p>Le chemin le plus long est obtenu en temps linéaire avec {@link #diametre()}. Si l'arbre n'a pas de chemin de
+	 * longueur strictement positive entre deux feuilles, il n'est pas modifié.</p>
 	 * 
-	 * @see #getPaths()
-	 * @see #maxPath(ArrayList)
+	 * @see #diametre()
 	 * @see #distPath(ArrayList)
 	 * @see #distNode(ArrayList, Node)
 	 * @see #bornesMidPoint(ArrayList, double)
 	 */
 	public void midPoint() {
-		/* On obtient tous les chemins de l'arbre binaire non enraciné d'une feuille à une autre avec l'appel à this.getPaths()
-		 * Et on obtient le chemin maximum parmi tous ces chemins avec l'appel à la méthode maxPath(ArrayList)
+		/* On obtient le chemin maximum de l'arbre binaire non enraciné d'une feuille à une autre avec l'appel à this.diametre(),
+		 * sans construire tous les chemins comme this.getPaths().
 		 * On représente un chemin par une suite de noeuds.*/
-		ArrayList<Node> path = this.maxPath(this.getPaths());
+		ArrayList<Node> path = this.diametre();
+		if (path == null)
+			return;
 		
 		/* On obtientla longueur de ce chemin maximal, et on prend calcule le milieu. */
 		double mid = (double) this.distPath(path) / 2;
@@ -843,6 +1042,14 @@ public class BinTree {
 		current.addDist(curDist);
 		next.addDist(nextDist);
 		
+		/* L'index de l'arbre n'est plus valide une fois les enfants modifiés: on conserve les parents de current et de next,
+		 * ainsi que les ancêtres de next jusqu'à la racine, tels qu'ils sont avant les rotations. */
+		Node parentCurrent = this.getParent(current);
+		Node parentNext = this.getParent(next);
+		ArrayList<Node> ancetres = new ArrayList<Node>();
+		for (Node ancetre = parentNext; ancetre != null; ancetre = this.getParent(ancetre))
+			ancetres.add(ancetre);
+		
 		/* On crée une nouvelle racine */
 		Node root = new Node();
 		
@@ -855,8 +1062,9 @@ public class BinTree {
 			
 		/* Si nous sommes situés sur l'arête centrale, alors il suffit juste de changer la racine de l'arbre
 		 * Nous avons effectués toutes les modifications nécessaires pour enraciner l'arbre.*/
-		if (this.getParent(next) == this.root && this.getParent(current) == this.root) {
+		if (parentNext == this.root && parentCurrent == this.root) {
 			this.root = root;
+			this.invaliderIndex();
 			return;
 		}
 			
@@ -867,6 +1075,7 @@ public class BinTree {
 		 * Si current ---- next est une branche gauche/droite, (et donc on a next parent de current), alors l'enfant droit/gauche
 		 * de next va devenir l'enfant gauche de next. Puis on va chercher le parent de next et le mettre comme enfant droit.
 		 * et on avance à l'enfant droit de next (qui est la parent de next encore dans l'arbre) pour effectuer la même opération de rotation */
+		int k = 0;
 		while(true) {
 			if (next.getLeftChild() == current)
 				next.addLeftChild(next.getRightChild());
@@ -880,7 +1089,7 @@ public class BinTree {
 				break;
 			}
 				
-			next.addRightChild(this.getParent(next));
+			next.addRightChild(ancetres.get(k++));
 			/* On avance le noeud current pour passer au noeud suivant*/
 			current = next;
 			next = next.getRightChild();
@@ -889,6 +1098,7 @@ public class BinTree {
 			oldDist = temp1;
 		}
 		this.root = root;
+		this.invaliderIndex();
 		return;		
 	}
 
@@ -0,0 +1,403 @@
+import java.util.*;
+
+/**
+ * Les bipartitions non triviales d'un arbre binaire enraciné, sous forme de tableaux de bits.
+ * <p>Chaque protéine reçoit un numéro dans une table partagée par les arbres que l'on veut comparer. Une bipartition
+ * P | R est représentée par le tableau de bits (<code>long[]</code>) d'un seul de ses côtés: celui qui ne contient pas la
+ * protéine de plus petit numéro de l'arbre. Deux bipartitions égales ont donc le même tableau de bits. Les bipartitions
+ * sont rangées dans une table de hachage à adressage ouvert, faite de tableaux primitifs: comparer deux arbres revient à
+ * chercher les bipartitions de l'un dans la table de l'autre, sans ensemble de chaînes ni ensemble d'ensembles.</p>
+ * <p>Les bipartitions retenues sont celles de {@link BinTree#getBipartitions()}: aucune si l'arbre a 3 feuilles ou moins,
+ * sinon celles dont chaque côté contient au moins 2 protéines, le côté P étant limité à n - 2 protéines pour n feuilles.
+ * Comme pour des ensembles de protéines, deux arbres qui n'ont pas les mêmes protéines n'ont aucune bipartition commune.</p>
+ */
+public class Bipartitions {
+
+	/* Nombre de feuilles de l'arbre et tableau de bits des protéines de l'arbre. */
+	private final int nbFeuilles;
+	private final long[] ensemble;
+
+	/* Nombre de mots de 64 bits d'une bipartition. */
+	private final int mots;
+
+	/* Table de hachage: la bipartition de la case k occupe cles[k * mots .. (k + 1) * mots - 1], et empreintes[k] contient son
+	 * code de hachage (jamais 0), 0 marquant une case vide. */
+	private long[] cles;
+	private long[] empreintes;
+	private int taille;
+
+	/* Tableau de travail pour le complément d'une partition, recopié dans la table lors d'un ajout. */
+	private long[] complement;
+
+	/* Le rang dans exporter() de la bipartition de chaque case, seulement si les bipartitions des arêtes ont été demandées
+	 * (voir rang()). */
+	private int[] rangs;
+
+	/**
+	 * Calcule les bipartitions non triviales d'un arbre.
+	 *
+	 * @param tree
+	 * 		  un arbre binaire enraciné
+	 * @param taxons
+	 * 		  la table qui à chaque protéine associe son numéro. Les protéines de l'arbre qui n'y sont pas encore reçoivent le
+	 * 		  prochain numéro libre: la même table doit être utilisée pour tous les arbres que l'on veut comparer.
+	 */
+	public Bipartitions(BinTree tree, HashMap<String, Integer> taxons) {
+		this(CompactTree.fromBinTree(tree, taxons));
+	}
+
+	/**
+	 * Calcule les bipartitions non triviales d'un arbre compact.
+	 *
+	 * @param tree
+	 * 		  un arbre compact dont les numéros de protéines viennent de la même table pour tous les arbres que l'on veut
+	 * 		  comparer (voir {@link CompactTree#fromBinTree(BinTree, HashMap)})
+	 */
+	public Bipartitions(CompactTree tree) {
+		this(tree, null, Integer.MAX_VALUE, null);
+	}
+
+	/**
+	 * Calcule les bipartitions non triviales d'un arbre compact et la bipartition de l'arête parente de chacun de ses noeuds.
+	 *
+	 * @param tree
+	 * 		  un arbre compact
+	 * @param aretes
+	 * 		  un tableau d'au moins {@link CompactTree#size()} cases, qui reçoit pour chaque noeud le rang dans
+	 * 		  {@link #exporter(int)} de la bipartition de son arête parente, -1 pour la racine et pour une bipartition triviale.
+	 * 		  Les deux arêtes issues de la racine ont la même bipartition.
+	 */
+	Bipartitions(CompactTree tree, int[] aretes) {
+		this(tree, null, Integer.MAX_VALUE, aretes);
+	}
+
+	/**
+	 * Calcule les bipartitions non triviales d'un arbre compact, en ne gardant que celles absentes d'une référence.
+	 *
+	 * @param tree
+	 * 		  un arbre compact
+	 * @param reference
+	 * 		  les bipartitions dont on ne garde pas les bipartitions communes, ou <code>null</code> pour tout garder
+	 * @param limite
+	 * 		  le calcul s'arrête dès que plus de <code>limite</code> bipartitions sont gardées
+	 * @param aretes
+	 * 		  reçoit le rang de la bipartition de chaque noeud, ou <code>null</code>
+	 */
+	private Bipartitions(CompactTree tree, Bipartitions reference, int limite, int[] aretes) {
+		int[] postOrdre = new int[tree.size()];
+		int nb = tree.postOrdre(postOrdre);
+		int nbFeuilles = 0;
+		int max = 0;
+		for (int k = 0; k < nb; k++) {
+			if (tree.isLeave(postOrdre[k])) {
+				max = Math.max(max, tree.getTaxon(postOrdre[k]));
+				nbFeuilles++;
+			}
+		}
+		this.nbFeuilles = nbFeuilles;
+		this.mots = (max >>> 6) + 1;
+		this.ensemble = new long[this.mots];
+		if (tree.getRacine() >= 0)
+			tree.feuilles(tree.getRacine(), this.ensemble);
+
+		/* Pour les rangs des arêtes, la table a d'emblée une case libre sur deux pour chaque noeud: elle n'est jamais agrandie,
+		 * et chaque bipartition reste dans sa case. */
+		int capacite = 16;
+		if (aretes != null) {
+			Arrays.fill(aretes, 0, tree.size(), -1);
+			while (capacite < 2 * nb)
+				capacite *= 2;
+		}
+		this.cles = new long[capacite * this.mots];
+		this.empreintes = new long[capacite];
+		if (this.nbFeuilles > 3) {
+			/* Deux arbres qui n'ont pas les mêmes protéines n'ont aucune bipartition commune */
+			if (reference != null && !Arrays.equals(this.ensemble, reference.ensemble))
+				reference = null;
+			this.partitionner(tree, postOrdre, nb, reference, limite, aretes);
+		}
+
+		if (aretes != null) {
+			this.rangs = new int[capacite];
+			int rang = 0;
+			for (int c = 0; c < capacite; c++)
+				if (this.empreintes[c] != 0)
+					this.rangs[c] = rang++;
+			for (int k = 0; k < nb; k++)
+				if (aretes[postOrdre[k]] >= 0)
+					aretes[postOrdre[k]] = this.rangs[aretes[postOrdre[k]]];
+		}
+	}
+
+	/**
+	 * @return le nombre de bipartitions non triviales de l'arbre.
+	 */
+	public int size() {
+		return this.taille;
+	}
+
+	/**
+	 * @return le nombre de feuilles de l'arbre.
+	 */
+	public int getNbFeuilles() {
+		return this.nbFeuilles;
+	}
+
+	/**
+	 * @return le tableau de bits des protéines de l'arbre, à ne pas modifier.
+	 */
+	long[] getEnsemble() {
+		return this.ensemble;
+	}
+
+	/**
+	 * Copie les bipartitions de la table les unes à la suite des autres, chacune sur <code>largeur</code> mots.
+	 *
+	 * @param largeur
+	 * 		  le nombre de mots par bipartition, au moins celui de la table: les mots en plus valent 0
+	 *
+	 * @return un tableau de {@link #size()} * <code>largeur</code> mots.
+	 */
+	long[] exporter(int largeur) {
+		long[] tableau = new long[this.taille * largeur];
+		int k = 0;
+		for (int c = 0; c < this.empreintes.length; c++)
+			if (this.empreintes[c] != 0)
+				System.arraycopy(this.cles, c * this.mots, tableau, (k++) * largeur, this.mots);
+		return tableau;
+	}
+
+	/**
+	 * Cherche une bipartition dans la table. Seulement pour des bipartitions calculées avec le rang de leurs arêtes
+	 * ({@link #Bipartitions(CompactTree, int[])}).
+	 *
+	 * @param tableau
+	 * 		  le tableau qui contient, à partir de <code>debut</code>, une bipartition sous forme canonique sur autant de mots
+	 * 		  que celles de la table, par exemple une bipartition exportée par un arbre qui a les mêmes protéines
+	 *
+	 * @return le rang de la bipartition dans {@link #exporter(int)}, -1 si elle n'est pas dans la table.
+	 */
+	int rang(long[] tableau, int debut) {
+		int c = this.chercher(tableau, debut, empreinte(tableau, debut, this.mots));
+		return c < 0 ? -1 : this.rangs[c];
+	}
+
+	/**
+	 * Compter les bipartitions communes à deux arbres.
+	 *
+	 * @param autre
+	 * 		  les bipartitions d'un arbre numérotées avec la même table de protéines
+	 *
+	 * @return le nombre de bipartitions présentes dans les deux arbres.
+	 */
+	public int communes(Bipartitions autre) {
+		if (!Arrays.equals(this.ensemble, autre.ensemble))
+			return 0;
+
+		/* On parcourt la plus petite table et on cherche dans la plus grande */
+		Bipartitions petite = this.taille <= autre.taille ? this : autre;
+		Bipartitions grande = petite == this ? autre : this;
+		int communes = 0;
+		for (int k = 0; k < petite.empreintes.length; k++)
+			if (petite.empreintes[k] != 0 && grande.chercher(petite.cles, k * petite.mots, petite.empreintes[k]) >= 0)
+				communes++;
+		return communes;
+	}
+
+	/**
+	 * Compter les bipartitions d'un arbre absentes de <code>this</code>, en arrêtant le compte dès qu'il dépasse
+	 * <code>limite</code>. Le compte complet vaut la moitié de <code>distanceTopo(new Bipartitions(tree))</code>: c'est le
+	 * numérateur de RF, sans avoir à ranger toutes les bipartitions de l'arbre.
+	 *
+	 * @param tree
+	 * 		  un arbre compact numéroté avec la même table de protéines
+	 * @param limite
+	 * 		  le compte au-delà duquel on peut s'arrêter
+	 *
+	 * @return le nombre de bipartitions de <code>tree</code> absentes de <code>this</code> s'il ne dépasse pas
+	 * 		   <code>limite</code>, un nombre plus grand que <code>limite</code> sinon.
+	 */
+	public int absentes(CompactTree tree, int limite) {
+		return new Bipartitions(tree, this, limite, null).taille;
+	}
+
+	/**
+	 * Calculer la distance topologique entre deux arbres, comme {@link BinTree#distanceTopo(BinTree)}: deux fois le nombre de
+	 * bipartitions de <code>t2</code> absentes de <code>this</code>.
+	 *
+	 * @param t2
+	 * 		  les bipartitions d'un arbre numérotées avec la même table de protéines
+	 *
+	 * @return La distance topologique entre <code>this</code> et <code>t2</code>.
+	 */
+	public double distanceTopo(Bipartitions t2) {
+		return (double) 2 * ((double) t2.taille - (double) this.communes(t2));
+	}
+
+	/**
+	 * Calculer RF entre deux arbres, comme {@link BinTree#rf(BinTree)}.
+	 *
+	 * @param t2
+	 * 		  les bipartitions d'un arbre numérotées avec la même table de protéines
+	 *
+	 * @return RF entre <code>this</code> et <code>t2</code>
+	 */
+	public double rf(Bipartitions t2) {
+		return this.distanceTopo(t2) / ((double) (2 * (this.nbFeuilles - 3)));
+	}
+
+	/**
+	 * Parcours post-order qui calcule le tableau de bits des protéines sous chaque noeud, à partir de ceux de ses enfants, et
+	 * ajoute les bipartitions non triviales. Les tableaux en attente forment une pile rangée dans un seul tableau de mots: le
+	 * tableau d'un enfant est réutilisé pour son parent, et la pile ne dépasse pas la hauteur de l'arbre.
+	 *
+	 * @param tree
+	 * 		  l'arbre compact
+	 * @param postOrdre
+	 * 		  les noeuds de l'arbre dans l'ordre post-order
+	 * @param nb
+	 * 		  le nombre de noeuds de <code>postOrdre</code>
+	 * @param reference
+	 * 		  les bipartitions à ne pas ajouter, ou <code>null</code>
+	 * @param limite
+	 * 		  le parcours s'arrête dès que la table contient plus de <code>limite</code> bipartitions
+	 * @param aretes
+	 * 		  reçoit la case de la bipartition de chaque noeud, ou <code>null</code>
+	 */
+	private void partitionner(CompactTree tree, int[] postOrdre, int nb, Bipartitions reference, int limite, int[] aretes) {
+		long[] pile = new long[16 * this.mots];
+		int sommet = 0;
+
+		for (int k = 0; k < nb; k++) {
+			int noeud = postOrdre[k];
+			if (tree.isLeave(noeud)) {
+				if ((sommet + 1) * this.mots > pile.length)
+					pile = Arrays.copyOf(pile, pile.length * 2);
+				int debut = sommet * this.mots;
+				Arrays.fill(pile, debut, debut + this.mots, 0);
+				int id = tree.getTaxon(noeud);
+				pile[debut + (id >>> 6)] |= 1L << id;
+				sommet++;
+				continue;
+			}
+
+			/* Les tableaux des enfants sont au sommet de la pile, le droit au-dessus du gauche */
+			if (tree.getLeftChild(noeud) >= 0 && tree.getRightChild(noeud) >= 0) {
+				sommet--;
+				int droite = sommet * this.mots;
+				int gauche = droite - this.mots;
+				for (int m = 0; m < this.mots; m++)
+					pile[gauche + m] |= pile[droite + m];
+			}
+			int debut = (sommet - 1) * this.mots;
+			int nbProteines = 0;
+			for (int m = 0; m < this.mots; m++)
+				nbProteines += Long.bitCount(pile[debut + m]);
+			if (nbProteines >= 2 && nbProteines <= this.nbFeuilles - 2) {
+				int c = this.ajouter(pile, debut, reference);
+				if (aretes != null)
+					aretes[noeud] = c;
+				if (this.taille > limite)
+					return;
+			}
+		}
+	}
+
+	/**
+	 * Ajoute une bipartition P | R donnée par le côté P, rangé dans <code>tableau</code> à partir de <code>debut</code>, après
+	 * l'avoir mise sous forme canonique. Elle n'est pas ajoutée si elle est déjà dans la table ou dans <code>reference</code>.
+	 *
+	 * @return la case de la bipartition dans la table, -1 si elle est dans <code>reference</code>.
+	 */
+	private int ajouter(long[] tableau, int debut, Bipartitions reference) {
+		/* Le côté qui contient la protéine de plus petit numéro est remplacé par son complément */
+		int premier = 0;
+		while (this.ensemble[premier] == 0)
+			premier++;
+		long plusPetit = Long.lowestOneBit(this.ensemble[premier]);
+		long[] cle = tableau;
+		int position = debut;
+		if ((tableau[debut + premier] & plusPetit) != 0) {
+			if (this.complement == null)
+				this.complement = new long[this.mots];
+			cle = this.complement;
+			position = 0;
+			for (int m = 0; m < this.mots; m++)
+				cle[m] = this.ensemble[m] & ~tableau[debut + m];
+		}
+
+		long empreinte = empreinte(cle, position, this.mots);
+		int c = this.chercher(cle, position, empreinte);
+		if (c >= 0)
+			return c;
+		if (reference != null && reference.chercher(cle, position, empreinte) >= 0)
+			return -1;
+		if (2 * (this.taille + 1) > this.empreintes.length)
+			this.agrandir();
+		this.taille++;
+		return this.inserer(cle, position, empreinte);
+	}
+
+	/**
+	 * Cherche une bipartition dans la table.
+	 *
+	 * @param tableau
+	 * 		  le tableau qui contient la bipartition cherchée à partir de <code>debut</code>
+	 * @param empreinte
+	 * 		  le code de hachage de la bipartition cherchée
+	 *
+	 * @return la case de la bipartition, -1 si elle n'est pas dans la table.
+	 */
+	private int chercher(long[] tableau, int debut, long empreinte) {
+		int masque = this.empreintes.length - 1;
+		for (int k = (int) empreinte & masque; this.empreintes[k] != 0; k = (k + 1) & masque) {
+			if (this.empreintes[k] != empreinte)
+				continue;
+			boolean egale = true;
+			for (int m = 0; m < this.mots && egale; m++)
+				egale = this.cles[k * this.mots + m] == tableau[debut + m];
+			if (egale)
+				return k;
+		}
+		return -1;
+	}
+
+	/**
+	 * @return la case où la bipartition est rangée.
+	 */
+	private int inserer(long[] tableau, int debut, long empreinte) {
+		int masque = this.empreintes.length - 1;
+		int k = (int) empreinte & masque;
+		while (this.empreintes[k] != 0)
+			k = (k + 1) & masque;
+		this.empreintes[k] = empreinte;
+		System.arraycopy(tableau, debut, this.cles, k * this.mots, this.mots);
+		return k;
+	}
+
+	/**
+	 * Double la capacité de la table de hachage.
+	 */
+	private void agrandir() {
+		long[] anciennesCles = this.cles;
+		long[] anciennesEmpreintes = this.empreintes;
+		this.cles = new long[anciennesCles.length * 2];
+		this.empreintes = new long[anciennesEmpreintes.length * 2];
+		for (int k = 0; k < anciennesEmpreintes.length; k++)
+			if (anciennesEmpreintes[k] != 0)
+				this.inserer(anciennesCles, k * this.mots, anciennesEmpreintes[k]);
+	}
+
+	/**
+	 * Code de hachage d'une bipartition, jamais nul.
+	 */
+	static long empreinte(long[] tableau, int debut, int mots) {
+		long h = 0x9E3779B97F4A7C15L;
+		for (int m = debut; m < debut + mots; m++) {
+			h ^= tableau[m];
+			h *= 0xBF58476D1CE4E5B9L;
+			h ^= h >>> 31;
+		}
+		return h == 0 ? 1 : h;
+	}
+}
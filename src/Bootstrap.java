@@ -0,0 +1,179 @@
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * Supports bootstrap des arêtes d'un arbre NJ.
+ * <p>Chaque réplicat tire avec remise autant de colonnes que l'alignement en contient, avec un générateur initialisé par la
+ * graine: le résultat ne dépend donc ni du nombre de threads ni de l'ordre d'exécution des réplicats. L'alignement n'est
+ * pas recopié: un réplicat est une vue pondérée de l'alignement encodé ({@link EncodedAlignment#reechantillonner(int[])}),
+ * dans laquelle chaque colonne compte autant de fois qu'elle a été tirée. Le réplicat calcule ensuite sa matrice des
+ * distances et son arbre NJ, puis compte ses bipartitions.</p>
+ * <p>Les réplicats sont des tâches indépendantes réparties sur un {@link ForkJoinPool}; un réplicat ne découpe pas son propre
+ * calcul. Un thread ne garde qu'une matrice des distances à la fois: la mémoire est celle de quelques matrices, quel que soit
+ * le nombre de réplicats.</p>
+ * <p>Les bipartitions de l'arbre de référence sont calculées une fois par {@link Bipartitions}, avec le rang de celle de
+ * chaque arête. Les fréquences sont comptées dans un tableau de compteurs atomiques partagé par les réplicats, un compteur par
+ * bipartition de référence: un réplicat cherche chacune de ses bipartitions dans la table de référence, et celles qui en sont
+ * absentes ne sont pas comptées. Le support d'une arête est enfin écrit sur le noeud du bas de l'arête
+ * ({@link Node#setSupport(double)}).</p>
+ */
+public class Bootstrap {
+
+	/* Nombre de réplicats exécutés par une tâche parallèle avant de ne plus être découpée. */
+	private static final int REPLICATS_PAR_TACHE = 1;
+
+	private final BinTree arbre;
+	private final EncodedAlignment alignement;
+	private final NJEngine.Recherche recherche;
+
+	/* Le numéro de chaque protéine, dans l'ordre des feuilles de l'arbre de référence. La table est remplie une fois pour
+	 * toutes avant les réplicats, qui ne font que la lire. */
+	private final HashMap<String, Integer> taxons;
+
+	/* Nombre de mots de 64 bits d'une bipartition. */
+	private final int mots;
+
+	/**
+	 * Prépare le bootstrap d'un arbre: les séquences des feuilles sont encodées une seule fois pour tous les réplicats.
+	 *
+	 * @param arbre
+	 * 		  l'arbre de référence, avec les séquences filtrées aux feuilles (par exemple l'arbre NJ)
+	 * @param matriceMutations
+	 * 		  la matrice qui contient les coûts de mutations des acides aminés pour les séquences.
+	 * @param tableIndex
+	 * 		  une <code>HashMap</code> qui à un caractère d'acide aminé associe un index dans la matrice de mutations.
+	 * @param recherche
+	 * 		  la recherche de la paire minimale de l'algorithme NJ des réplicats
+	 *
+	 * @throws IllegalArgumentException si une feuille n'a pas de séquence valide ou si deux feuilles ont la même protéine.
+	 */
+	public Bootstrap(BinTree arbre, double[][] matriceMutations, HashMap<String, Integer> tableIndex, NJEngine.Recherche recherche) {
+		this(arbre, EncodedAlignment.fromLeaves(arbre.getLeavesNode(), matriceMutations, tableIndex), recherche);
+	}
+
+	/**
+	 * Prépare le bootstrap d'un arbre à partir de l'alignement déjà encodé de ses feuilles, par exemple celui qui a servi au
+	 * calcul de la matrice des distances: les feuilles n'ont alors pas besoin de séquence.
+	 *
+	 * @param arbre
+	 * 		  l'arbre de référence (par exemple l'arbre NJ)
+	 * @param alignement
+	 * 		  l'alignement des protéines de l'arbre, une séquence par feuille, dans un ordre quelconque
+	 * @param recherche
+	 * 		  la recherche de la paire minimale de l'algorithme NJ des réplicats
+	 *
+	 * @throws IllegalArgumentException si deux feuilles ont la même protéine ou si l'alignement ne contient pas exactement les
+	 * 		   protéines des feuilles.
+	 */
+	public Bootstrap(BinTree arbre, EncodedAlignment alignement, NJEngine.Recherche recherche) {
+		ArrayList<Node> feuilles = arbre.getLeavesNode();
+		this.arbre = arbre;
+		this.alignement = alignement;
+		this.recherche = recherche;
+		this.taxons = new HashMap<String, Integer>(2 * feuilles.size());
+		for (int i = 0; i < feuilles.size(); i++)
+			if (this.taxons.put(feuilles.get(i).getProt(), i) != null)
+				throw new IllegalArgumentException("La protéine " + feuilles.get(i).getProt() + " est sur plusieurs feuilles.");
+		if (alignement.size() != feuilles.size())
+			throw new IllegalArgumentException("L'alignement ne correspond pas aux feuilles de l'arbre.");
+		for (int i = 0; i < alignement.size(); i++)
+			if (!this.taxons.containsKey(alignement.getNom(i)))
+				throw new IllegalArgumentException("La protéine " + alignement.getNom(i) + " n'est pas une feuille de l'arbre.");
+		this.mots = (Math.max(0, feuilles.size() - 1) >>> 6) + 1;
+	}
+
+	/**
+	 * Calculer les supports bootstrap de l'arbre et les écrire sur ses noeuds.
+	 *
+	 * @param nbReplicats
+	 * 		  le nombre de réplicats
+	 * @param graine
+	 * 		  la graine du tirage des colonnes
+	 * @param pool
+	 * 		  le pool de threads sur lequel répartir les réplicats, ou <code>null</code> pour une exécution séquentielle
+	 *
+	 * @return le nombre de bipartitions de l'arbre de référence qui ont reçu un support.
+	 */
+	public int executer(int nbReplicats, long graine, ForkJoinPool pool) {
+		/* Les bipartitions de l'arbre de référence et celle de chacun de ses noeuds. L'arbre compact numérote les noeuds en
+		 * pre-order, comme l'index de l'arbre (BinTree.getNoeud(int)). */
+		CompactTree compact = CompactTree.fromBinTree(this.arbre, this.taxons);
+		int[] aretes = new int[compact.size()];
+		Bipartitions reference = new Bipartitions(compact, aretes);
+		AtomicIntegerArray frequences = new AtomicIntegerArray(reference.size());
+
+		/* Une graine par réplicat, tirées à l'avance pour ne pas dépendre de l'ordre d'exécution */
+		long[] graines = new long[nbReplicats];
+		SplittableRandom source = new SplittableRandom(graine);
+		for (int r = 0; r < nbReplicats; r++)
+			graines[r] = source.nextLong();
+
+		TacheReplicats tache = new TacheReplicats(this, graines, reference, frequences, 0, nbReplicats);
+		if (pool == null)
+			tache.compute();
+		else
+			pool.invoke(tache);
+
+		for (int k = 0; k < aretes.length; k++)
+			if (aretes[k] >= 0)
+				this.arbre.getNoeud(k).setSupport(nbReplicats == 0 ? 0 : (double) frequences.get(aretes[k]) / nbReplicats);
+		return reference.size();
+	}
+
+	/**
+	 * Un réplicat: tirage des colonnes, matrice des distances, arbre NJ, puis comptage de ses bipartitions présentes dans
+	 * l'arbre de référence.
+	 */
+	private void replicat(long graine, Bipartitions reference, AtomicIntegerArray frequences) {
+		int longueur = this.alignement.getLongueur();
+		int[] poids = new int[longueur];
+		SplittableRandom aleatoire = new SplittableRandom(graine);
+		for (int c = 0; c < longueur; c++)
+			poids[aleatoire.nextInt(longueur)]++;
+
+		double[][] distances = new DistanceMatrixBuilder(this.alignement.reechantillonner(poids), null, null).construire();
+		HashMap<Integer, Node> tableNoeuds = new HashMap<Integer, Node>(2 * distances.length);
+		for (int i = 0; i < distances.length; i++)
+			tableNoeuds.put(i, new Node(this.alignement.getNom(i)));
+		BinTree arbre = NJEngine.neighborJoining(distances, tableNoeuds, this.recherche, null, null);
+
+		long[] tableau = new Bipartitions(arbre, this.taxons).exporter(this.mots);
+		for (int debut = 0; debut < tableau.length; debut += this.mots) {
+			int rang = reference.rang(tableau, debut);
+			if (rang >= 0)
+				frequences.incrementAndGet(rang);
+		}
+	}
+
+	@SuppressWarnings("serial")
+	private static final class TacheReplicats extends RecursiveAction {
+		private final Bootstrap bootstrap;
+		private final long[] graines;
+		private final Bipartitions reference;
+		private final AtomicIntegerArray frequences;
+		private final int debut;
+		private final int fin;
+
+		TacheReplicats(Bootstrap bootstrap, long[] graines, Bipartitions reference, AtomicIntegerArray frequences, int debut, int fin) {
+			this.bootstrap = bootstrap;
+			this.graines = graines;
+			this.reference = reference;
+			this.frequences = frequences;
+			this.debut = debut;
+			this.fin = fin;
+		}
+
+		@Override
+		protected void compute() {
+			if (this.fin - this.debut <= REPLICATS_PAR_TACHE) {
+				for (int r = this.debut; r < this.fin; r++)
+					this.bootstrap.replicat(this.graines[r], this.reference, this.frequences);
+				return;
+			}
+			int milieu = (this.debut + this.fin) >>> 1;
+			invokeAll(new TacheReplicats(this.bootstrap, this.graines, this.reference, this.frequences, this.debut, milieu),
+					new TacheReplicats(this.bootstrap, this.graines, this.reference, this.frequences, milieu, this.fin));
+		}
+	}
+}
@@ -0,0 +1,155 @@
+import java.util.*;
+
+/**
+ * Recherche des arbres candidats les plus proches de l'arbre NJ au sens de RF.
+ * <p>Les bipartitions de l'arbre NJ sont calculées une seule fois. Pour chaque candidat, RF ne dépend que du nombre de ses
+ * bipartitions absentes de l'arbre NJ (voir {@link Bipartitions#absentes(CompactTree, int)}): dès que ce nombre dépasse celui
+ * du moins bon des k meilleurs candidats, le candidat ne peut plus entrer parmi eux et son parcours s'arrête. Seuls les k
+ * meilleurs candidats et leur chaîne Newick sont gardés en mémoire.</p>
+ * <p>À distance égale, le premier candidat ajouté est le meilleur, comme dans {@link PhylogenyNeighborJoining#main(String[])}.</p>
+ */
+public class CandidateSearch {
+
+	/**
+	 * Un candidat retenu: sa position parmi les candidats ajoutés, sa chaîne Newick et sa distance RF avec l'arbre NJ.
+	 */
+	public static final class Candidat {
+		private final int index;
+		private final String newick;
+		private final int absentes;
+		private final double distance;
+
+		Candidat(int index, String newick, int absentes, double distance) {
+			this.index = index;
+			this.newick = newick;
+			this.absentes = absentes;
+			this.distance = distance;
+		}
+
+		public int getIndex() {
+			return this.index;
+		}
+
+		public String getNewick() {
+			return this.newick;
+		}
+
+		public double getDistance() {
+			return this.distance;
+		}
+	}
+
+	/* Les bipartitions de l'arbre NJ et la table de protéines partagée avec les candidats. */
+	private final Bipartitions reference;
+	private final HashMap<String, Integer> taxons;
+
+	/* Le nombre de candidats à retenir et le nombre de candidats ajoutés. */
+	private final int k;
+	private int nbCandidats;
+
+	/* Les meilleurs candidats, le moins bon en tête: plus de bipartitions absentes, puis ajouté le plus tard. */
+	private static final Comparator<Candidat> MOINS_BON_EN_TETE = (a, b) -> a.absentes != b.absentes ?
+			Integer.compare(b.absentes, a.absentes) : Integer.compare(b.index, a.index);
+	private final PriorityQueue<Candidat> meilleurs;
+
+	/**
+	 * Prépare la recherche des candidats les plus proches d'un arbre.
+	 *
+	 * @param tree
+	 * 		  l'arbre NJ
+	 * @param k
+	 * 		  le nombre de candidats à retenir, au moins 1
+	 */
+	public CandidateSearch(BinTree tree, int k) {
+		if (k < 1)
+			throw new IllegalArgumentException("Le nombre de candidats à retenir doit être au moins 1.");
+		this.taxons = new HashMap<String, Integer>();
+		this.reference = new Bipartitions(tree, this.taxons);
+		this.k = k;
+		this.meilleurs = new PriorityQueue<Candidat>(k, MOINS_BON_EN_TETE);
+	}
+
+	/**
+	 * Calculer RF entre l'arbre NJ et un candidat, comme {@link BinTree#rf(BinTree)}, avec les bipartitions de l'arbre NJ déjà
+	 * calculées. Le candidat n'est pas ajouté à la recherche.
+	 *
+	 * @param candidat
+	 * 		  un arbre candidat
+	 *
+	 * @return RF entre l'arbre NJ et <code>candidat</code>
+	 */
+	public double rf(BinTree candidat) {
+		FlightEvents.RFComparison evenement = new FlightEvents.RFComparison();
+		evenement.begin();
+		int absentes = this.reference.absentes(CompactTree.fromBinTree(candidat, this.taxons), Integer.MAX_VALUE);
+		double rf = this.distance(absentes);
+		this.publier(evenement, absentes, rf);
+		return rf;
+	}
+
+	/**
+	 * Ajouter un candidat à la recherche. Son parcours s'arrête dès qu'il ne peut plus être parmi les k meilleurs.
+	 *
+	 * @param candidat
+	 * 		  un arbre candidat
+	 *
+	 * @return <code>true</code> si le candidat est pour l'instant parmi les k meilleurs.
+	 */
+	public boolean ajouter(BinTree candidat) {
+		int index = this.nbCandidats++;
+
+		/* Pour entrer parmi les k meilleurs, il faut strictement moins de bipartitions absentes que le moins bon d'entre eux */
+		int limite = this.meilleurs.size() < this.k ? Integer.MAX_VALUE : this.meilleurs.peek().absentes - 1;
+		if (limite < 0)
+			return false;
+		FlightEvents.RFComparison evenement = new FlightEvents.RFComparison();
+		evenement.begin();
+		int absentes = this.reference.absentes(CompactTree.fromBinTree(candidat, this.taxons), limite);
+		if (absentes > limite) {
+			this.publier(evenement, -1, Double.NaN);
+			return false;
+		}
+		this.publier(evenement, absentes, this.distance(absentes));
+
+		if (this.meilleurs.size() == this.k)
+			this.meilleurs.poll();
+		this.meilleurs.add(new Candidat(index, candidat.toNewick(), absentes, this.distance(absentes)));
+		return true;
+	}
+
+	/**
+	 * @return le nombre de candidats ajoutés.
+	 */
+	public int getNbCandidats() {
+		return this.nbCandidats;
+	}
+
+	/**
+	 * @return les k meilleurs candidats ajoutés (moins s'il y a moins de k candidats), du plus proche au moins proche de
+	 * 		   l'arbre NJ.
+	 */
+	public ArrayList<Candidat> getMeilleurs() {
+		ArrayList<Candidat> liste = new ArrayList<Candidat>(this.meilleurs);
+		liste.sort(MOINS_BON_EN_TETE.reversed());
+		return liste;
+	}
+
+	/**
+	 * Enregistrer une comparaison avec l'arbre NJ, si un enregistrement JFR est en cours.
+	 */
+	private void publier(FlightEvents.RFComparison evenement, int absentes, double distance) {
+		if (evenement.shouldCommit()) {
+			evenement.feuilles = this.reference.getNbFeuilles();
+			evenement.absentes = absentes;
+			evenement.distance = distance;
+			evenement.commit();
+		}
+	}
+
+	/**
+	 * RF à partir du nombre de bipartitions absentes, comme {@link Bipartitions#rf(Bipartitions)}.
+	 */
+	private double distance(int absentes) {
+		return (double) 2 * (double) absentes / ((double) (2 * (this.reference.getNbFeuilles() - 3)));
+	}
+}
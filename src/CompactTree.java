@@ -0,0 +1,623 @@
+import java.util.*;
+
+/**
+ * Un arbre binaire enraciné rangé dans des tableaux primitifs, à la place d'un objet {@link Node} par noeud.
+ * <p>Les noeuds sont numérotés de 0 à {@link #size()} - 1. Pour le noeud k:</p>
+ * <ol>
+ * 		<li><code>left[k]</code> et <code>right[k]</code> sont ses enfants, -1 s'il n'en a pas.</li>
+ * 		<li><code>parent[k]</code> est son parent, -1 pour la racine.</li>
+ * 		<li><code>dist[k]</code> est la longueur de son arête parente, comme {@link Node#getDist()}.</li>
+ * 		<li><code>taxon[k]</code> est le numéro de la protéine d'une feuille dans une table partagée par plusieurs arbres
+ * 			(comme pour {@link Bipartitions}), -1 pour un noeud interne.</li>
+ * </ol>
+ * <p>Un arbre de n noeuds occupe ainsi cinq tableaux de n cases, sans objet par noeud ni chaîne de caractères: on peut en
+ * garder un grand nombre en mémoire. Les parcours utilisent les liens vers les parents au lieu d'une pile ou d'appels
+ * récursifs et n'allouent rien: la profondeur de l'arbre n'a pas d'importance.</p>
+ */
+public class CompactTree {
+
+	private final int[] left;
+	private final int[] right;
+	private final int[] parent;
+	private final double[] dist;
+	private final int[] taxon;
+	private int racine;
+
+	/**
+	 * Crée un arbre de <code>taille</code> noeuds sans enfants, tous de numéro de protéine -1. S'il n'est pas vide, la racine
+	 * est le noeud 0.
+	 *
+	 * @param taille
+	 * 		  le nombre de noeuds de l'arbre
+	 */
+	public CompactTree(int taille) {
+		this.left = new int[taille];
+		this.right = new int[taille];
+		this.parent = new int[taille];
+		this.dist = new double[taille];
+		this.taxon = new int[taille];
+		Arrays.fill(this.left, -1);
+		Arrays.fill(this.right, -1);
+		Arrays.fill(this.parent, -1);
+		Arrays.fill(this.taxon, -1);
+		this.racine = taille == 0 ? -1 : 0;
+	}
+
+	/**
+	 * Copie un arbre binaire enraciné. Les noeuds sont numérotés dans l'ordre pre-order de l'arbre, la racine recevant le
+	 * numéro 0: ce sont les positions de l'index de l'arbre ({@link BinTree#getNoeud(int)}). La copie ne modifie pas l'arbre: des arbres qui partagent des noeuds peuvent être
+	 * copiés en même temps depuis plusieurs threads, avec une table de protéines propre à chaque thread ou déjà remplie.
+	 *
+	 * @param tree
+	 * 		  l'arbre à copier
+	 * @param taxons
+	 * 		  la table qui à chaque protéine associe son numéro. Les protéines de l'arbre qui n'y sont pas encore reçoivent le
+	 * 		  prochain numéro libre: la même table doit être utilisée pour tous les arbres que l'on veut comparer.
+	 *
+	 * @return la copie compacte de l'arbre.
+	 */
+	public static CompactTree fromBinTree(BinTree tree, HashMap<String, Integer> taxons) {
+		if (tree.getRoot() == null)
+			return new CompactTree(0);
+
+		/* Parcours pre-order avec une pile de noeuds. Pour chaque noeud, on retient le numéro de son parent et le côté:
+		 * 2 * parent pour un enfant gauche, 2 * parent + 1 pour un enfant droit, -1 pour la racine. */
+		ArrayList<Node> ordre = new ArrayList<Node>();
+		int[] liens = new int[16];
+		Node[] pile = new Node[16];
+		int[] pileLiens = new int[16];
+		int sommet = 0;
+		pile[sommet] = tree.getRoot();
+		pileLiens[sommet++] = -1;
+		while (sommet > 0) {
+			Node noeud = pile[--sommet];
+			int k = ordre.size();
+			if (k == liens.length)
+				liens = Arrays.copyOf(liens, 2 * k);
+			liens[k] = pileLiens[sommet];
+			ordre.add(noeud);
+			if (sommet + 2 > pile.length) {
+				pile = Arrays.copyOf(pile, 2 * pile.length);
+				pileLiens = Arrays.copyOf(pileLiens, 2 * pileLiens.length);
+			}
+			if (noeud.getRightChild() != null) {
+				pile[sommet] = noeud.getRightChild();
+				pileLiens[sommet++] = 2 * k + 1;
+			}
+			if (noeud.getLeftChild() != null) {
+				pile[sommet] = noeud.getLeftChild();
+				pileLiens[sommet++] = 2 * k;
+			}
+		}
+
+		CompactTree compact = new CompactTree(ordre.size());
+		for (int k = 0; k < compact.size(); k++) {
+			Node noeud = ordre.get(k);
+			compact.dist[k] = noeud.getDist();
+			if (liens[k] >= 0)
+				compact.lier(liens[k] >>> 1, k, (liens[k] & 1) == 0);
+			if (noeud.isLeave()) {
+				Integer id = taxons.get(noeud.getProt());
+				if (id == null) {
+					id = taxons.size();
+					taxons.put(noeud.getProt(), id);
+				}
+				compact.taxon[k] = id;
+			}
+		}
+		return compact;
+	}
+
+	/**
+	 * Inverse une table de protéines.
+	 *
+	 * @param taxons
+	 * 		  la table qui à chaque protéine associe son numéro
+	 *
+	 * @return le tableau qui à chaque numéro associe sa protéine.
+	 */
+	public static String[] noms(HashMap<String, Integer> taxons) {
+		String[] noms = new String[taxons.size()];
+		for (Map.Entry<String, Integer> entree : taxons.entrySet())
+			noms[entree.getValue()] = entree.getKey();
+		return noms;
+	}
+
+	/**
+	 * Reconstruit un arbre binaire enraciné fait d'objets {@link Node}.
+	 *
+	 * @param noms
+	 * 		  le nom de chaque numéro de protéine (voir {@link #noms(HashMap)})
+	 *
+	 * @return un <code>BinTree</code> de même forme, avec les mêmes protéines et distances.
+	 */
+	public BinTree toBinTree(String[] noms) {
+		if (this.racine < 0)
+			return new BinTree();
+		Node[] noeuds = new Node[this.size()];
+		for (int k = 0; k < noeuds.length; k++) {
+			noeuds[k] = this.taxon[k] >= 0 ? new Node(noms[this.taxon[k]]) : new Node();
+			noeuds[k].addDist(this.dist[k]);
+		}
+		for (int k = 0; k < noeuds.length; k++) {
+			if (this.left[k] >= 0)
+				noeuds[k].addLeftChild(noeuds[this.left[k]]);
+			if (this.right[k] >= 0)
+				noeuds[k].addRightChild(noeuds[this.right[k]]);
+		}
+		return new BinTree(noeuds[this.racine]);
+	}
+
+	/* Getters */
+	public int size() {
+		return this.left.length;
+	}
+
+	public int getRacine() {
+		return this.racine;
+	}
+
+	public int getLeftChild(int noeud) {
+		return this.left[noeud];
+	}
+
+	public int getRightChild(int noeud) {
+		return this.right[noeud];
+	}
+
+	public int getParent(int noeud) {
+		return this.parent[noeud];
+	}
+
+	public double getDist(int noeud) {
+		return this.dist[noeud];
+	}
+
+	public int getTaxon(int noeud) {
+		return this.taxon[noeud];
+	}
+
+	public boolean isLeave(int noeud) {
+		return this.left[noeud] < 0 && this.right[noeud] < 0;
+	}
+
+	/* Setters */
+	public void setDist(int noeud, double dist) {
+		this.dist[noeud] = dist;
+	}
+
+	public void setTaxon(int noeud, int taxon) {
+		this.taxon[noeud] = taxon;
+	}
+
+	/**
+	 * Remplace l'enfant gauche d'un noeud, comme {@link Node#addLeftChild(Node)}.
+	 *
+	 * @param noeud
+	 * 		  le noeud parent
+	 * @param enfant
+	 * 		  le nouvel enfant gauche, ou -1
+	 */
+	public void addLeftChild(int noeud, int enfant) {
+		this.lier(noeud, enfant, true);
+	}
+
+	/**
+	 * Remplace l'enfant droit d'un noeud, comme {@link Node#addRightChild(Node)}.
+	 *
+	 * @param noeud
+	 * 		  le noeud parent
+	 * @param enfant
+	 * 		  le nouvel enfant droit, ou -1
+	 */
+	public void addRightChild(int noeud, int enfant) {
+		this.lier(noeud, enfant, false);
+	}
+
+	private void lier(int noeud, int enfant, boolean gauche) {
+		int ancien = gauche ? this.left[noeud] : this.right[noeud];
+		if (ancien >= 0 && this.parent[ancien] == noeud && ancien != (gauche ? this.right[noeud] : this.left[noeud]))
+			this.parent[ancien] = -1;
+		if (gauche)
+			this.left[noeud] = enfant;
+		else
+			this.right[noeud] = enfant;
+		if (enfant >= 0)
+			this.parent[enfant] = noeud;
+	}
+
+	/**
+	 * Change la racine de l'arbre. L'ancienne racine garde ses enfants.
+	 *
+	 * @param noeud
+	 * 		  la nouvelle racine, qui perd son lien vers son parent
+	 */
+	public void setRacine(int noeud) {
+		this.racine = noeud;
+		if (noeud >= 0)
+			this.parent[noeud] = -1;
+	}
+
+/// Parcours ///////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+
+	/**
+	 * Remplit <code>ordre</code> avec les noeuds de l'arbre dans l'ordre post-order (gauche, droite, puis le noeud).
+	 *
+	 * @param ordre
+	 * 		  un tableau d'au moins {@link #size()} cases
+	 *
+	 * @return le nombre de noeuds écrits dans <code>ordre</code>.
+	 */
+	public int postOrdre(int[] ordre) {
+		int k = 0;
+		if (this.racine < 0)
+			return k;
+		for (int noeud = this.premier(this.racine); noeud >= 0; noeud = this.suivant(noeud, this.racine))
+			ordre[k++] = noeud;
+		return k;
+	}
+
+	/**
+	 * Marque dans un tableau de bits les numéros des protéines aux feuilles du sous-arbre d'un noeud.
+	 *
+	 * @param noeud
+	 * 		  la racine du sous-arbre
+	 * @param ensemble
+	 * 		  le tableau de bits, assez grand pour le plus grand numéro de protéine. Il n'est pas vidé au préalable.
+	 *
+	 * @return le nombre de feuilles du sous-arbre.
+	 */
+	public int feuilles(int noeud, long[] ensemble) {
+		int nb = 0;
+		for (int x = this.premier(noeud); x >= 0; x = this.suivant(x, noeud)) {
+			if (this.isLeave(x)) {
+				if (this.taxon[x] >= 0)
+					ensemble[this.taxon[x] >>> 6] |= 1L << this.taxon[x];
+				nb++;
+			}
+		}
+		return nb;
+	}
+
+	/**
+	 * @return le premier noeud du sous-arbre de <code>noeud</code> dans l'ordre post-order: la feuille atteinte en descendant
+	 * 		   à gauche tant que possible, à droite sinon.
+	 */
+	private int premier(int noeud) {
+		while (!this.isLeave(noeud))
+			noeud = this.left[noeud] >= 0 ? this.left[noeud] : this.right[noeud];
+		return noeud;
+	}
+
+	/**
+	 * @return le noeud qui suit <code>noeud</code> dans l'ordre post-order du sous-arbre de <code>depart</code>, ou -1 si
+	 * 		   <code>noeud</code> est <code>depart</code>.
+	 */
+	private int suivant(int noeud, int depart) {
+		if (noeud == depart)
+			return -1;
+		int p = this.parent[noeud];
+		if (noeud == this.left[p] && this.right[p] >= 0)
+			return this.premier(this.right[p]);
+		return p;
+	}
+
+/// Transformation CompactTree --> Newick //////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+
+	/**
+	 * @param noms
+	 * 		  le nom de chaque numéro de protéine
+	 *
+	 * @return l'arbre au format Newick, comme {@link BinTree#toNewick()}.
+	 */
+	public String toNewick(String[] noms) {
+		StringBuilder newick = new StringBuilder();
+		this.appendNewick(newick, noms, false);
+		return newick.toString();
+	}
+
+	/**
+	 * @param noms
+	 * 		  le nom de chaque numéro de protéine
+	 *
+	 * @return l'arbre au format Newick avec les distances, comme {@link BinTree#toNewickDist()}.
+	 */
+	public String toNewickDist(String[] noms) {
+		StringBuilder newick = new StringBuilder();
+		this.appendNewick(newick, noms, true);
+		return newick.toString();
+	}
+
+	/**
+	 * Écrit l'arbre au format Newick à la suite de <code>newick</code>, dans le même format que {@link BinTree#toNewick()} ou
+	 * {@link BinTree#toNewickDist()}. Le parcours suit les liens vers les parents, sans pile ni appel récursif.
+	 *
+	 * @param newick
+	 * 		  la chaîne à compléter
+	 * @param noms
+	 * 		  le nom de chaque numéro de protéine
+	 * @param distances
+	 * 		  <code>true</code> pour écrire la distance de chaque noeud
+	 */
+	public void appendNewick(StringBuilder newick, String[] noms, boolean distances) {
+		int noeud = this.racine;
+		boolean descente = true;
+		int precedent = -1;
+		while (noeud >= 0) {
+			if (descente && !this.isLeave(noeud)) {
+				/* On entre dans un noeud interne: on descend vers son premier enfant */
+				newick.append('(');
+				noeud = this.left[noeud] >= 0 ? this.left[noeud] : this.right[noeud];
+				continue;
+			}
+			if (!descente && precedent == this.left[noeud] && this.right[noeud] >= 0) {
+				/* On revient de l'enfant gauche: on descend vers l'enfant droit */
+				newick.append(',');
+				noeud = this.right[noeud];
+				descente = true;
+				continue;
+			}
+
+			/* Le noeud est terminé: une feuille, ou un noeud interne dont on a écrit tous les enfants */
+			if (this.isLeave(noeud))
+				newick.append(this.taxon[noeud] >= 0 ? noms[this.taxon[noeud]] : null);
+			else
+				newick.append(')');
+			if (distances)
+				newick.append(':').append(Math.round(this.dist[noeud] * 10000.0) / 10000.0);
+			if (noeud == this.racine)
+				break;
+			precedent = noeud;
+			noeud = this.parent[noeud];
+			descente = false;
+		}
+		newick.append(';');
+	}
+
+/// Mid-point ////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+
+	/**
+	 * Enracine l'arbre au milieu de son plus long chemin, comme {@link BinTree#midPoint()}: la forme et les distances
+	 * obtenues sont les mêmes. Le noeud de l'ancienne racine, qui disparaît de l'arbre, devient la nouvelle racine (de
+	 * distance -1): le nombre de noeuds ne change pas.
+	 * <p>Les tableaux de travail sont alloués à chaque appel: pour enraciner de nombreux arbres sans allocation, voir
+	 * {@link #midPoint(int[], double[])}.</p>
+	 */
+	public void midPoint() {
+		this.midPoint(new int[3 * this.size()], new double[this.size()]);
+	}
+
+	/**
+	 * Enracine l'arbre au milieu de son plus long chemin, comme {@link #midPoint()}, dans des tableaux de travail fournis par
+	 * l'appelant: rien n'est alloué. Les mêmes tableaux peuvent servir à tous les arbres de taille inférieure ou égale.
+	 * <p>Le plus long chemin est trouvé comme avec {@link BinTree#diametre()}.</p>
+	 *
+	 * @param entiers
+	 * 		  un tableau d'au moins 3 × {@link #size()} cases
+	 * @param reels
+	 * 		  un tableau d'au moins {@link #size()} cases
+	 */
+	public void midPoint(int[] entiers, double[] reels) {
+		int m = this.size();
+		int longueur = this.diametre(entiers, reels);
+		if (longueur == 0)
+			return;
+
+		/* Le chemin est rangé dans les cases 2m à 2m + longueur - 1 */
+		int[] chemin = entiers;
+		int debutChemin = 2 * m;
+		double mid = this.distNode(chemin, debutChemin, chemin[debutChemin + longueur - 1]) / 2;
+
+		/* Les bornes de l'arête sur laquelle est situé le mid-point: l'enfant, puis le parent */
+		int current;
+		int next;
+		double distance = 0;
+		int i = debutChemin;
+		current = -1;
+		next = -1;
+		while (distance < mid) {
+			current = chemin[i];
+			next = chemin[i + 1];
+			if (this.parent[current] != chemin[i + 1])
+				break;
+			distance += this.dist[current];
+			i++;
+		}
+		if (distance < mid) {
+			do {
+				current = chemin[i + 1];
+				next = chemin[i];
+				if (this.racine != this.parent[current])
+					distance += this.dist[current];
+				i++;
+			} while (distance < mid);
+		}
+
+		double oldDist = this.dist[next];
+		double curDist;
+		double nextDist;
+		if (next == this.racine) {
+			curDist = mid - this.distNode(chemin, debutChemin, current);
+			if (this.left[next] == current)
+				next = this.right[next];
+			else if (this.right[next] == current)
+				next = this.left[next];
+			nextDist = this.dist[current] - curDist;
+		}
+		else if (this.distNode(chemin, debutChemin, next) >= mid) {
+			curDist = mid - this.distNode(chemin, debutChemin, current);
+			nextDist = this.distNode(chemin, debutChemin, next) - mid;
+		}
+		else {
+			curDist = this.distNode(chemin, debutChemin, current) - mid;
+			nextDist = mid - this.distNode(chemin, debutChemin, next);
+		}
+		this.dist[current] = curDist;
+		this.dist[next] = nextDist;
+
+		/* Les enfants de la nouvelle racine. Pendant les rotations, seuls les enfants changent: parent contient toujours les
+		 * parents d'origine, qui sont recalculés à la fin. */
+		int racine = this.racine;
+		int nouvelleGauche = current;
+		int nouvelleDroite = next;
+
+		if (this.parent[next] != racine || this.parent[current] != racine) {
+			while (true) {
+				if (this.left[next] == current)
+					this.left[next] = this.right[next];
+				if (next == racine) {
+					this.right[current] = current == this.left[next] ? this.right[next] : this.left[next];
+					break;
+				}
+				this.right[next] = this.parent[next];
+				current = next;
+				next = this.right[next];
+				double temp = this.dist[next];
+				this.dist[next] = oldDist;
+				oldDist = temp;
+			}
+		}
+
+		/* L'ancienne racine n'est plus dans l'arbre: sa case devient la nouvelle racine */
+		this.left[racine] = nouvelleGauche;
+		this.right[racine] = nouvelleDroite;
+		this.dist[racine] = -1;
+		this.taxon[racine] = -1;
+		for (int k = 0; k < this.size(); k++) {
+			if (this.left[k] >= 0)
+				this.parent[this.left[k]] = k;
+			if (this.right[k] >= 0)
+				this.parent[this.right[k]] = k;
+		}
+		this.parent[racine] = -1;
+	}
+
+	/**
+	 * Trouve le plus long chemin entre deux feuilles, avec les mêmes règles et le même départage des égalités que
+	 * {@link BinTree#diametre()}.
+	 *
+	 * @param entiers
+	 * 		  au moins 3m cases: l'ordre pre-order des noeuds (cases 0 à m - 1), la première feuille la plus éloignée de chaque
+	 * 		  noeud (cases m à 2m - 1), puis le chemin à partir de la case 2m
+	 * @param hauteur
+	 * 		  au moins m cases: la plus grande distance de chaque noeud à une feuille de son sous-arbre
+	 *
+	 * @return le nombre de noeuds du chemin, de la première feuille (en pre-order) à la seconde, ou 0 si aucun chemin n'a une
+	 * 		   longueur strictement positive.
+	 */
+	private int diametre(int[] entiers, double[] hauteur) {
+		int m = this.size();
+		if (m == 0)
+			return 0;
+
+		/* L'ordre pre-order des noeuds sert à départager les égalités: on le lit à l'envers dans le post-order droit-gauche */
+		int[] ordre = entiers;
+		int k = 0;
+		for (int noeud = this.racine; noeud >= 0; noeud = this.suivantPreOrdre(noeud))
+			ordre[k++] = noeud;
+
+		/* feuille[m + noeud]: le rang pre-order de la première feuille qui atteint la hauteur du noeud */
+		int[] feuille = entiers;
+		double max = Double.MIN_VALUE;
+		int debut = -1;
+		int fin = -1;
+		int ancetre = -1;
+		for (k = m - 1; k >= 0; k--) {
+			int noeud = ordre[k];
+			if (this.isLeave(noeud)) {
+				hauteur[noeud] = 0;
+				feuille[m + noeud] = k;
+				continue;
+			}
+			int l = this.left[noeud];
+			int r = this.right[noeud];
+			double gauche = l < 0 ? 0 : hauteur[l] + this.dist[l];
+			double droite = r < 0 ? 0 : hauteur[r] + this.dist[r];
+			if (r < 0 || (l >= 0 && (gauche > droite || (gauche == droite && feuille[m + l] < feuille[m + r])))) {
+				hauteur[noeud] = gauche;
+				feuille[m + noeud] = feuille[m + l];
+			}
+			else {
+				hauteur[noeud] = droite;
+				feuille[m + noeud] = feuille[m + r];
+			}
+			if (l < 0 || r < 0)
+				continue;
+
+			double longueur = gauche + (noeud == this.racine ? hauteur[r] : droite);
+			int a = feuille[m + l];
+			int b = feuille[m + r];
+			if (longueur > max || (longueur == max && (a < debut || (a == debut && b < fin)))) {
+				max = longueur;
+				debut = a;
+				fin = b;
+				ancetre = noeud;
+			}
+		}
+		if (ancetre < 0)
+			return 0;
+
+		/* Le chemin remonte de la première feuille jusqu'à l'ancêtre commun, puis redescend jusqu'à la seconde. Les cases de
+		 * l'ordre pre-order ne servent plus: on peut les réutiliser. */
+		int premiere = ordre[debut];
+		int seconde = ordre[fin];
+		int[] chemin = entiers;
+		int montee = 1;
+		for (int noeud = premiere; noeud != ancetre; noeud = this.parent[noeud])
+			montee++;
+		int descente = 0;
+		for (int noeud = seconde; noeud != ancetre; noeud = this.parent[noeud])
+			descente++;
+		k = 2 * m;
+		for (int noeud = premiere; noeud != ancetre; noeud = this.parent[noeud])
+			chemin[k++] = noeud;
+		chemin[k] = ancetre;
+		k = 2 * m + montee + descente - 1;
+		for (int noeud = seconde; noeud != ancetre; noeud = this.parent[noeud])
+			chemin[k--] = noeud;
+		return montee + descente;
+	}
+
+	/**
+	 * @return le noeud qui suit <code>noeud</code> dans l'ordre pre-order de l'arbre, ou -1.
+	 */
+	private int suivantPreOrdre(int noeud) {
+		if (this.left[noeud] >= 0)
+			return this.left[noeud];
+		if (this.right[noeud] >= 0)
+			return this.right[noeud];
+		/* On remonte jusqu'au premier ancêtre dont on vient de l'enfant gauche et qui a un enfant droit */
+		while (noeud != this.racine) {
+			int p = this.parent[noeud];
+			if (noeud == this.left[p] && this.right[p] >= 0)
+				return this.right[p];
+			noeud = p;
+		}
+		return -1;
+	}
+
+	/**
+	 * Calcule la distance d'un noeud sur un chemin, comme {@link BinTree#distNode(ArrayList, Node)}. Le chemin commence à la
+	 * case <code>debut</code> de <code>chemin</code>.
+	 */
+	private double distNode(int[] chemin, int debut, int noeud) {
+		double distance = 0;
+		int current;
+		int i = debut;
+		while ((current = chemin[i]) != noeud) {
+			if (this.parent[current] != chemin[i + 1])
+				break;
+			distance += this.dist[current];
+			i++;
+		}
+		if (current == noeud)
+			return distance;
+		do {
+			current = chemin[i + 1];
+			if (this.racine != this.parent[current])
+				distance += this.dist[current];
+			i++;
+		} while (current != noeud);
+		return distance;
+	}
+}
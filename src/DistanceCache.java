@@ -0,0 +1,606 @@
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.DoubleBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.nio.file.attribute.FileTime;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Cache sur disque de la matrice des distances.
+ * <p>La distance entre deux protéines ne dépend que de leurs séquences et de la matrice de mutations: une matrice calculée
+ * reste donc valable tant que le fichier "*.fa" et le fichier BLOSUM ne changent pas, quels que soient les arbres
+ * candidats. Le cache est un répertoire qui contient un fichier par couple de fichiers d'entrée, nommé par l'empreinte
+ * SHA-256 de leur contenu.</p>
+ * <p>Le fichier contient, dans l'ordre:</p>
+ * <ol>
+ * 		<li>un en-tête: "NJDM", la version du format, 1 si seul le triangle supérieur est enregistré (matrice symétrique) et 0
+ * 			sinon, le nombre n de protéines, la longueur en octets de leurs noms et l'empreinte du fichier BLOSUM;</li>
+ * 		<li>les noms des protéines en UTF-8, séparés par "\n", dans l'ordre des lignes de la matrice;</li>
+ * 		<li>à partir d'une position multiple de 8, l'empreinte de la séquence filtrée et encodée (index de la matrice de
+ * 			mutations) de chaque protéine;</li>
+ * 		<li>les distances en <code>double</code>: le triangle supérieur ligne par ligne, diagonale comprise (n(n+1)/2 valeurs),
+ * 			ou les n×n cases.</li>
+ * </ol>
+ * <p>À la lecture, le fichier est projeté en mémoire et les distances sont recopiées dans l'ordre des feuilles de l'arbre
+ * courant: le résultat est identique, au bit près, à la matrice calculée par
+ * {@link PhylogenyNeighborJoining#matriceDistance(BinTree, double[][], HashMap)}.</p>
+ * <p>Quand des protéines sont ajoutées ou retirées du fichier "*.fa", son empreinte change mais la plupart des distances
+ * restent valables: {@link #mettreAJour(BinTree, EncodedAlignment, ForkJoinPool)} reprend la matrice d'un fichier
+ * précédent du cache et ne calcule que les lignes des protéines nouvelles ou dont la séquence filtrée a changé (le retrait
+ * des colonnes de gaps peut modifier toutes les séquences).</p>
+ * <p>Pour que le répertoire ne grandisse pas à chaque nouvelle version du fichier "*.fa", {@link #enregistrer} supprime:</p>
+ * <ol>
+ * 		<li>le fichier repris par {@link #mettreAJour}, remplacé par la nouvelle version;</li>
+ * 		<li>au-delà de {@link #FICHIERS_MAX} fichiers, les fichiers utilisés le moins récemment. Un fichier lu par
+ * 			{@link #charger(BinTree)} compte comme utilisé: sa date de modification est mise à jour.</li>
+ * </ol>
+ * <p>Le parcours du répertoire par {@link #mettreAJour(BinTree, EncodedAlignment, ForkJoinPool)} reste donc borné.</p>
+ */
+public class DistanceCache {
+
+	private static final int MAGIE = 0x4E4A444D;
+	private static final int VERSION = 3;
+	private static final int TAILLE_EN_TETE = 28;
+
+	/* Taille maximale d'une projection en mémoire: une matrice de plus de 2 Go est projetée par fenêtres de lignes. */
+	private static final long FENETRE_MAX = 1L << 30;
+
+	/* Nombre de lignes calculées par une tâche parallèle lors d'une mise à jour. */
+	private static final int LIGNES_PAR_TACHE = 4;
+
+	/**
+	 * Nombre maximal de fichiers gardés dans le répertoire du cache, par exemple pour plusieurs jeux de protéines.
+	 */
+	public static final int FICHIERS_MAX = 8;
+
+	/**
+	 * L'en-tête, les noms et les empreintes des séquences d'un fichier du cache.
+	 */
+	private static final class Contenu {
+		boolean triangle;
+		int n;
+		long empreinteBlosum;
+		String[] noms;
+		long[] sequences;
+		long debutDistances;
+	}
+
+	private final Path fichier;
+	private final long empreinteBlosum;
+
+	/* Le fichier repris par la dernière mise à jour, supprimé une fois la nouvelle matrice enregistrée */
+	private Path reprise;
+
+	/**
+	 * Prépare le cache de la matrice des distances d'un alignement et d'une matrice BLOSUM.
+	 *
+	 * @param repertoire
+	 * 		  le répertoire du cache, créé si besoin
+	 * @param fa
+	 * 		  un chemin vers le fichier "*.fa" des protéines
+	 * @param blosum
+	 * 		  un chemin vers le fichier de la matrice BLOSUM
+	 *
+	 * @throws IOException si un des fichiers ne peut être lu ou si le répertoire ne peut être créé.
+	 */
+	public DistanceCache(Path repertoire, String fa, String blosum) throws IOException {
+		Files.createDirectories(repertoire);
+		this.fichier = repertoire.resolve(hexadecimal(empreinte(Paths.get(fa), Paths.get(blosum))) + ".njdm");
+		this.empreinteBlosum = ByteBuffer.wrap(empreinte(Paths.get(blosum))).getLong();
+	}
+
+	/**
+	 * @return le fichier du cache pour l'alignement et la matrice BLOSUM.
+	 */
+	public Path getFichier() {
+		return this.fichier;
+	}
+
+	/**
+	 * Lire la matrice des distances entre les feuilles d'un arbre dans le cache.
+	 *
+	 * @param tree
+	 * 		  l'arbre dont on veut la matrice des distances entre les feuilles
+	 *
+	 * @return la table d'index des noeuds et la matrice des distances, dans le format de
+	 * 		   {@link PhylogenyNeighborJoining#matriceDistance(BinTree, double[][], HashMap)}, ou <code>null</code> si le cache
+	 * 		   n'a pas de fichier pour ces entrées, si le fichier n'est pas valide ou s'il ne contient pas toutes les feuilles.
+	 *
+	 * @throws IOException si le fichier du cache ne peut être lu.
+	 */
+	public Object[] charger(BinTree tree) throws IOException {
+		ArrayList<Node> leaves = tree.getLeavesNode();
+		HashMap<String, Integer> feuilles = feuilles(leaves);
+		if (feuilles == null || !Files.isRegularFile(this.fichier))
+			return null;
+
+		Object[] resultat;
+		try (FileChannel canal = FileChannel.open(this.fichier, StandardOpenOption.READ)) {
+			Contenu contenu = lireContenu(canal);
+			if (contenu == null)
+				return null;
+
+			/* Toutes les feuilles doivent être dans le cache */
+			int[] lignes = lignes(contenu, feuilles, null);
+			int trouvees = 0;
+			for (int ligne : lignes)
+				if (ligne >= 0)
+					trouvees++;
+			if (trouvees < leaves.size())
+				return null;
+
+			double[][] matriceDistance = new double[leaves.size()][leaves.size()];
+			recopier(canal, contenu, lignes, matriceDistance);
+			resultat = resultat(leaves, matriceDistance);
+		}
+		catch (NoSuchFileException e) {
+			/* Le fichier a été supprimé entre-temps par une autre exécution */
+			return null;
+		}
+
+		/* Le fichier vient d'être utilisé: il est le dernier à être supprimé s'il y a trop de fichiers */
+		try {
+			Files.setLastModifiedTime(this.fichier, FileTime.fromMillis(System.currentTimeMillis()));
+		}
+		catch (IOException e) {
+			/* Un cache en lecture seule reste utilisable */
+		}
+		return resultat;
+	}
+
+	/**
+	 * Calculer la matrice des distances entre les feuilles d'un arbre en reprenant celle d'un fichier précédent du cache. Parmi
+	 * les fichiers du répertoire calculés avec la même matrice BLOSUM, on choisit celui qui contient le plus de protéines de
+	 * l'arbre avec la même séquence filtrée. Seules les distances des autres protéines sont calculées. Le fichier repris est
+	 * supprimé par le prochain appel à {@link #enregistrer(BinTree, EncodedAlignment, double[][])}.
+	 *
+	 * @param tree
+	 * 		  l'arbre dont on veut la matrice des distances
+	 * @param alignement
+	 * 		  l'alignement des feuilles de l'arbre, dans l'ordre de {@link BinTree#getLeavesNode()}
+	 * @param pool
+	 * 		  le pool de threads sur lequel répartir les nouvelles lignes, ou <code>null</code> pour un calcul séquentiel
+	 *
+	 * @return la table d'index des noeuds et la matrice des distances, dans le format de
+	 * 		   {@link PhylogenyNeighborJoining#matriceDistance(BinTree, double[][], HashMap)}, ou <code>null</code> si aucun
+	 * 		   fichier du cache ne permet de reprendre au moins la moitié des protéines: le calcul complet est alors plus rapide.
+	 *
+	 * @throws IOException si le répertoire du cache ne peut être lu.
+	 */
+	public Object[] mettreAJour(BinTree tree, EncodedAlignment alignement, ForkJoinPool pool) throws IOException {
+		ArrayList<Node> leaves = tree.getLeavesNode();
+		HashMap<String, Integer> feuilles = feuilles(leaves);
+		long[] sequences = empreintesSequences(alignement, leaves.size());
+		if (feuilles == null || sequences == null)
+			return null;
+
+		/* Le fichier qui permet de reprendre le plus de protéines */
+		Path meilleur = null;
+		int reprises = 0;
+		try (DirectoryStream<Path> fichiers = Files.newDirectoryStream(this.fichier.getParent(), "*.njdm")) {
+			for (Path fichier : fichiers) {
+				try (FileChannel canal = FileChannel.open(fichier, StandardOpenOption.READ)) {
+					Contenu contenu = lireContenu(canal);
+					if (contenu == null || contenu.empreinteBlosum != this.empreinteBlosum)
+						continue;
+					int n = 0;
+					for (int ligne : lignes(contenu, feuilles, sequences))
+						if (ligne >= 0)
+							n++;
+					if (n > reprises) {
+						meilleur = fichier;
+						reprises = n;
+					}
+				}
+				catch (IOException e) {
+					/* Un fichier illisible, par exemple supprimé entre-temps par une autre exécution, n'est pas repris */
+				}
+			}
+		}
+		if (meilleur == null || 2 * reprises < leaves.size())
+			return null;
+		return mettreAJour(meilleur, tree, alignement, pool);
+	}
+
+	/**
+	 * Calculer la matrice des distances entre les feuilles d'un arbre en reprenant celle d'un fichier du cache: les distances
+	 * entre deux protéines présentes dans le fichier avec la même séquence filtrée sont recopiées, les autres sont calculées
+	 * comme dans {@link DistanceMatrixBuilder}. Les protéines du fichier absentes de l'arbre sont ignorées. Le fichier repris est
+	 * supprimé par le prochain appel à {@link #enregistrer(BinTree, EncodedAlignment, double[][])}.
+	 *
+	 * @param ancien
+	 * 		  un fichier du cache, calculé avec la même matrice BLOSUM
+	 * @param tree
+	 * 		  l'arbre dont on veut la matrice des distances
+	 * @param alignement
+	 * 		  l'alignement des feuilles de l'arbre, dans l'ordre de {@link BinTree#getLeavesNode()}
+	 * @param pool
+	 * 		  le pool de threads sur lequel répartir les nouvelles lignes, ou <code>null</code> pour un calcul séquentiel
+	 *
+	 * @return la table d'index des noeuds et la matrice des distances, identique au bit près à celle de
+	 * 		   {@link PhylogenyNeighborJoining#matriceDistance(BinTree, double[][], HashMap)}, ou <code>null</code> si le
+	 * 		   fichier n'est pas valide ou a été calculé avec une autre matrice BLOSUM.
+	 *
+	 * @throws IOException si le fichier ne peut être lu.
+	 */
+	public Object[] mettreAJour(Path ancien, BinTree tree, EncodedAlignment alignement, ForkJoinPool pool) throws IOException {
+		ArrayList<Node> leaves = tree.getLeavesNode();
+		HashMap<String, Integer> feuilles = feuilles(leaves);
+		long[] sequences = empreintesSequences(alignement, leaves.size());
+		if (feuilles == null || sequences == null)
+			return null;
+
+		int n = leaves.size();
+		double[][] matriceDistance = new double[n][n];
+		boolean[] reprises = new boolean[n];
+		try (FileChannel canal = FileChannel.open(ancien, StandardOpenOption.READ)) {
+			Contenu contenu = lireContenu(canal);
+			if (contenu == null || contenu.empreinteBlosum != this.empreinteBlosum)
+				return null;
+			int[] lignes = lignes(contenu, feuilles, sequences);
+			for (int ligne : lignes)
+				if (ligne >= 0)
+					reprises[ligne] = true;
+			recopier(canal, contenu, lignes, matriceDistance);
+		}
+
+		/* Les lignes des protéines nouvelles ou modifiées: pour la ligne i, les cases (i, j) et (j, i) de toutes les protéines
+		 * reprises et des protéines nouvelles j >= i. Deux lignes n'écrivent donc jamais la même case. */
+		boolean symetrique = alignement.isSymetrique();
+		int[] nouvelles = new int[n];
+		int nbNouvelles = 0;
+		for (int i = 0; i < n; i++)
+			if (!reprises[i])
+				nouvelles[nbNouvelles++] = i;
+
+		Calcul calcul = (debut, fin) -> {
+			for (int k = debut; k < fin; k++) {
+				int i = nouvelles[k];
+				for (int j = 0; j < n; j++) {
+					if (!reprises[j] && j < i)
+						continue;
+					double distance = alignement.distance(i, j);
+					matriceDistance[i][j] = distance;
+					if (j != i)
+						matriceDistance[j][i] = symetrique ? distance : alignement.distance(j, i);
+				}
+			}
+		};
+		if (pool == null)
+			calcul.lignes(0, nbNouvelles);
+		else
+			pool.invoke(new TacheLignes(calcul, 0, nbNouvelles));
+		this.reprise = ancien;
+		return resultat(leaves, matriceDistance);
+	}
+
+	/**
+	 * Enregistrer dans le cache la matrice des distances entre les feuilles d'un arbre. Le fichier est écrit à côté puis
+	 * renommé: une autre exécution qui lit le cache en même temps voit l'ancien fichier ou le nouveau, jamais un fichier
+	 * incomplet. Le fichier repris par {@link #mettreAJour} est ensuite supprimé, puis les fichiers utilisés le moins
+	 * récemment au-delà de {@link #FICHIERS_MAX}.
+	 *
+	 * @param tree
+	 * 		  l'arbre dont les feuilles correspondent aux lignes de la matrice
+	 * @param alignement
+	 * 		  l'alignement des feuilles de l'arbre, dans l'ordre de {@link BinTree#getLeavesNode()}
+	 * @param matriceDistance
+	 * 		  la matrice des distances entre les feuilles, avant l'algorithme NJ qui la modifie en place
+	 *
+	 * @throws IOException si le fichier du cache ne peut être écrit.
+	 */
+	public void enregistrer(BinTree tree, EncodedAlignment alignement, double[][] matriceDistance) throws IOException {
+		ArrayList<Node> leaves = tree.getLeavesNode();
+		int n = matriceDistance.length;
+		long[] sequences = empreintesSequences(alignement, leaves.size());
+		if (leaves.size() != n || sequences == null)
+			throw new IllegalArgumentException("La matrice des distances ne correspond pas aux feuilles de l'arbre.");
+
+		StringBuilder noms = new StringBuilder();
+		for (int i = 0; i < n; i++) {
+			String nom = leaves.get(i).getProt();
+			if (nom.indexOf('\n') >= 0)
+				throw new IllegalArgumentException("Le nom de protéine \"" + nom + "\" ne peut être mis en cache.");
+			noms.append(i == 0 ? "" : "\n").append(nom);
+		}
+		byte[] octets = noms.toString().getBytes(StandardCharsets.UTF_8);
+
+		/* Le triangle supérieur suffit si la matrice est symétrique, au bit près */
+		boolean triangle = true;
+		for (int i = 0; i < n && triangle; i++)
+			for (int j = i + 1; j < n && triangle; j++)
+				triangle = Double.doubleToRawLongBits(matriceDistance[i][j]) == Double.doubleToRawLongBits(matriceDistance[j][i]);
+
+		Path temporaire = Files.createTempFile(this.fichier.getParent(), this.fichier.getFileName().toString(), ".tmp");
+		try {
+			try (FileChannel canal = FileChannel.open(temporaire, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+				ByteBuffer enTete = ByteBuffer.allocate((int) debutEmpreintes(octets.length) + 8 * n);
+				enTete.putInt(MAGIE).putInt(VERSION).putInt(triangle ? 1 : 0).putInt(n).putInt(octets.length).putLong(this.empreinteBlosum);
+				enTete.put(octets);
+				enTete.position((int) debutEmpreintes(octets.length));
+				enTete.asLongBuffer().put(sequences);
+				enTete.clear();
+				ecrireTout(canal, enTete);
+
+				ByteBuffer ligne = ByteBuffer.allocate(8 * Math.max(n, 1));
+				for (int i = 0; i < n; i++) {
+					ligne.clear();
+					ligne.asDoubleBuffer().put(matriceDistance[i], triangle ? i : 0, triangle ? n - i : n);
+					ligne.limit(8 * (triangle ? n - i : n));
+					ecrireTout(canal, ligne);
+				}
+			}
+			Files.move(temporaire, this.fichier, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		}
+		finally {
+			Files.deleteIfExists(temporaire);
+		}
+
+		if (this.reprise != null && !this.reprise.equals(this.fichier))
+			supprimer(this.reprise);
+		this.reprise = null;
+		this.nettoyer();
+	}
+
+	/**
+	 * Supprimer les fichiers du répertoire utilisés le moins récemment, pour n'en garder que {@link #FICHIERS_MAX}. Le fichier
+	 * de ces entrées est toujours gardé.
+	 *
+	 * @throws IOException si le répertoire du cache ne peut être lu.
+	 */
+	private void nettoyer() throws IOException {
+		ArrayList<Path> fichiers = new ArrayList<Path>();
+		HashMap<Path, Long> dates = new HashMap<Path, Long>();
+		try (DirectoryStream<Path> contenu = Files.newDirectoryStream(this.fichier.getParent(), "*.njdm")) {
+			for (Path fichier : contenu) {
+				if (fichier.equals(this.fichier))
+					continue;
+				try {
+					dates.put(fichier, Files.getLastModifiedTime(fichier).toMillis());
+					fichiers.add(fichier);
+				}
+				catch (IOException e) {
+					/* Un fichier supprimé entre-temps par une autre exécution */
+				}
+			}
+		}
+		if (fichiers.size() < FICHIERS_MAX)
+			return;
+
+		/* Les plus récents d'abord: le fichier de ces entrées occupe une des places */
+		fichiers.sort((a, b) -> Long.compare(dates.get(b), dates.get(a)));
+		for (int k = FICHIERS_MAX - 1; k < fichiers.size(); k++)
+			supprimer(fichiers.get(k));
+	}
+
+	/**
+	 * Supprimer un fichier du cache. Une autre exécution qui le lit en même temps garde sa projection en mémoire; si le système
+	 * refuse la suppression, le fichier sera supprimé par un prochain nettoyage.
+	 */
+	private static void supprimer(Path fichier) {
+		try {
+			Files.deleteIfExists(fichier);
+		}
+		catch (IOException e) {
+			/* Le fichier est encore ouvert ailleurs */
+		}
+	}
+
+	/**
+	 * Lire l'en-tête, les noms et les empreintes des séquences d'un fichier du cache.
+	 *
+	 * @return le contenu du fichier, ou <code>null</code> si le fichier n'est pas valide.
+	 */
+	private static Contenu lireContenu(FileChannel canal) throws IOException {
+		long taille = canal.size();
+		if (taille < TAILLE_EN_TETE)
+			return null;
+		ByteBuffer enTete = canal.map(FileChannel.MapMode.READ_ONLY, 0, TAILLE_EN_TETE);
+		if (enTete.getInt() != MAGIE || enTete.getInt() != VERSION)
+			return null;
+		Contenu contenu = new Contenu();
+		contenu.triangle = enTete.getInt() == 1;
+		contenu.n = enTete.getInt();
+		int longueurNoms = enTete.getInt();
+		contenu.empreinteBlosum = enTete.getLong();
+		if (contenu.n < 0 || longueurNoms < 0)
+			return null;
+		long debutEmpreintes = debutEmpreintes(longueurNoms);
+		contenu.debutDistances = debutEmpreintes + 8L * contenu.n;
+		if (taille != contenu.debutDistances + 8 * nbDistances(contenu.n, contenu.triangle))
+			return null;
+
+		byte[] octets = new byte[longueurNoms];
+		canal.map(FileChannel.MapMode.READ_ONLY, TAILLE_EN_TETE, longueurNoms).get(octets);
+		contenu.noms = contenu.n == 0 ? new String[0] : new String(octets, StandardCharsets.UTF_8).split("\n", -1);
+		if (contenu.noms.length != contenu.n)
+			return null;
+		contenu.sequences = new long[contenu.n];
+		canal.map(FileChannel.MapMode.READ_ONLY, debutEmpreintes, 8L * contenu.n).asLongBuffer().get(contenu.sequences);
+		return contenu;
+	}
+
+	/**
+	 * @param feuilles
+	 * 		  la position de chaque protéine de l'arbre
+	 * @param sequences
+	 * 		  l'empreinte de la séquence de chaque feuille, ou <code>null</code> pour ne comparer que les noms
+	 *
+	 * @return pour chaque ligne du fichier, la ligne de la même protéine dans la nouvelle matrice, ou -1 si elle n'est pas
+	 * 		   reprise.
+	 */
+	private static int[] lignes(Contenu contenu, HashMap<String, Integer> feuilles, long[] sequences) {
+		int[] lignes = new int[contenu.n];
+		HashSet<String> vus = new HashSet<String>();
+		for (int a = 0; a < contenu.n; a++) {
+			Integer ligne = feuilles.get(contenu.noms[a]);
+			boolean reprise = ligne != null && vus.add(contenu.noms[a]) && (sequences == null || sequences[ligne] == contenu.sequences[a]);
+			lignes[a] = reprise ? ligne : -1;
+		}
+		return lignes;
+	}
+
+	/**
+	 * Recopier les distances du fichier entre protéines reprises, en projetant le fichier en mémoire par fenêtres d'au plus
+	 * {@link #FENETRE_MAX} octets.
+	 *
+	 * @param lignes
+	 * 		  pour chaque ligne du fichier, sa ligne dans <code>matrice</code> ou -1
+	 */
+	private static void recopier(FileChannel canal, Contenu contenu, int[] lignes, double[][] matrice) throws IOException {
+		int n = contenu.n;
+		double[] ligne = new double[n];
+		long position = contenu.debutDistances;
+		int a = 0;
+		while (a < n) {
+			/* Les lignes a à fin - 1 forment la prochaine fenêtre */
+			long octets = 0;
+			int fin = a;
+			while (fin < n && (fin == a || octets + 8L * longueurLigne(n, fin, contenu.triangle) <= FENETRE_MAX))
+				octets += 8L * longueurLigne(n, fin++, contenu.triangle);
+			DoubleBuffer fenetre = canal.map(FileChannel.MapMode.READ_ONLY, position, octets).asDoubleBuffer();
+			for (; a < fin; a++) {
+				int longueur = longueurLigne(n, a, contenu.triangle);
+				int i = lignes[a];
+				if (i < 0) {
+					fenetre.position(fenetre.position() + longueur);
+					continue;
+				}
+				int debut = n - longueur;
+				fenetre.get(ligne, debut, longueur);
+				for (int b = debut; b < n; b++) {
+					int j = lignes[b];
+					if (j < 0)
+						continue;
+					matrice[i][j] = ligne[b];
+					if (contenu.triangle)
+						matrice[j][i] = ligne[b];
+				}
+			}
+			position += octets;
+		}
+	}
+
+	/**
+	 * @return la position de chaque protéine parmi les feuilles, ou <code>null</code> si une protéine apparaît deux fois.
+	 */
+	private static HashMap<String, Integer> feuilles(ArrayList<Node> leaves) {
+		HashMap<String, Integer> feuilles = new HashMap<String, Integer>(2 * leaves.size());
+		for (int i = 0; i < leaves.size(); i++)
+			if (feuilles.put(leaves.get(i).getProt(), i) != null)
+				return null;
+		return feuilles;
+	}
+
+	/**
+	 * @return l'empreinte de la séquence encodée de chaque feuille, ou <code>null</code> si l'alignement n'a pas une séquence
+	 * 		   par feuille.
+	 */
+	private static long[] empreintesSequences(EncodedAlignment alignement, int nbFeuilles) {
+		if (alignement.size() != nbFeuilles)
+			return null;
+		MessageDigest sha = sha256();
+		long[] empreintes = new long[nbFeuilles];
+		for (int i = 0; i < nbFeuilles; i++)
+			empreintes[i] = ByteBuffer.wrap(sha.digest(alignement.getSequence(i))).getLong();
+		return empreintes;
+	}
+
+	private static Object[] resultat(ArrayList<Node> leaves, double[][] matriceDistance) {
+		HashMap<Integer, Node> tableNoeud = new HashMap<Integer, Node>(2 * leaves.size());
+		for (int i = 0; i < leaves.size(); i++)
+			tableNoeud.put(i, leaves.get(i));
+		return new Object[]{tableNoeud, matriceDistance};
+	}
+
+	private static int longueurLigne(int n, int i, boolean triangle) {
+		return triangle ? n - i : n;
+	}
+
+	private static long nbDistances(int n, boolean triangle) {
+		return triangle ? (long) n * (n + 1) / 2 : (long) n * n;
+	}
+
+	/* Les empreintes des séquences commencent au premier multiple de 8 qui suit les noms */
+	private static long debutEmpreintes(int longueurNoms) {
+		return (TAILLE_EN_TETE + (long) longueurNoms + 7) & ~7L;
+	}
+
+	private static void ecrireTout(FileChannel canal, ByteBuffer tampon) throws IOException {
+		while (tampon.hasRemaining())
+			canal.write(tampon);
+	}
+
+	/**
+	 * @return l'empreinte SHA-256 de la version du format et du contenu des fichiers.
+	 */
+	private static byte[] empreinte(Path... fichiers) throws IOException {
+		MessageDigest sha = sha256();
+		sha.update(("NJDM " + VERSION + "\n").getBytes(StandardCharsets.UTF_8));
+		for (Path fichier : fichiers) {
+			try (InputStream entree = new DigestInputStream(new BufferedInputStream(Files.newInputStream(fichier)), sha)) {
+				byte[] tampon = new byte[1 << 16];
+				long lus = 0;
+				int n;
+				while ((n = entree.read(tampon)) > 0)
+					lus += n;
+				/* La longueur sépare les fichiers: "ab" + "c" et "a" + "bc" n'ont pas la même empreinte */
+				sha.update(ByteBuffer.allocate(8).putLong(lus).array());
+			}
+		}
+		return sha.digest();
+	}
+
+	private static MessageDigest sha256() {
+		try {
+			return MessageDigest.getInstance("SHA-256");
+		}
+		catch (NoSuchAlgorithmException e) {
+			/* Toute machine virtuelle Java doit fournir SHA-256 */
+			throw new IllegalStateException(e);
+		}
+	}
+
+	private static String hexadecimal(byte[] octets) {
+		StringBuilder hexa = new StringBuilder();
+		for (byte b : octets)
+			hexa.append(String.format("%02x", b));
+		return hexa.toString();
+	}
+
+	/**
+	 * Le calcul des nouvelles lignes de numéro <code>debut</code> (inclus) à <code>fin</code> (exclus).
+	 */
+	private interface Calcul {
+		void lignes(int debut, int fin);
+	}
+
+	@SuppressWarnings("serial")
+	private static final class TacheLignes extends RecursiveAction {
+		private final Calcul calcul;
+		private final int debut;
+		private final int fin;
+
+		TacheLignes(Calcul calcul, int debut, int fin) {
+			this.calcul = calcul;
+			this.debut = debut;
+			this.fin = fin;
+		}
+
+		@Override
+		protected void compute() {
+			if (this.fin - this.debut <= LIGNES_PAR_TACHE) {
+				this.calcul.lignes(this.debut, this.fin);
+				return;
+			}
+			int milieu = (this.debut + this.fin) >>> 1;
+			invokeAll(new TacheLignes(this.calcul, this.debut, milieu), new TacheLignes(this.calcul, milieu, this.fin));
+		}
+	}
+}
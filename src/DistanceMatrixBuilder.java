@@ -0,0 +1,252 @@
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Construction de la matrice des distances entre les séquences d'un {@link EncodedAlignment}.
+ * <p>Contrairement à {@link PhylogenyNeighborJoining#matriceDistance(BinTree, double[][], HashMap)} qui calcule les n×n cases
+ * une par une, seul le triangle supérieur (diagonale comprise) est calculé lorsque la matrice de mutations est symétrique:
+ * la distance (i, j) est recopiée en (j, i). Le triangle est découpé en tuiles carrées de séquences, dimensionnées pour que
+ * les séquences d'une tuile tiennent ensemble dans le cache. Les tuiles sont réparties sur un {@link ForkJoinPool}, chaque
+ * case de la matrice étant écrite par une seule tuile.</p>
+ * <p>Le résultat est le même <code>double[][]</code>, au bit près, que celui de
+ * {@link PhylogenyNeighborJoining#matriceDistance(BinTree, double[][], HashMap)}, quel que soit le nombre de threads.</p>
+ */
+public class DistanceMatrixBuilder {
+
+	/**
+	 * Reçoit l'avancement de la construction. La méthode est appelée après chaque tuile, depuis les threads du pool: elle
+	 * doit donc pouvoir être appelée de façon concurrente.
+	 */
+	public interface Progression {
+		/**
+		 * @param faites
+		 * 		  le nombre de paires de séquences dont la distance est calculée
+		 * @param total
+		 * 		  le nombre total de paires à calculer (diagonale comprise)
+		 */
+		void avancement(long faites, long total);
+	}
+
+	/* Taille visée, en octets, des séquences d'une tuile (lignes et colonnes): l'ordre de grandeur d'un cache L2. */
+	private static final int OCTETS_PAR_TUILE = 256 * 1024;
+
+	/* Bornes du nombre de séquences par côté de tuile. */
+	private static final int TUILE_MIN = 8;
+	private static final int TUILE_MAX = 512;
+
+	private final EncodedAlignment alignement;
+
+	/* Le pool de threads utilisé pour répartir les tuiles, null pour une exécution séquentielle. */
+	private final ForkJoinPool pool;
+
+	/* Le destinataire de l'avancement, possiblement null. */
+	private final Progression progression;
+
+	/**
+	 * Prépare la construction de la matrice des distances d'un alignement.
+	 *
+	 * @param alignement
+	 * 		  l'alignement encodé dont on veut la matrice des distances
+	 * @param pool
+	 * 		  le pool de threads sur lequel répartir les tuiles, ou <code>null</code> pour une exécution séquentielle
+	 * @param progression
+	 * 		  le destinataire de l'avancement, ou <code>null</code>
+	 */
+	public DistanceMatrixBuilder(EncodedAlignment alignement, ForkJoinPool pool, Progression progression) {
+		this.alignement = alignement;
+		this.pool = pool;
+		this.progression = progression;
+	}
+
+	/**
+	 * Calculer la matrice des distances par rapport aux séquences situées aux feuilles d'un arbre, comme
+	 * {@link PhylogenyNeighborJoining#matriceDistance(BinTree, double[][], HashMap)}.
+	 *
+	 * @param tree
+	 * 		  un arbre binaire dont on souhaite obtenir les séquences situées aux feuilles
+	 * @param matriceMutations
+	 * 		  la matrice qui contient les coûts de mutations des acides aminés pour les séquences.
+	 * @param tableIndex
+	 * 		  une <code>HashMap</code> qui à un caractère d'acide aminé (par exemple "A", "L") associe un index dans la matrice de mutations.
+	 * @param pool
+	 * 		  le pool de threads sur lequel répartir les tuiles, ou <code>null</code> pour une exécution séquentielle
+	 * @param progression
+	 * 		  le destinataire de l'avancement, ou <code>null</code>
+	 * @param vectoriel
+	 * 		  <code>true</code> pour utiliser le noyau SIMD s'il est disponible (voir {@link EncodedAlignment#activerVectoriel()})
+	 *
+	 * @return Un tableau d'objets de 2 éléments. En première position, la table d'index des noeuds pour la matrice
+	 * des distances. En deuxième position, la matrice des distances pour les séquences.
+	 */
+	public static Object[] matriceDistance(BinTree tree, double[][] matriceMutations, HashMap<String, Integer> tableIndex,
+			ForkJoinPool pool, Progression progression, boolean vectoriel) {
+		return matriceDistance(tree, EncodedAlignment.fromLeaves(tree.getLeavesNode(), matriceMutations, tableIndex), pool,
+				progression, vectoriel);
+	}
+
+	/**
+	 * Calculer la matrice des distances entre les feuilles d'un arbre à partir de leur alignement déjà encodé, par exemple
+	 * construit par {@link EncodedAlignment#fromLeaves(ArrayList, FastaReader.Enregistrements, double[][])}: les feuilles
+	 * n'ont alors pas besoin de séquence.
+	 *
+	 * @param tree
+	 * 		  un arbre binaire dont on souhaite la matrice des distances entre les feuilles
+	 * @param alignement
+	 * 		  l'alignement des feuilles, la séquence i correspondant à la feuille i de {@link BinTree#getLeavesNode()}
+	 * @param pool
+	 * 		  le pool de threads sur lequel répartir les tuiles, ou <code>null</code> pour une exécution séquentielle
+	 * @param progression
+	 * 		  le destinataire de l'avancement, ou <code>null</code>
+	 * @param vectoriel
+	 * 		  <code>true</code> pour utiliser le noyau SIMD s'il est disponible (voir {@link EncodedAlignment#activerVectoriel()})
+	 *
+	 * @return Un tableau d'objets de 2 éléments. En première position, la table d'index des noeuds pour la matrice
+	 * des distances. En deuxième position, la matrice des distances pour les séquences.
+	 *
+	 * @throws IllegalArgumentException si l'alignement n'a pas autant de séquences que l'arbre a de feuilles.
+	 */
+	public static Object[] matriceDistance(BinTree tree, EncodedAlignment alignement, ForkJoinPool pool, Progression progression,
+			boolean vectoriel) {
+		ArrayList<Node> leaves = tree.getLeavesNode();
+		if (alignement.size() != leaves.size())
+			throw new IllegalArgumentException("L'alignement ne correspond pas aux feuilles de l'arbre.");
+		if (vectoriel && !alignement.activerVectoriel())
+			System.err.println("Le noyau SIMD n'est pas disponible (simd/src, --add-modules jdk.incubator.vector): calcul scalaire des distances.");
+
+		HashMap<Integer, Node> tableNoeud = new HashMap<Integer, Node>(leaves.size());
+		for (int i = 0; i < leaves.size(); i++)
+			tableNoeud.put(i, leaves.get(i));
+
+		return new Object[]{tableNoeud, new DistanceMatrixBuilder(alignement, pool, progression).construire()};
+	}
+
+	/**
+	 * Construit la matrice des distances.
+	 *
+	 * @return la matrice n×n des distances entre les séquences de l'alignement
+	 */
+	public double[][] construire() {
+		int n = this.alignement.size();
+		double[][] matrice = new double[n][n];
+		if (n == 0)
+			return matrice;
+
+		/* Côté des tuiles: deux blocs de séquences (lignes et colonnes) doivent tenir dans OCTETS_PAR_TUILE */
+		int cote = OCTETS_PAR_TUILE / Math.max(1, 2 * this.alignement.getLongueur());
+		cote = Math.max(TUILE_MIN, Math.min(TUILE_MAX, cote));
+		int nbBlocs = (n + cote - 1) / cote;
+
+		/* Les tuiles (bi, bj) du triangle supérieur, bi <= bj, numérotées ligne par ligne */
+		int nbTuiles = nbBlocs * (nbBlocs + 1) / 2;
+		int[] lignes = new int[nbTuiles];
+		int[] colonnes = new int[nbTuiles];
+		int t = 0;
+		for (int bi = 0; bi < nbBlocs; bi++) {
+			for (int bj = bi; bj < nbBlocs; bj++) {
+				lignes[t] = bi;
+				colonnes[t] = bj;
+				t++;
+			}
+		}
+
+		Tuiles tuiles = new Tuiles(this.alignement, matrice, cote, lignes, colonnes, this.alignement.isSymetrique(),
+				this.progression, (long) n * (n + 1) / 2);
+		if (this.pool == null)
+			tuiles.traiter(0, nbTuiles);
+		else
+			this.pool.invoke(new TacheTuiles(tuiles, 0, nbTuiles));
+		return matrice;
+	}
+
+	/**
+	 * Le calcul des tuiles d'une matrice des distances. Chaque tuile (bi, bj) calcule les distances entre les séquences du
+	 * bloc bi et celles du bloc bj, puis les écrit aux deux positions symétriques de la matrice.
+	 */
+	private static final class Tuiles {
+		private final EncodedAlignment alignement;
+		private final double[][] matrice;
+		private final int cote;
+		private final int[] lignes;
+		private final int[] colonnes;
+		private final boolean symetrique;
+		private final Progression progression;
+		private final long total;
+		private final AtomicLong faites = new AtomicLong();
+
+		Tuiles(EncodedAlignment alignement, double[][] matrice, int cote, int[] lignes, int[] colonnes, boolean symetrique,
+				Progression progression, long total) {
+			this.alignement = alignement;
+			this.matrice = matrice;
+			this.cote = cote;
+			this.lignes = lignes;
+			this.colonnes = colonnes;
+			this.symetrique = symetrique;
+			this.progression = progression;
+			this.total = total;
+		}
+
+		/**
+		 * Calcule les tuiles de numéro <code>debut</code> (inclus) à <code>fin</code> (exclus).
+		 */
+		void traiter(int debut, int fin) {
+			int n = this.matrice.length;
+			for (int t = debut; t < fin; t++) {
+				int debutI = this.lignes[t] * this.cote;
+				int finI = Math.min(n, debutI + this.cote);
+				int debutJ = this.colonnes[t] * this.cote;
+				int finJ = Math.min(n, debutJ + this.cote);
+				long paires = 0;
+				FlightEvents.DistanceTile evenement = new FlightEvents.DistanceTile();
+				evenement.begin();
+
+				for (int i = debutI; i < finI; i++) {
+					/* Sur une tuile de la diagonale, on ne calcule que j >= i */
+					for (int j = Math.max(i, debutJ); j < finJ; j++) {
+						double distance = this.alignement.distance(i, j);
+						this.matrice[i][j] = distance;
+						if (j != i)
+							this.matrice[j][i] = this.symetrique ? distance : this.alignement.distance(j, i);
+						paires++;
+					}
+				}
+
+				if (evenement.shouldCommit()) {
+					evenement.debutLigne = debutI;
+					evenement.finLigne = finI;
+					evenement.debutColonne = debutJ;
+					evenement.finColonne = finJ;
+					evenement.paires = paires;
+					evenement.commit();
+				}
+
+				long faites = this.faites.addAndGet(paires);
+				if (this.progression != null)
+					this.progression.avancement(faites, this.total);
+			}
+		}
+	}
+
+	@SuppressWarnings("serial")
+	private static final class TacheTuiles extends RecursiveAction {
+		private final Tuiles tuiles;
+		private final int debut;
+		private final int fin;
+
+		TacheTuiles(Tuiles tuiles, int debut, int fin) {
+			this.tuiles = tuiles;
+			this.debut = debut;
+			this.fin = fin;
+		}
+
+		@Override
+		protected void compute() {
+			if (this.fin - this.debut <= 1) {
+				this.tuiles.traiter(this.debut, this.fin);
+				return;
+			}
+			int milieu = (this.debut + this.fin) >>> 1;
+			invokeAll(new TacheTuiles(this.tuiles, this.debut, milieu), new TacheTuiles(this.tuiles, milieu, this.fin));
+		}
+	}
+}
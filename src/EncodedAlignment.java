@@ -0,0 +1,437 @@
+import java.util.*;
+
+/**
+ * Un alignement de séquences d'acides aminés encodé une fois pour toutes pour le calcul des distances.
+ * <p>Chaque séquence est transformée en un tableau d'octets contenant, pour chaque colonne, l'index de l'acide aminé dans la matrice
+ * de mutations (voir {@link PhylogenyNeighborJoining#getBlosum(String)}). La matrice de mutations est aplatie dans un tableau
+ * d'entiers lorsque tous ses coûts sont entiers (c'est le cas des matrices BLOSUM), dans un tableau de doubles sinon. Le score d'une
+ * séquence avec elle-même (<code>qi</code> dans {@link PhylogenyNeighborJoining#distance(double[][], HashMap, String, String)})
+ * ne dépend que de la séquence: il est calculé une seule fois à la construction.</p>
+ * <p>La distance entre deux séquences se réduit alors à une boucle sans branchement sur des tableaux primitifs, sans création de
+ * chaînes ni recherche dans une <code>HashMap</code>. Les distances obtenues sont identiques, au bit près, à celles de
+ * {@link PhylogenyNeighborJoining#distance(double[][], HashMap, String, String)}: avec une matrice entière, les sommes d'entiers sont
+ * exactes; sinon les doubles sont additionnés dans le même ordre.</p>
+ * <p>Avec une matrice entière, le score peut être calculé par un noyau SIMD (<code>VectorKernel</code>, dans <code>simd/src</code>)
+ * activé par {@link #activerVectoriel()}. Ce noyau donne les mêmes sommes entières, donc les mêmes distances.</p>
+ */
+public class EncodedAlignment {
+
+	/**
+	 * Un noyau de calcul du score entre deux séquences encodées avec une matrice de mutations entière aplatie.
+	 */
+	public interface Noyau {
+		/**
+		 * @return la somme, colonne par colonne, des coûts <code>matrice[seq1[c] * taille + seq2[c]]</code>
+		 */
+		long scoreEntier(int[] matrice, int taille, byte[] seq1, byte[] seq2);
+	}
+
+	/* Valeur de la table d'encodage pour un caractère qui n'est pas un acide aminé de la matrice de mutations. */
+	public static final byte INCONNU = -1;
+
+	private final String[] noms;
+	private final byte[][] sequences;
+	private final int longueur;
+
+	/* Dimension de la matrice de mutations et matrice aplatie: le coût de (a, b) est à la position a * taille + b. */
+	private final int taille;
+	private final int[] matriceEntiere;
+	private final double[] matriceReelle;
+
+	/* Score de chaque séquence avec elle-même. Seul le tableau correspondant au type de la matrice est rempli. */
+	private final long[] scoresPropresEntiers;
+	private final double[] scoresPropresReels;
+
+	/* Le nombre de fois que chaque colonne compte dans les scores, null si chaque colonne compte une fois. */
+	private final int[] poids;
+
+	/* Le noyau SIMD utilisé pour les matrices entières, null pour le calcul scalaire. */
+	private Noyau noyau;
+
+	/**
+	 * Construit un alignement à partir de séquences déjà encodées.
+	 *
+	 * @param noms
+	 * 		  les noms des protéines
+	 * @param sequences
+	 * 		  les séquences encodées, toutes de même longueur (voir {@link #encoder(String, byte[])})
+	 * @param matriceMutations
+	 * 		  la matrice qui contient les coûts de mutations des acides aminés pour les séquences.
+	 *
+	 * @throws IllegalArgumentException si les séquences n'ont pas toutes la même longueur, ou contiennent un index hors de la matrice.
+	 */
+	public EncodedAlignment(String[] noms, byte[][] sequences, double[][] matriceMutations) {
+		if (noms.length != sequences.length)
+			throw new IllegalArgumentException("Il doit y avoir autant de noms que de séquences.");
+		if (matriceMutations.length > Byte.MAX_VALUE)
+			throw new IllegalArgumentException("La matrice de mutations contient trop d'acides aminés pour être encodée.");
+
+		this.noms = noms;
+		this.sequences = sequences;
+		this.longueur = sequences.length == 0 ? 0 : sequences[0].length;
+		this.taille = matriceMutations.length;
+		this.poids = null;
+
+		/* On aplatit la matrice de mutations, en entiers si tous les coûts sont entiers */
+		boolean entiere = true;
+		this.matriceReelle = new double[this.taille * this.taille];
+		for (int a = 0; a < this.taille; a++) {
+			for (int b = 0; b < this.taille; b++) {
+				double cout = matriceMutations[a][b];
+				this.matriceReelle[a * this.taille + b] = cout;
+				if (cout != Math.rint(cout) || Math.abs(cout) > (1 << 20))
+					entiere = false;
+			}
+		}
+		if (entiere) {
+			this.matriceEntiere = new int[this.matriceReelle.length];
+			for (int c = 0; c < this.matriceReelle.length; c++)
+				this.matriceEntiere[c] = (int) this.matriceReelle[c];
+		}
+		else
+			this.matriceEntiere = null;
+
+		/* On vérifie les séquences et on calcule le score de chaque séquence avec elle-même */
+		this.scoresPropresEntiers = new long[sequences.length];
+		this.scoresPropresReels = new double[sequences.length];
+		for (int i = 0; i < sequences.length; i++) {
+			if (sequences[i].length != this.longueur)
+				throw new IllegalArgumentException("Les séquences n'ont pas toutes la même longueur (" + noms[i] + ").");
+			for (int c = 0; c < this.longueur; c++)
+				if (sequences[i][c] < 0 || sequences[i][c] >= this.taille)
+					throw new IllegalArgumentException("La séquence " + noms[i] + " contient un acide aminé absent de la matrice de mutations.");
+			if (entiere)
+				this.scoresPropresEntiers[i] = scoreEntier(this.matriceEntiere, this.taille, sequences[i], sequences[i]);
+			else
+				this.scoresPropresReels[i] = scoreReel(this.matriceReelle, this.taille, sequences[i], sequences[i]);
+		}
+	}
+
+	/**
+	 * Construit une vue pondérée d'un alignement: les séquences et la matrice de mutations sont partagées, seuls les scores
+	 * des séquences avec elles-mêmes sont recalculés avec les poids.
+	 */
+	private EncodedAlignment(EncodedAlignment source, int[] poids) {
+		this.noms = source.noms;
+		this.sequences = source.sequences;
+		this.longueur = source.longueur;
+		this.taille = source.taille;
+		this.matriceEntiere = source.matriceEntiere;
+		this.matriceReelle = source.matriceReelle;
+		this.poids = poids;
+		this.scoresPropresEntiers = new long[this.sequences.length];
+		this.scoresPropresReels = new double[this.sequences.length];
+		for (int i = 0; i < this.sequences.length; i++) {
+			if (this.matriceEntiere != null)
+				this.scoresPropresEntiers[i] = this.scoreEntier(this.sequences[i], this.sequences[i]);
+			else
+				this.scoresPropresReels[i] = this.scoreReel(this.sequences[i], this.sequences[i]);
+		}
+	}
+
+	/**
+	 * Encode les séquences situées aux feuilles d'un arbre, dans l'ordre de {@link BinTree#getLeavesNode()}.
+	 *
+	 * @param leaves
+	 * 		  les noeuds feuilles dont on veut encoder les séquences
+	 * @param matriceMutations
+	 * 		  la matrice qui contient les coûts de mutations des acides aminés pour les séquences.
+	 * @param tableIndex
+	 * 		  une <code>HashMap</code> qui à un caractère d'acide aminé (par exemple "A", "L") associe un index dans la matrice de mutations.
+	 *
+	 * @return l'alignement encodé, la séquence i correspondant à la feuille i.
+	 *
+	 * @throws IllegalArgumentException si une feuille n'a pas de séquence ou si une séquence contient un caractère absent de la matrice.
+	 */
+	public static EncodedAlignment fromLeaves(ArrayList<Node> leaves, double[][] matriceMutations, HashMap<String, Integer> tableIndex) {
+		byte[] table = tableEncodage(tableIndex);
+		String[] noms = new String[leaves.size()];
+		byte[][] sequences = new byte[leaves.size()][];
+		for (int i = 0; i < leaves.size(); i++) {
+			noms[i] = leaves.get(i).getProt();
+			if (leaves.get(i).getSeq() == null)
+				throw new IllegalArgumentException("La protéine " + noms[i] + " n'a pas de séquence.");
+			sequences[i] = encoder(leaves.get(i).getSeq(), table);
+		}
+		return new EncodedAlignment(noms, sequences, matriceMutations);
+	}
+
+	/**
+	 * Construit l'alignement des feuilles d'un arbre, dans l'ordre de {@link BinTree#getLeavesNode()}, avec les séquences déjà
+	 * encodées par un {@link FastaReader}. Les séquences ne sont pas recopiées: l'alignement partage les tableaux des
+	 * enregistrements.
+	 *
+	 * @param leaves
+	 * 		  les noeuds feuilles dont on veut l'alignement
+	 * @param enregistrements
+	 * 		  les protéines lues et filtrées des gaps (voir {@link FastaReader#lireSequences(HashMap, String, java.util.concurrent.ForkJoinPool)})
+	 * @param matriceMutations
+	 * 		  la matrice qui contient les coûts de mutations des acides aminés pour les séquences.
+	 *
+	 * @return l'alignement encodé, la séquence i correspondant à la feuille i.
+	 *
+	 * @throws IllegalArgumentException si la protéine d'une feuille n'est pas dans les enregistrements.
+	 */
+	public static EncodedAlignment fromLeaves(ArrayList<Node> leaves, FastaReader.Enregistrements enregistrements, double[][] matriceMutations) {
+		HashMap<String, Integer> index = new HashMap<String, Integer>(2 * enregistrements.size());
+		for (int i = 0; i < enregistrements.size(); i++)
+			index.put(enregistrements.getNom(i), i);
+		String[] noms = new String[leaves.size()];
+		byte[][] sequences = new byte[leaves.size()][];
+		for (int i = 0; i < leaves.size(); i++) {
+			noms[i] = leaves.get(i).getProt();
+			Integer k = index.get(noms[i]);
+			if (k == null)
+				throw new IllegalArgumentException("La protéine " + noms[i] + " n'a pas de séquence.");
+			sequences[i] = enregistrements.getSequence(k);
+		}
+		return new EncodedAlignment(noms, sequences, matriceMutations);
+	}
+
+	/**
+	 * Construit la table d'encodage des caractères ASCII: à chaque caractère on associe son index dans la matrice de mutations,
+	 * ou {@link #INCONNU}.
+	 *
+	 * @param tableIndex
+	 * 		  une <code>HashMap</code> qui à un caractère d'acide aminé associe un index dans la matrice de mutations.
+	 *
+	 * @return un tableau de 128 octets indexé par le code du caractère.
+	 */
+	public static byte[] tableEncodage(HashMap<String, Integer> tableIndex) {
+		byte[] table = new byte[128];
+		Arrays.fill(table, INCONNU);
+		for (Map.Entry<String, Integer> entree : tableIndex.entrySet()) {
+			char c = entree.getKey().charAt(0);
+			if (entree.getKey().length() == 1 && c < 128 && entree.getValue() <= Byte.MAX_VALUE)
+				table[c] = (byte) (int) entree.getValue();
+		}
+		return table;
+	}
+
+	/**
+	 * Encode une séquence d'acides aminés.
+	 *
+	 * @param seq
+	 * 		  la séquence à encoder
+	 * @param table
+	 * 		  la table d'encodage obtenue par {@link #tableEncodage(HashMap)}
+	 *
+	 * @return la séquence encodée
+	 *
+	 * @throws IllegalArgumentException si un caractère de la séquence n'est pas dans la table d'encodage.
+	 */
+	public static byte[] encoder(String seq, byte[] table) {
+		byte[] code = new byte[seq.length()];
+		for (int i = 0; i < code.length; i++) {
+			char c = seq.charAt(i);
+			if (c >= 128 || table[c] == INCONNU)
+				throw new IllegalArgumentException("Le caractère \"" + c + "\" n'est pas un acide aminé de la matrice de mutations.");
+			code[i] = table[c];
+		}
+		return code;
+	}
+
+	/* Accesseurs */
+	public int size() {
+		return this.sequences.length;
+	}
+
+	public int getLongueur() {
+		return this.longueur;
+	}
+
+	public String getNom(int i) {
+		return this.noms[i];
+	}
+
+	public byte[] getSequence(int i) {
+		return this.sequences[i];
+	}
+
+	/**
+	 * Obtenir l'alignement dont les colonnes sont rééchantillonnées, par exemple pour un réplicat bootstrap: la colonne c y
+	 * apparaît <code>poids[c]</code> fois. Les séquences ne sont pas recopiées; chaque score est une somme pondérée sur les
+	 * colonnes de cet alignement. Avec une matrice entière, les distances sont identiques, au bit près, à celles de
+	 * l'alignement dont les colonnes seraient recopiées. Les scores pondérés sont calculés sans le noyau SIMD.
+	 *
+	 * @param poids
+	 * 		  le nombre de fois que chaque colonne est tirée, positif ou nul
+	 *
+	 * @return l'alignement pondéré, qui partage les séquences de celui-ci.
+	 *
+	 * @throws IllegalArgumentException s'il n'y a pas un poids par colonne.
+	 */
+	public EncodedAlignment reechantillonner(int[] poids) {
+		if (poids.length != this.longueur)
+			throw new IllegalArgumentException("Il doit y avoir un poids par colonne de l'alignement (" + this.longueur + ").");
+		return new EncodedAlignment(this, poids);
+	}
+
+	/**
+	 * Vérifie si la matrice de mutations est symétrique. Dans ce cas, <code>distance(i, j)</code> et <code>distance(j, i)</code>
+	 * sont égales au bit près (mêmes termes additionnés dans le même ordre).
+	 *
+	 * @return <code>true</code> si le coût de (a, b) est égal au coût de (b, a) pour tous les acides aminés
+	 * 		   <code>false</code> sinon.
+	 */
+	public boolean isSymetrique() {
+		for (int a = 0; a < this.taille; a++)
+			for (int b = a + 1; b < this.taille; b++)
+				if (this.matriceReelle[a * this.taille + b] != this.matriceReelle[b * this.taille + a])
+					return false;
+		return true;
+	}
+
+	/**
+	 * Obtenir le noyau SIMD <code>VectorKernel</code>. La classe est chargée par réflexion: si elle n'a pas été compilée (sources de
+	 * <code>simd/src</code>), si le module <code>jdk.incubator.vector</code> n'est pas disponible (option
+	 * <code>--add-modules jdk.incubator.vector</code> absente) ou si la plateforme ne s'y prête pas, le calcul reste scalaire.
+	 *
+	 * @return le noyau SIMD, <code>null</code> s'il n'est pas disponible.
+	 */
+	public static Noyau noyauVectoriel() {
+		return NoyauVectoriel.INSTANCE;
+	}
+
+	/* Le noyau SIMD n'est chargé qu'à la première demande */
+	private static final class NoyauVectoriel {
+		private static final Noyau INSTANCE = charger();
+
+		private static Noyau charger() {
+			try {
+				return (Noyau) Class.forName("VectorKernel").getDeclaredConstructor().newInstance();
+			}
+			catch (ReflectiveOperationException | LinkageError | RuntimeException e) {
+				return null;
+			}
+		}
+	}
+
+	/**
+	 * Active le noyau SIMD pour le calcul des distances, si la matrice de mutations est entière et que le noyau est disponible.
+	 *
+	 * @return <code>true</code> si le noyau SIMD est utilisé
+	 * 		   <code>false</code> si le calcul reste scalaire.
+	 *
+	 * @see #noyauVectoriel()
+	 */
+	public boolean activerVectoriel() {
+		if (this.matriceEntiere != null && this.poids == null)
+			this.noyau = noyauVectoriel();
+		return this.noyau != null;
+	}
+
+	/**
+	 * Calcule la distance entre les séquences <code>i</code> et <code>j</code>, identique à
+	 * {@link PhylogenyNeighborJoining#distance(double[][], HashMap, String, String)}.
+	 *
+	 * @return la distance entre les deux séquences
+	 */
+	public double distance(int i, int j) {
+		if (this.matriceEntiere != null) {
+			long p = this.scoreEntier(this.sequences[i], this.sequences[j]);
+			return (1 - (double) p / (double) Math.max(this.scoresPropresEntiers[i], this.scoresPropresEntiers[j]));
+		}
+		double p = this.scoreReel(this.sequences[i], this.sequences[j]);
+		return (1 - p / Math.max(this.scoresPropresReels[i], this.scoresPropresReels[j]));
+	}
+
+	/**
+	 * Calcule les distances entre une séquence extérieure à l'alignement et chacune de ses séquences, identiques à
+	 * {@link PhylogenyNeighborJoining#distance(double[][], HashMap, String, String)} avec la séquence extérieure en premier.
+	 * Le score de la séquence extérieure avec elle-même n'est calculé qu'une fois.
+	 *
+	 * @param sequence
+	 * 		  la séquence encodée (voir {@link #encoder(String, byte[])}), de la longueur de l'alignement
+	 *
+	 * @return les distances, la distance i étant celle avec la séquence i de l'alignement.
+	 *
+	 * @throws IllegalArgumentException si la séquence n'a pas la longueur de l'alignement, ou contient un index hors de la matrice.
+	 */
+	public double[] distances(byte[] sequence) {
+		if (sequence.length != this.longueur)
+			throw new IllegalArgumentException("La séquence doit avoir la longueur de l'alignement (" + this.longueur + ").");
+		for (int c = 0; c < sequence.length; c++)
+			if (sequence[c] < 0 || sequence[c] >= this.taille)
+				throw new IllegalArgumentException("La séquence contient un acide aminé absent de la matrice de mutations.");
+
+		double[] distances = new double[this.sequences.length];
+		if (this.matriceEntiere != null) {
+			long q = this.scoreEntier(sequence, sequence);
+			for (int j = 0; j < distances.length; j++) {
+				long p = this.scoreEntier(sequence, this.sequences[j]);
+				distances[j] = (1 - (double) p / (double) Math.max(q, this.scoresPropresEntiers[j]));
+			}
+		}
+		else {
+			double q = this.scoreReel(sequence, sequence);
+			for (int j = 0; j < distances.length; j++) {
+				double p = this.scoreReel(sequence, this.sequences[j]);
+				distances[j] = (1 - p / Math.max(q, this.scoresPropresReels[j]));
+			}
+		}
+		return distances;
+	}
+
+	/**
+	 * Score entre deux séquences encodées avec la matrice entière: pondéré, par le noyau SIMD ou scalaire.
+	 */
+	private long scoreEntier(byte[] seq1, byte[] seq2) {
+		if (this.poids != null)
+			return scoreEntierPondere(this.matriceEntiere, this.taille, seq1, seq2, this.poids);
+		if (this.noyau != null)
+			return this.noyau.scoreEntier(this.matriceEntiere, this.taille, seq1, seq2);
+		return scoreEntier(this.matriceEntiere, this.taille, seq1, seq2);
+	}
+
+	/**
+	 * Score entre deux séquences encodées avec la matrice réelle, pondéré ou non.
+	 */
+	private double scoreReel(byte[] seq1, byte[] seq2) {
+		if (this.poids != null)
+			return scoreReelPondere(this.matriceReelle, this.taille, seq1, seq2, this.poids);
+		return scoreReel(this.matriceReelle, this.taille, seq1, seq2);
+	}
+
+	/**
+	 * Somme des coûts de mutations colonne par colonne entre deux séquences encodées, avec une matrice entière.
+	 */
+	private static long scoreEntier(int[] matrice, int taille, byte[] seq1, byte[] seq2) {
+		long p = 0;
+		for (int c = 0; c < seq1.length; c++)
+			p += matrice[seq1[c] * taille + seq2[c]];
+		return p;
+	}
+
+	/**
+	 * Somme des coûts de mutations colonne par colonne entre deux séquences encodées, avec une matrice réelle.
+	 */
+	private static double scoreReel(double[] matrice, int taille, byte[] seq1, byte[] seq2) {
+		double p = 0;
+		for (int c = 0; c < seq1.length; c++)
+			p += matrice[seq1[c] * taille + seq2[c]];
+		return p;
+	}
+
+	/**
+	 * Somme des coûts de mutations entre deux séquences encodées, chaque colonne comptant <code>poids[c]</code> fois, avec une
+	 * matrice entière.
+	 */
+	private static long scoreEntierPondere(int[] matrice, int taille, byte[] seq1, byte[] seq2, int[] poids) {
+		long p = 0;
+		for (int c = 0; c < seq1.length; c++)
+			p += (long) poids[c] * matrice[seq1[c] * taille + seq2[c]];
+		return p;
+	}
+
+	/**
+	 * Somme des coûts de mutations entre deux séquences encodées, chaque colonne comptant <code>poids[c]</code> fois, avec une
+	 * matrice réelle.
+	 */
+	private static double scoreReelPondere(double[] matrice, int taille, byte[] seq1, byte[] seq2, int[] poids) {
+		double p = 0;
+		for (int c = 0; c < seq1.length; c++)
+			p += poids[c] * matrice[seq1[c] * taille + seq2[c]];
+		return p;
+	}
+}
@@ -0,0 +1,326 @@
+import java.io.*;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Lecteur de fichiers "*.fa" projeté en mémoire.
+ * <p>Contrairement à {@link PhylogenyNeighborJoining#getProteins(HashMap, String)} qui lit le fichier ligne par ligne et
+ * reconstruit chaque séquence par concaténations successives, le fichier est projeté en mémoire avec NIO puis découpé en
+ * morceaux aux limites des enregistrements (une ligne commençant par "&gt;"). Les morceaux sont analysés en parallèle,
+ * directement en séquences encodées: chaque acide aminé est remplacé par son index dans la matrice de mutations (voir
+ * {@link EncodedAlignment#tableEncodage(HashMap)}) et chaque gap par {@link #GAP}.</p>
+ * <p>Le format accepté est celui de {@link PhylogenyNeighborJoining#getProteins(HashMap, String)}: les espaces blancs sont
+ * ignorés, une ligne qui commence par "&gt;" donne le nom d'une protéine et les lignes suivantes sa séquence, qui ne doit
+ * contenir que des acides aminés de la matrice de mutations ou des gaps "-". Si une protéine apparaît plusieurs fois, seule sa
+ * dernière séquence est gardée. Les lignes vides sont ignorées.</p>
+ */
+public class FastaReader {
+
+	/* Code d'un gap "-" dans une séquence encodée. Les index de la matrice de mutations sont strictement inférieurs. */
+	public static final byte GAP = Byte.MAX_VALUE;
+
+	/* Message d'erreur d'un fichier mal formé, le même que celui de PhylogenyNeighborJoining.getProteins. */
+	public static final String ERREUR_FORMAT = "Le fichier n'est pas au format \".fa\". Le programme ne peut pas s'exécuter normalement.";
+
+	/* Taille minimale d'un morceau analysé par une tâche, et taille maximale (une projection en mémoire est limitée à 2 Go). */
+	private static final long TAILLE_MORCEAU_MIN = 4L << 20;
+	private static final long TAILLE_MORCEAU_MAX = 1L << 30;
+
+	/* Taille de la fenêtre projetée pour chercher la limite d'un morceau. */
+	private static final int FENETRE = 1 << 16;
+
+	/**
+	 * Les protéines lues dans un fichier, dans leur ordre d'apparition, avec leur séquence encodée (gaps compris).
+	 */
+	public static final class Enregistrements {
+		private final String[] noms;
+		private final byte[][] sequences;
+
+		public Enregistrements(String[] noms, byte[][] sequences) {
+			this.noms = noms;
+			this.sequences = sequences;
+		}
+
+		public int size() {
+			return this.noms.length;
+		}
+
+		public String getNom(int i) {
+			return this.noms[i];
+		}
+
+		public byte[] getSequence(int i) {
+			return this.sequences[i];
+		}
+	}
+
+	/* Table d'encodage des caractères ASCII, gap compris. */
+	private final byte[] table;
+
+	/* Caractère de chaque code, pour décoder les séquences. */
+	private final char[] caracteres;
+
+	/**
+	 * Prépare un lecteur pour les acides aminés d'une matrice de mutations.
+	 *
+	 * @param tableIndex
+	 * 		  une <code>HashMap</code> qui à un caractère d'acide aminé (par exemple "A", "L") associe un index dans la matrice de mutations.
+	 */
+	public FastaReader(HashMap<String, Integer> tableIndex) {
+		this.table = EncodedAlignment.tableEncodage(tableIndex);
+		this.table['-'] = GAP;
+		this.caracteres = new char[GAP + 1];
+		for (char c = 0; c < this.table.length; c++)
+			if (this.table[c] != EncodedAlignment.INCONNU)
+				this.caracteres[this.table[c]] = c;
+	}
+
+	/**
+	 * Lit un fichier "*.fa" et retourne ses protéines avec leur séquence encodée et filtrée des gaps, sans passer par des
+	 * chaînes de caractères. Les codes sont les index de la matrice de mutations: les séquences peuvent être utilisées
+	 * directement par {@link EncodedAlignment#fromLeaves(ArrayList, Enregistrements, double[][])}.
+	 *
+	 * @param tableIndex
+	 * 		  une <code>HashMap</code> qui à un caractère d'acide aminé associe un index dans la matrice de mutations.
+	 * @param file
+	 * 		  un chemin vers un fichier au format "*.fa" à lire.
+	 * @param pool
+	 * 		  le pool de threads sur lequel analyser les morceaux du fichier, ou <code>null</code> pour une lecture séquentielle
+	 *
+	 * @return les protéines du fichier, dans leur ordre de première apparition, et leur séquence encodée filtrée des gaps.
+	 *
+	 * @throws IOException si le fichier ne peut être lu.
+	 * @throws IllegalArgumentException si le fichier n'est pas au format ".fa" ({@link #ERREUR_FORMAT}).
+	 *
+	 * @see GapFilter#filtrer(Enregistrements, ForkJoinPool)
+	 */
+	public static Enregistrements lireSequences(HashMap<String, Integer> tableIndex, String file, ForkJoinPool pool) throws IOException {
+		return GapFilter.filtrer(new FastaReader(tableIndex).lire(Paths.get(file), pool), pool);
+	}
+
+	/**
+	 * Lit un fichier "*.fa" et retourne, comme {@link PhylogenyNeighborJoining#getProteins(HashMap, String)}, une
+	 * <code>HashMap</code> qui à chaque protéine associe sa séquence d'acides aminés filtrée des gaps. Les séquences sont
+	 * décodées en chaînes pour l'API d'origine: le pipeline utilise {@link #lireSequences(HashMap, String, ForkJoinPool)}.
+	 *
+	 * @param tableIndex
+	 * 		  une <code>HashMap</code> qui à un caractère d'acide aminé associe un index dans la matrice de mutations.
+	 * @param file
+	 * 		  un chemin vers un fichier au format "*.fa" à lire.
+	 * @param pool
+	 * 		  le pool de threads sur lequel analyser les morceaux du fichier, ou <code>null</code> pour une lecture séquentielle
+	 *
+	 * @return une <code>HashMap</code> qui à une protéine associe sa séquence d'acides aminés filtrée des gaps.
+	 *
+	 * @throws IOException si le fichier ne peut être lu.
+	 * @throws IllegalArgumentException si le fichier n'est pas au format ".fa" ({@link #ERREUR_FORMAT}).
+	 *
+	 * @see GapFilter#filtrer(Enregistrements, ForkJoinPool)
+	 */
+	public static HashMap<String, String> getProteins(HashMap<String, Integer> tableIndex, String file, ForkJoinPool pool) throws IOException {
+		FastaReader lecteur = new FastaReader(tableIndex);
+		Enregistrements enregistrements = GapFilter.filtrer(lecteur.lire(Paths.get(file), pool), pool);
+
+		HashMap<String, String> proteins = new HashMap<String, String>(enregistrements.size() * 2);
+		for (int i = 0; i < enregistrements.size(); i++)
+			proteins.put(enregistrements.getNom(i), lecteur.decoder(enregistrements.getSequence(i)));
+		return proteins;
+	}
+
+	/**
+	 * Décode une séquence encodée par ce lecteur.
+	 *
+	 * @param sequence
+	 * 		  une séquence encodée, possiblement avec des gaps
+	 *
+	 * @return la séquence d'acides aminés correspondante
+	 */
+	public String decoder(byte[] sequence) {
+		char[] seq = new char[sequence.length];
+		for (int i = 0; i < seq.length; i++)
+			seq[i] = this.caracteres[sequence[i]];
+		return new String(seq);
+	}
+
+	/**
+	 * Lit les protéines d'un fichier "*.fa".
+	 *
+	 * @param fichier
+	 * 		  le fichier à lire
+	 * @param pool
+	 * 		  le pool de threads sur lequel analyser les morceaux du fichier, ou <code>null</code> pour une lecture séquentielle
+	 *
+	 * @return les protéines du fichier et leur séquence encodée, dans leur ordre de première apparition.
+	 *
+	 * @throws IOException si le fichier ne peut être lu.
+	 * @throws IllegalArgumentException si le fichier n'est pas au format ".fa" ({@link #ERREUR_FORMAT}).
+	 */
+	public Enregistrements lire(Path fichier, ForkJoinPool pool) throws IOException {
+		try (FileChannel canal = FileChannel.open(fichier, StandardOpenOption.READ)) {
+			long taille = canal.size();
+
+			/* Découpage en morceaux: assez pour occuper tous les threads, sans descendre sous TAILLE_MORCEAU_MIN */
+			int threads = pool == null ? 1 : pool.getParallelism();
+			long visee = Math.max(TAILLE_MORCEAU_MIN, taille / (4L * threads) + 1);
+			visee = Math.min(visee, TAILLE_MORCEAU_MAX);
+			ArrayList<Long> limites = new ArrayList<Long>();
+			limites.add(0L);
+			long debut = 0;
+			while (debut < taille) {
+				long fin = debut + visee >= taille ? taille : limiteSuivante(canal, debut + visee, taille);
+				if (fin - debut > Integer.MAX_VALUE)
+					throw new IOException("Un enregistrement du fichier " + fichier + " dépasse 2 Go.");
+				limites.add(fin);
+				debut = fin;
+			}
+
+			/* Analyse des morceaux, en parallèle si possible */
+			int nbMorceaux = limites.size() - 1;
+			ArrayList<ArrayList<Object[]>> morceaux = new ArrayList<ArrayList<Object[]>>(nbMorceaux);
+			if (pool == null || nbMorceaux == 1) {
+				for (int m = 0; m < nbMorceaux; m++)
+					morceaux.add(this.analyser(canal, limites.get(m), limites.get(m + 1)));
+			}
+			else {
+				ArrayList<ForkJoinTask<ArrayList<Object[]>>> taches = new ArrayList<ForkJoinTask<ArrayList<Object[]>>>(nbMorceaux);
+				for (int m = 0; m < nbMorceaux; m++) {
+					long d = limites.get(m);
+					long f = limites.get(m + 1);
+					taches.add(pool.submit(() -> this.analyser(canal, d, f)));
+				}
+				for (ForkJoinTask<ArrayList<Object[]>> tache : taches) {
+					try {
+						morceaux.add(tache.get());
+					}
+					catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+						throw new InterruptedIOException("Lecture du fichier " + fichier + " interrompue.");
+					}
+					catch (ExecutionException e) {
+						if (e.getCause() instanceof IOException)
+							throw (IOException) e.getCause();
+						if (e.getCause() instanceof RuntimeException)
+							throw (RuntimeException) e.getCause();
+						throw new IOException(e.getCause());
+					}
+				}
+			}
+
+			/* Fusion dans l'ordre du fichier: une protéine déjà lue garde sa place mais prend sa nouvelle séquence */
+			LinkedHashMap<String, byte[]> proteines = new LinkedHashMap<String, byte[]>();
+			for (ArrayList<Object[]> morceau : morceaux)
+				for (Object[] enregistrement : morceau)
+					proteines.put((String) enregistrement[0], (byte[]) enregistrement[1]);
+
+			String[] noms = proteines.keySet().toArray(new String[0]);
+			byte[][] sequences = proteines.values().toArray(new byte[0][]);
+			return new Enregistrements(noms, sequences);
+		}
+	}
+
+	/**
+	 * Cherche, à partir de <code>position</code>, le début de la prochaine ligne qui commence par "&gt;".
+	 *
+	 * @return la position du caractère "&gt;", ou <code>taille</code> s'il n'y en a plus.
+	 */
+	private static long limiteSuivante(FileChannel canal, long position, long taille) throws IOException {
+		while (position < taille) {
+			int longueur = (int) Math.min(FENETRE, taille - position);
+			MappedByteBuffer fenetre = canal.map(FileChannel.MapMode.READ_ONLY, position - 1, longueur + 1);
+			for (int i = 1; i <= longueur; i++)
+				if (fenetre.get(i) == '>' && estFinLigne(fenetre.get(i - 1)))
+					return position + i - 1;
+			position += longueur;
+		}
+		return taille;
+	}
+
+	/**
+	 * Analyse un morceau du fichier. Un morceau commence au début d'un enregistrement, sauf éventuellement le premier.
+	 *
+	 * @return la liste des enregistrements du morceau, chacun sous la forme {nom, séquence encodée}.
+	 *
+	 * @throws IllegalArgumentException si le morceau n'est pas au format ".fa".
+	 */
+	private ArrayList<Object[]> analyser(FileChannel canal, long debut, long fin) throws IOException {
+		ArrayList<Object[]> enregistrements = new ArrayList<Object[]>();
+		if (fin == debut)
+			return enregistrements;
+		FlightEvents.ParseChunk evenement = new FlightEvents.ParseChunk();
+		evenement.begin();
+		MappedByteBuffer tampon = canal.map(FileChannel.MapMode.READ_ONLY, debut, fin - debut);
+		int longueur = (int) (fin - debut);
+
+		String nom = null;
+		byte[] sequence = new byte[256];
+		int taille = 0;
+		int i = 0;
+		while (i < longueur) {
+			/* Début d'une ligne: on saute les espaces blancs pour trouver son premier caractère */
+			byte c = tampon.get(i);
+			while (estBlanc(c) && ++i < longueur)
+				c = tampon.get(i);
+			if (i >= longueur)
+				break;
+			if (estFinLigne(c)) {
+				i++;
+				continue;
+			}
+
+			if (c == '>') {
+				/* Une ligne de nom de protéine: on termine l'enregistrement précédent */
+				if (nom != null)
+					enregistrements.add(new Object[]{nom, Arrays.copyOf(sequence, taille)});
+				ByteArrayOutputStream octets = new ByteArrayOutputStream();
+				for (i++; i < longueur && !estFinLigne(c = tampon.get(i)); i++)
+					if (!estBlanc(c))
+						octets.write(c);
+				nom = new String(octets.toByteArray(), StandardCharsets.UTF_8);
+				taille = 0;
+			}
+			else {
+				/* Une ligne de séquence, qui doit suivre un nom de protéine non vide */
+				if (nom == null || nom.isEmpty())
+					throw new IllegalArgumentException(ERREUR_FORMAT);
+				for (; i < longueur && !estFinLigne(c = tampon.get(i)); i++) {
+					if (estBlanc(c))
+						continue;
+					byte code = c < 0 ? EncodedAlignment.INCONNU : this.table[c];
+					if (code == EncodedAlignment.INCONNU)
+						throw new IllegalArgumentException(ERREUR_FORMAT);
+					if (taille == sequence.length)
+						sequence = Arrays.copyOf(sequence, sequence.length * 2);
+					sequence[taille++] = code;
+				}
+			}
+		}
+		if (nom != null)
+			enregistrements.add(new Object[]{nom, Arrays.copyOf(sequence, taille)});
+		if (evenement.shouldCommit()) {
+			evenement.format = "fa";
+			evenement.debut = debut;
+			evenement.fin = fin;
+			evenement.elements = enregistrements.size();
+			evenement.commit();
+		}
+		return enregistrements;
+	}
+
+	/**
+	 * @return <code>true</code> si l'octet est un espace blanc au sens de l'expression régulière "\\s", hors fins de ligne.
+	 */
+	private static boolean estBlanc(byte c) {
+		return c == ' ' || c == '\t' || c == 0x0B || c == '\f';
+	}
+
+	/**
+	 * @return <code>true</code> si l'octet termine une ligne, comme pour {@link BufferedReader#readLine()}.
+	 */
+	private static boolean estFinLigne(byte c) {
+		return c == '\n' || c == '\r';
+	}
+}
@@ -0,0 +1,107 @@
+import jdk.jfr.*;
+
+/**
+ * Les événements Java Flight Recorder du programme: tuiles de la matrice des distances, itérations NJ, comparaisons RF et
+ * lecture des fichiers, pour situer les étapes de l'algorithme dans un enregistrement JFR (par exemple dans JMC).
+ * <p>Un événement est créé et commencé ({@link Event#begin()}) avant le travail mesuré, puis rempli et enregistré seulement si
+ * {@link Event#shouldCommit()}. Sans enregistrement JFR en cours, <code>shouldCommit()</code> retourne toujours
+ * <code>false</code> et le compilateur JIT élimine la création de l'événement: les valeurs publiées ne sont calculées que
+ * pendant un enregistrement.</p>
+ * <p>Pour enregistrer: <code>java -XX:StartFlightRecording=filename=execution.jfr PhylogenyNeighborJoining ...</code></p>
+ */
+public final class FlightEvents {
+
+	private FlightEvents() {
+	}
+
+	/**
+	 * Le calcul d'une tuile de la matrice des distances ({@link DistanceMatrixBuilder}).
+	 */
+	@Name("phylogeny.DistanceTile")
+	@Label("Tuile de la matrice des distances")
+	@Category({"Phylogénie", "Matrice des distances"})
+	@StackTrace(false)
+	public static final class DistanceTile extends Event {
+		@Label("Première ligne")
+		public int debutLigne;
+
+		@Label("Fin des lignes (exclue)")
+		public int finLigne;
+
+		@Label("Première colonne")
+		public int debutColonne;
+
+		@Label("Fin des colonnes (exclue)")
+		public int finColonne;
+
+		@Label("Paires calculées")
+		public long paires;
+	}
+
+	/**
+	 * Une itération de l'algorithme NJ ({@link NJEngine}): recherche de la paire minimale et fusion.
+	 */
+	@Name("phylogeny.NJIteration")
+	@Label("Itération NJ")
+	@Category({"Phylogénie", "Neighbor Joining"})
+	@StackTrace(false)
+	public static final class NJIteration extends Event {
+		@Label("Noeuds actifs")
+		@Description("Le nombre de lignes actives de la matrice des distances au début de l'itération")
+		public int noeuds;
+
+		@Label("Ligne i")
+		public int i;
+
+		@Label("Ligne j")
+		public int j;
+
+		@Label("Q minimale")
+		@Description("La valeur NJ d(i,j) - (ri + rj) de la paire fusionnée")
+		public double qMin;
+	}
+
+	/**
+	 * Le calcul de la distance RF entre deux arbres ({@link BinTree#rf(BinTree)}, {@link CandidateSearch}).
+	 */
+	@Name("phylogeny.RFComparison")
+	@Label("Comparaison RF")
+	@Category({"Phylogénie", "Robinson-Foulds"})
+	@StackTrace(false)
+	public static final class RFComparison extends Event {
+		@Label("Feuilles")
+		public int feuilles;
+
+		@Label("Bipartitions absentes")
+		@Description("Les bipartitions du deuxième arbre absentes du premier, -1 si le calcul a été interrompu")
+		public int absentes;
+
+		@Label("Distance")
+		@Description("La distance RF, NaN si le calcul a été interrompu")
+		public double distance;
+	}
+
+	/**
+	 * La lecture d'un morceau de fichier: un morceau d'un fichier "*.fa" ({@link FastaReader}) ou un arbre Newick
+	 * ({@link NewickReader}).
+	 */
+	@Name("phylogeny.ParseChunk")
+	@Label("Lecture d'un morceau de fichier")
+	@Category({"Phylogénie", "Lecture"})
+	@StackTrace(false)
+	public static final class ParseChunk extends Event {
+		@Label("Format")
+		public String format;
+
+		@Label("Début")
+		@Description("La position du début du morceau: en octets pour \"fa\", en caractères pour \"nw\"")
+		public long debut;
+
+		@Label("Fin")
+		public long fin;
+
+		@Label("Éléments")
+		@Description("Les protéines lues pour \"fa\", les noeuds de l'arbre pour \"nw\"")
+		public int elements;
+	}
+}
@@ -0,0 +1,163 @@
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Filtre des colonnes de gaps d'un alignement encodé (voir {@link FastaReader}).
+ * <p>Comme {@link PhylogenyNeighborJoining#removeGaps(HashMap)}, toute colonne qui contient un gap dans au moins une séquence
+ * est retirée de toutes les séquences. Les colonnes à retirer sont marquées dans un masque de bits en un seul passage sur les
+ * séquences, puis chaque séquence est compactée en une seule copie. Les deux étapes sont réparties par blocs de séquences sur
+ * un {@link ForkJoinPool} si un pool est fourni.</p>
+ */
+public class GapFilter {
+
+	/* Nombre de séquences traitées par une tâche parallèle avant de ne plus être découpée. */
+	private static final int SEQUENCES_PAR_TACHE = 64;
+
+	/**
+	 * Retire les colonnes de gaps de protéines lues par un {@link FastaReader}.
+	 *
+	 * @param enregistrements
+	 * 		  les protéines et leur séquence encodée, gaps compris
+	 * @param pool
+	 * 		  le pool de threads sur lequel répartir les séquences, ou <code>null</code> pour une exécution séquentielle
+	 *
+	 * @return les mêmes protéines, dans le même ordre, avec leur séquence filtrée des gaps.
+	 */
+	public static FastaReader.Enregistrements filtrer(FastaReader.Enregistrements enregistrements, ForkJoinPool pool) {
+		String[] noms = new String[enregistrements.size()];
+		byte[][] sequences = new byte[enregistrements.size()][];
+		for (int i = 0; i < sequences.length; i++) {
+			noms[i] = enregistrements.getNom(i);
+			sequences[i] = enregistrements.getSequence(i);
+		}
+		return new FastaReader.Enregistrements(noms, filtrer(sequences, FastaReader.GAP, pool));
+	}
+
+	/**
+	 * Retire de toutes les séquences les colonnes qui contiennent <code>gap</code> dans au moins une séquence. Les séquences
+	 * peuvent être de longueurs différentes: chacune perd les colonnes marquées qui sont dans ses limites.
+	 *
+	 * @param sequences
+	 * 		  les séquences encodées
+	 * @param gap
+	 * 		  le code d'un gap
+	 * @param pool
+	 * 		  le pool de threads sur lequel répartir les séquences, ou <code>null</code> pour une exécution séquentielle
+	 *
+	 * @return les séquences filtrées, dans le même ordre.
+	 */
+	public static byte[][] filtrer(byte[][] sequences, byte gap, ForkJoinPool pool) {
+		int max = 0;
+		for (byte[] sequence : sequences)
+			max = Math.max(max, sequence.length);
+		int longueur = max;
+
+		/* Premier passage: le masque des colonnes de gaps, union des masques de chaque bloc de séquences */
+		long[] masque = executer(pool, sequences.length, (debut, fin) -> {
+			long[] partiel = new long[(longueur + 63) >>> 6];
+			for (int s = debut; s < fin; s++) {
+				byte[] sequence = sequences[s];
+				for (int c = 0; c < sequence.length; c++)
+					if (sequence[c] == gap)
+						partiel[c >>> 6] |= 1L << c;
+			}
+			return partiel;
+		}, (gauche, droite) -> {
+			for (int m = 0; m < gauche.length; m++)
+				gauche[m] |= droite[m];
+			return gauche;
+		});
+
+		/* Les colonnes gardées, par ordre croissant */
+		int nbGaps = 0;
+		for (long mot : masque)
+			nbGaps += Long.bitCount(mot);
+		int[] gardees = new int[longueur - nbGaps];
+		for (int c = 0, k = 0; c < longueur; c++)
+			if ((masque[c >>> 6] & (1L << c)) == 0)
+				gardees[k++] = c;
+
+		/* Second passage: chaque séquence est compactée en une copie */
+		byte[][] filtrees = new byte[sequences.length][];
+		executer(pool, sequences.length, (debut, fin) -> {
+			for (int s = debut; s < fin; s++) {
+				byte[] sequence = sequences[s];
+				int taille = sequence.length == longueur ? gardees.length : nbGardees(gardees, sequence.length);
+				byte[] filtree = new byte[taille];
+				for (int k = 0; k < taille; k++)
+					filtree[k] = sequence[gardees[k]];
+				filtrees[s] = filtree;
+			}
+			return null;
+		}, (gauche, droite) -> null);
+		return filtrees;
+	}
+
+	/**
+	 * Marque dans un masque de bits les positions des gaps "-" d'une liste de séquences.
+	 *
+	 * @param sequences
+	 * 		  les séquences d'acides aminés
+	 *
+	 * @return le masque des colonnes qui contiennent un gap dans au moins une séquence.
+	 */
+	public static BitSet colonnesGap(Collection<String> sequences) {
+		BitSet masque = new BitSet();
+		for (String seq : sequences)
+			for (int c = seq.indexOf('-'); c >= 0; c = seq.indexOf('-', c + 1))
+				masque.set(c);
+		return masque;
+	}
+
+	/**
+	 * @return le nombre de colonnes gardées qui sont dans une séquence de longueur <code>longueur</code>.
+	 */
+	private static int nbGardees(int[] gardees, int longueur) {
+		int position = Arrays.binarySearch(gardees, longueur);
+		return position >= 0 ? position : -position - 1;
+	}
+
+	/* Le traitement d'un bloc de séquences [debut, fin) et la combinaison de deux résultats partiels */
+	private interface Bloc<T> {
+		T traiter(int debut, int fin);
+	}
+
+	private interface Combinaison<T> {
+		T combiner(T gauche, T droite);
+	}
+
+	/**
+	 * Traite toutes les séquences par blocs, en parallèle si un pool est fourni, et combine les résultats partiels.
+	 */
+	private static <T> T executer(ForkJoinPool pool, int nbSequences, Bloc<T> bloc, Combinaison<T> combinaison) {
+		if (pool == null || nbSequences <= SEQUENCES_PAR_TACHE)
+			return bloc.traiter(0, nbSequences);
+		return pool.invoke(new Tache<T>(bloc, combinaison, 0, nbSequences));
+	}
+
+	@SuppressWarnings("serial")
+	private static final class Tache<T> extends RecursiveTask<T> {
+		private final Bloc<T> bloc;
+		private final Combinaison<T> combinaison;
+		private final int debut;
+		private final int fin;
+
+		Tache(Bloc<T> bloc, Combinaison<T> combinaison, int debut, int fin) {
+			this.bloc = bloc;
+			this.combinaison = combinaison;
+			this.debut = debut;
+			this.fin = fin;
+		}
+
+		@Override
+		protected T compute() {
+			if (this.fin - this.debut <= SEQUENCES_PAR_TACHE)
+				return this.bloc.traiter(this.debut, this.fin);
+			int milieu = (this.debut + this.fin) >>> 1;
+			Tache<T> droite = new Tache<T>(this.bloc, this.combinaison, milieu, this.fin);
+			droite.fork();
+			T gauche = new Tache<T>(this.bloc, this.combinaison, this.debut, milieu).compute();
+			return this.combinaison.combiner(gauche, droite.join());
+		}
+	}
+}
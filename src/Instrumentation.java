@@ -0,0 +1,263 @@
+import java.io.*;
+import java.lang.management.ManagementFactory;
+import java.util.*;
+
+/**
+ * Mesure des étapes d'une exécution du programme: pour chaque étape, le temps écoulé, le temps CPU, le nombre d'octets
+ * alloués et le nombre d'éléments traités, ainsi que la durée de chaque itération de l'algorithme NJ.
+ * <p>Les étapes se suivent: {@link #debut(String)} commence une étape et {@link #fin(long)} la termine. Une instrumentation
+ * inactive ne mesure rien, ce qui permet d'appeler ces méthodes sans condition.</p>
+ * <ol>
+ * 		<li>le temps CPU est celui du processus entier ({@link com.sun.management.OperatingSystemMXBean#getProcessCpuTime()}): il
+ * 			compte les threads du pool, mais aussi le ramasse-miettes et le compilateur JIT.</li>
+ * 		<li>les octets alloués sont la somme, sur tous les threads vivants à la fin de l'étape, des octets alloués depuis le début
+ * 			de l'étape ({@link com.sun.management.ThreadMXBean#getThreadAllocatedBytes(long[])}). Les threads terminés pendant
+ * 			l'étape ne sont pas comptés.</li>
+ * </ol>
+ * Une mesure que la machine virtuelle ne fournit pas vaut -1.
+ */
+public class Instrumentation {
+
+	/**
+	 * Les mesures d'une étape terminée.
+	 */
+	public static final class Phase {
+		private final String nom;
+		private final long mur;
+		private final long cpu;
+		private final long alloues;
+		private final long elements;
+
+		Phase(String nom, long mur, long cpu, long alloues, long elements) {
+			this.nom = nom;
+			this.mur = mur;
+			this.cpu = cpu;
+			this.alloues = alloues;
+			this.elements = elements;
+		}
+
+		public String getNom() {
+			return this.nom;
+		}
+
+		/**
+		 * @return le temps écoulé, en nanosecondes.
+		 */
+		public long getMur() {
+			return this.mur;
+		}
+
+		/**
+		 * @return le temps CPU du processus, en nanosecondes, ou -1.
+		 */
+		public long getCpu() {
+			return this.cpu;
+		}
+
+		/**
+		 * @return le nombre d'octets alloués, ou -1.
+		 */
+		public long getAlloues() {
+			return this.alloues;
+		}
+
+		public long getElements() {
+			return this.elements;
+		}
+	}
+
+	private final boolean actif;
+	private final ArrayList<Phase> phases = new ArrayList<Phase>();
+
+	/* Les sources des mesures, null si la machine virtuelle ne les fournit pas. */
+	private final com.sun.management.OperatingSystemMXBean systeme;
+	private final com.sun.management.ThreadMXBean threads;
+
+	/* L'étape en cours: son nom, ses instants de début et les octets alloués par chaque thread à son début. */
+	private String nom;
+	private long debutMur;
+	private long debutCpu;
+	private HashMap<Long, Long> debutAlloues;
+
+	/* Le nombre de noeuds actifs et la durée, en nanosecondes, de chaque itération NJ. */
+	private int[] taillesNJ = new int[0];
+	private long[] dureesNJ = new long[0];
+	private int nbIterationsNJ;
+
+	/**
+	 * @param actif
+	 * 		  <code>false</code> pour une instrumentation qui ne mesure rien
+	 */
+	public Instrumentation(boolean actif) {
+		this.actif = actif;
+		com.sun.management.OperatingSystemMXBean systeme = null;
+		com.sun.management.ThreadMXBean threads = null;
+		if (actif) {
+			if (ManagementFactory.getOperatingSystemMXBean() instanceof com.sun.management.OperatingSystemMXBean)
+				systeme = (com.sun.management.OperatingSystemMXBean) ManagementFactory.getOperatingSystemMXBean();
+			if (ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean) {
+				threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+				if (threads.isThreadAllocatedMemorySupported())
+					threads.setThreadAllocatedMemoryEnabled(true);
+				else
+					threads = null;
+			}
+		}
+		this.systeme = systeme;
+		this.threads = threads;
+	}
+
+	public boolean isActif() {
+		return this.actif;
+	}
+
+	/**
+	 * Commencer une étape. L'étape précédente doit être terminée.
+	 *
+	 * @param nom
+	 * 		  le nom de l'étape dans le rapport
+	 */
+	public void debut(String nom) {
+		if (!this.actif)
+			return;
+		if (this.nom != null)
+			throw new IllegalStateException("L'étape \"" + this.nom + "\" n'est pas terminée.");
+		this.nom = nom;
+		this.debutAlloues = this.alloues();
+		this.debutCpu = this.cpu();
+		this.debutMur = System.nanoTime();
+	}
+
+	/**
+	 * Terminer l'étape en cours.
+	 *
+	 * @param elements
+	 * 		  le nombre d'éléments traités par l'étape (arbres, protéines, distances, ...)
+	 */
+	public void fin(long elements) {
+		if (!this.actif)
+			return;
+		if (this.nom == null)
+			throw new IllegalStateException("Aucune étape n'est commencée.");
+		long mur = System.nanoTime() - this.debutMur;
+		long cpu = this.cpu();
+		cpu = cpu < 0 || this.debutCpu < 0 ? -1 : cpu - this.debutCpu;
+
+		long alloues = -1;
+		HashMap<Long, Long> finAlloues = this.alloues();
+		if (finAlloues != null && this.debutAlloues != null) {
+			alloues = 0;
+			for (Map.Entry<Long, Long> thread : finAlloues.entrySet())
+				alloues += thread.getValue() - this.debutAlloues.getOrDefault(thread.getKey(), 0L);
+		}
+
+		this.phases.add(new Phase(this.nom, mur, cpu, alloues, elements));
+		this.nom = null;
+		this.debutAlloues = null;
+	}
+
+	/**
+	 * @return les étapes terminées, dans leur ordre d'exécution.
+	 */
+	public List<Phase> getPhases() {
+		return Collections.unmodifiableList(this.phases);
+	}
+
+	/**
+	 * @return le destinataire des durées des itérations NJ, ou <code>null</code> si l'instrumentation est inactive: le moteur
+	 * 		   NJ ne mesure alors rien.
+	 */
+	public NJEngine.Suivi suiviNJ() {
+		if (!this.actif)
+			return null;
+		return (nbActifs, duree) -> {
+			if (this.nbIterationsNJ == this.dureesNJ.length) {
+				int capacite = Math.max(16, 2 * this.dureesNJ.length);
+				this.taillesNJ = Arrays.copyOf(this.taillesNJ, capacite);
+				this.dureesNJ = Arrays.copyOf(this.dureesNJ, capacite);
+			}
+			this.taillesNJ[this.nbIterationsNJ] = nbActifs;
+			this.dureesNJ[this.nbIterationsNJ++] = duree;
+		};
+	}
+
+	/**
+	 * Écrire le rapport au format JSON:
+	 * <pre>
+	 * {
+	 *   "phases": [
+	 *     {"nom": "arbres", "mur_ns": 1200345, "cpu_ns": 1100000, "octets_alloues": 524288, "elements": 5},
+	 *     ...
+	 *   ],
+	 *   "iterations_nj": [
+	 *     {"noeuds": 5, "mur_ns": 2100},
+	 *     ...
+	 *   ]
+	 * }
+	 * </pre>
+	 * <code>noeuds</code> est le nombre de noeuds actifs au début de l'itération NJ.
+	 *
+	 * @param ecrivain
+	 * 		  la destination du rapport, qui n'est pas fermée
+	 *
+	 * @throws IOException si l'écriture échoue
+	 */
+	public void ecrire(Writer ecrivain) throws IOException {
+		ecrivain.write("{\n  \"phases\": [");
+		for (int i = 0; i < this.phases.size(); i++) {
+			Phase phase = this.phases.get(i);
+			ecrivain.write(i == 0 ? "\n" : ",\n");
+			ecrivain.write("    {\"nom\": " + chaine(phase.nom) + ", \"mur_ns\": " + phase.mur + ", \"cpu_ns\": " + phase.cpu
+					+ ", \"octets_alloues\": " + phase.alloues + ", \"elements\": " + phase.elements + "}");
+		}
+		ecrivain.write(this.phases.isEmpty() ? "],\n" : "\n  ],\n");
+		ecrivain.write("  \"iterations_nj\": [");
+		for (int i = 0; i < this.nbIterationsNJ; i++) {
+			ecrivain.write(i == 0 ? "\n" : ",\n");
+			ecrivain.write("    {\"noeuds\": " + this.taillesNJ[i] + ", \"mur_ns\": " + this.dureesNJ[i] + "}");
+		}
+		ecrivain.write(this.nbIterationsNJ == 0 ? "]\n}\n" : "\n  ]\n}\n");
+		ecrivain.flush();
+	}
+
+	/**
+	 * @return le temps CPU du processus, en nanosecondes, ou -1.
+	 */
+	private long cpu() {
+		return this.systeme == null ? -1 : this.systeme.getProcessCpuTime();
+	}
+
+	/**
+	 * @return les octets alloués par chaque thread vivant depuis sa création, ou <code>null</code>.
+	 */
+	private HashMap<Long, Long> alloues() {
+		if (this.threads == null)
+			return null;
+		long[] ids = this.threads.getAllThreadIds();
+		long[] octets = this.threads.getThreadAllocatedBytes(ids);
+		HashMap<Long, Long> alloues = new HashMap<Long, Long>(2 * ids.length);
+		for (int i = 0; i < ids.length; i++) {
+			/* -1 pour un thread terminé entre les deux appels */
+			if (octets[i] >= 0)
+				alloues.put(ids[i], octets[i]);
+		}
+		return alloues;
+	}
+
+	/**
+	 * @return la chaîne JSON correspondant à <code>s</code>.
+	 */
+	private static String chaine(String s) {
+		StringBuilder json = new StringBuilder(s.length() + 2).append('"');
+		for (int i = 0; i < s.length(); i++) {
+			char c = s.charAt(i);
+			if (c == '"' || c == '\\')
+				json.append('\\').append(c);
+			else if (c < 0x20)
+				json.append(String.format("\\u%04x", (int) c));
+			else
+				json.append(c);
+		}
+		return json.append('"').toString();
+	}
+}
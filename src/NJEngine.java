@@ -0,0 +1,837 @@
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+import jdk.jfr.EventType;
+
+/**
+ * Moteur <i>Neighbor Joining</i> en place.
+ * <p>Contrairement à {@link PhylogenyNeighborJoining#neighborJoining(double[][], HashMap)} qui recalcule toute la matrice NJ
+ * et réalloue la matrice des distances à chaque itération, ce moteur conserve une seule matrice des distances pendant
+ * toute l'exécution:</p>
+ * <ol>
+ * 		<li>la somme de chaque ligne est gardée en mémoire et mise à jour à chaque fusion, ce qui évite les appels répétés à
+ * 			{@link PhylogenyNeighborJoining#ri(double[][], int)};</li>
+ * 		<li>le nouveau noeud <code>k</code> réutilise l'emplacement (ligne/colonne) du noeud <code>i</code> et l'emplacement
+ * 			de <code>j</code> est simplement désactivé.</li>
+ * </ol>
+ * Une exécution coûte donc O(n^3) en temps et O(n^2) en mémoire, sans allocation de matrice à chaque itération.
+ * <p>Les emplacements actifs sont conservés dans l'ordre de création des noeuds (les feuilles d'abord, puis les noeuds
+ * internes), qui est l'ordre des lignes de la matrice compactée de l'algorithme d'origine. La valeur NJ d'une paire est
+ * toutefois calculée à partir des sommes conservées, <code>d(i,j) - (ri + rj)</code>, alors que
+ * {@link PhylogenyNeighborJoining#NJmatrix(double[][], HashMap)} recalcule <code>d(i,j) - ri - rj</code>: les deux valeurs
+ * peuvent différer de quelques ulps. Lorsque plusieurs paires sont à égalité, ou à quelques ulps les unes des autres, la paire
+ * retenue peut donc différer de celle de {@link PhylogenyNeighborJoining#findMin(double[][])}, et avec elle les longueurs de
+ * branches et l'enracinement par mid-point.</p>
+ * <p>La recherche de la paire minimale peut être complète ({@link Recherche#COMPLETE}) ou bornée à la manière de RapidNJ
+ * ({@link Recherche#BORNEE}). Les deux recherches retiennent exactement la même paire.</p>
+ * <p>Si un {@link ForkJoinPool} est fourni, les étapes coûteuses de chaque itération (recherche de la paire minimale, calcul
+ * de la nouvelle ligne et mise à jour des sommes) sont découpées en blocs de lignes exécutés en parallèle. Les minimums
+ * partiels sont combinés selon l'ordre de création des noeuds et les sommes sont faites dans le même ordre qu'en séquentiel:
+ * l'arbre obtenu ne dépend donc pas du nombre de threads.</p>
+ */
+public class NJEngine {
+
+	/**
+	 * Stratégie de recherche de la valeur minimale de la matrice NJ.
+	 * <ol>
+	 * 		<li><code>COMPLETE</code>: toutes les paires actives sont évaluées à chaque itération.</li>
+	 * 		<li><code>BORNEE</code>: chaque ligne est triée une fois pour toutes par distance croissante. Comme
+	 * 			<code>d(i,j) - (ri + rj) &gt;= d(i,j) - (ri + max r)</code>, le parcours d'une ligne s'arrête dès que cette borne
+	 * 			dépasse le meilleur minimum trouvé. En pratique, seule une petite partie de chaque ligne est parcourue.</li>
+	 * </ol>
+	 */
+	public enum Recherche { COMPLETE, BORNEE }
+
+	/**
+	 * Reçoit la durée de chaque itération, depuis le thread qui exécute l'algorithme.
+	 */
+	public interface Suivi {
+		/**
+		 * @param nbActifs
+		 * 		  le nombre de noeuds actifs au début de l'itération
+		 * @param duree
+		 * 		  la durée de l'itération (recherche de la paire minimale et fusion), en nanosecondes
+		 */
+		void iteration(int nbActifs, long duree);
+	}
+
+	/* La matrice des distances, modifiée en place. Seules les cases des emplacements actifs sont significatives. */
+	private final double[][] d;
+
+	/* Somme de chaque ligne de la matrice des distances sur les emplacements actifs (diagonale exclue). */
+	private final double[] sommes;
+
+	/* La valeur ri de chaque emplacement pour l'itération courante. Ce tableau est réutilisé d'une itération à l'autre. */
+	private final double[] r;
+
+	/* Le noeud associé à chaque emplacement de la matrice. */
+	private final Node[] noeuds;
+
+	/* Les emplacements actifs, triés par ordre de création de leur noeud. */
+	private final int[] actifs;
+	private int nbActifs;
+
+	private final Recherche recherche;
+
+	/* Le pool de threads utilisé pour les étapes parallèles, null pour une exécution séquentielle. */
+	private final ForkJoinPool pool;
+
+	/* Le destinataire de la durée des itérations, possiblement null. */
+	private final Suivi suivi;
+
+	/* En dessous de ce nombre de noeuds actifs, une itération est trop courte pour gagner à être parallélisée. */
+	private static final int SEUIL_PARALLELE = 256;
+
+	/* Nombre de lignes traitées par une tâche parallèle avant de ne plus être découpée. */
+	private static final int LIGNES_PAR_TACHE = 16;
+
+	/* Le type d'événement JFR des itérations: un événement n'est créé que si un enregistrement l'a activé. */
+	private static final EventType ITERATION = EventType.getEventType(FlightEvents.NJIteration.class);
+
+	/* Les emplacements de la paire retenue à l'itération courante, dans l'ordre où ils deviennent enfants du nouveau noeud. */
+	private int paireI;
+	private int paireJ;
+
+	/* Le minimum de la recherche séquentielle, réutilisé d'une itération à l'autre. */
+	private final Candidat candidat = new Candidat();
+
+	/* Pour la recherche bornée: la plus grande valeur ri de l'itération courante et le meilleur minimum connu de tous les blocs
+	 * (bits d'un double). */
+	private double maxR;
+	private final AtomicLong partage = new AtomicLong();
+
+	/* Les traitements par blocs de chaque itération, créés une seule fois: une itération n'alloue rien en séquentiel. */
+	private final BlocMin blocMin = this::chercherMin;
+	private final BlocMin blocMinBorne = this::chercherMinBorne;
+	private final Bloc blocFusion = this::fusionnerLignes;
+
+	/* Pour la recherche bornée uniquement:
+	 * 	- ids contient le numéro de création du noeud de chaque emplacement, et emplacements fait le lien inverse (-1 si le noeud a été fusionné);
+	 * 	- triDist et triIds contiennent, pour chaque emplacement, les distances vers les autres noeuds (arrondies vers le bas en float,
+	 * 	  ce qui garde la borne valide) triées par ordre croissant, avec le numéro du noeud correspondant. Les entrées dont le noeud
+	 * 	  a été fusionné depuis sont ignorées, puis retirées lorsqu'elles deviennent trop nombreuses. */
+	private int[] ids;
+	private int[] emplacements;
+	private int prochainId;
+	private float[][] triDist;
+	private int[][] triIds;
+	private int[] triLongueurs;
+
+	/**
+	 * Prépare le moteur à partir d'une matrice des distances et de la table d'index des noeuds, avec une recherche complète.
+	 *
+	 * @param matriceDistance
+	 * 		  la matrice des distances. Elle est modifiée en place par l'algorithme.
+	 * @param tableNoeud
+	 * 		  index des noeuds dans la matrice des distances (clés de 0 à n - 1).
+	 *
+	 * @throws IllegalArgumentException si la matrice contient moins de deux noeuds ou si la table d'index ne correspond pas à la matrice.
+	 */
+	public NJEngine(double[][] matriceDistance, HashMap<Integer, Node> tableNoeud) {
+		this(matriceDistance, tableNoeud, Recherche.COMPLETE);
+	}
+
+	/**
+	 * Prépare le moteur à partir d'une matrice des distances et de la table d'index des noeuds.
+	 *
+	 * @param matriceDistance
+	 * 		  la matrice des distances. Elle est modifiée en place par l'algorithme.
+	 * @param tableNoeud
+	 * 		  index des noeuds dans la matrice des distances (clés de 0 à n - 1).
+	 * @param recherche
+	 * 		  la stratégie de recherche de la paire minimale.
+	 *
+	 * @throws IllegalArgumentException si la matrice contient moins de deux noeuds ou si la table d'index ne correspond pas à la matrice.
+	 */
+	public NJEngine(double[][] matriceDistance, HashMap<Integer, Node> tableNoeud, Recherche recherche) {
+		this(matriceDistance, tableNoeud, recherche, null);
+	}
+
+	/**
+	 * Prépare le moteur à partir d'une matrice des distances et de la table d'index des noeuds, en parallélisant les itérations
+	 * sur un pool de threads.
+	 *
+	 * @param matriceDistance
+	 * 		  la matrice des distances. Elle est modifiée en place par l'algorithme.
+	 * @param tableNoeud
+	 * 		  index des noeuds dans la matrice des distances (clés de 0 à n - 1).
+	 * @param recherche
+	 * 		  la stratégie de recherche de la paire minimale.
+	 * @param pool
+	 * 		  le pool de threads à utiliser, <code>null</code> pour une exécution séquentielle.
+	 *
+	 * @throws IllegalArgumentException si la matrice contient moins de deux noeuds ou si la table d'index ne correspond pas à la matrice.
+	 */
+	public NJEngine(double[][] matriceDistance, HashMap<Integer, Node> tableNoeud, Recherche recherche, ForkJoinPool pool) {
+		this(matriceDistance, tableNoeud, recherche, pool, null);
+	}
+
+	/**
+	 * Prépare le moteur comme {@link #NJEngine(double[][], HashMap, Recherche, ForkJoinPool)}, en transmettant la durée de
+	 * chaque itération.
+	 *
+	 * @param matriceDistance
+	 * 		  la matrice des distances. Elle est modifiée en place par l'algorithme.
+	 * @param tableNoeud
+	 * 		  index des noeuds dans la matrice des distances (clés de 0 à n - 1).
+	 * @param recherche
+	 * 		  la stratégie de recherche de la paire minimale.
+	 * @param pool
+	 * 		  le pool de threads à utiliser, <code>null</code> pour une exécution séquentielle.
+	 * @param suivi
+	 * 		  le destinataire de la durée des itérations, ou <code>null</code>.
+	 *
+	 * @throws IllegalArgumentException si la matrice contient moins de deux noeuds ou si la table d'index ne correspond pas à la matrice.
+	 */
+	public NJEngine(double[][] matriceDistance, HashMap<Integer, Node> tableNoeud, Recherche recherche, ForkJoinPool pool, Suivi suivi) {
+		int n = matriceDistance.length;
+		if (n < 2 || tableNoeud.size() != n)
+			throw new IllegalArgumentException("La matrice des distances doit contenir au moins deux noeuds indexés de 0 à n - 1.");
+
+		this.d = matriceDistance;
+		this.sommes = new double[n];
+		this.r = new double[n];
+		this.noeuds = new Node[n];
+		this.actifs = new int[n];
+		this.recherche = recherche;
+		this.pool = pool;
+		this.suivi = suivi;
+
+		for (int i = 0; i < n; i++) {
+			this.noeuds[i] = tableNoeud.get(i);
+			if (this.noeuds[i] == null)
+				throw new IllegalArgumentException("La table d'index des noeuds ne contient pas l'index " + i + ".");
+			this.actifs[i] = i;
+		}
+		this.nbActifs = n;
+
+		/* Somme de chaque ligne, sans la diagonale (comme dans ri) */
+		this.parBlocs((debut, fin) -> {
+			for (int i = debut; i < fin; i++) {
+				double somme = 0;
+				for (int k = 0; k < n; k++)
+					if (k != i)
+						somme += matriceDistance[i][k];
+				this.sommes[i] = somme;
+			}
+		});
+
+		if (recherche == Recherche.BORNEE)
+			this.initialiserTri();
+	}
+
+	/**
+	 * Algorithme NJ en place, avec une recherche complète.
+	 *
+	 * @param matriceDistance
+	 * 		  la matrice des distances, modifiée en place.
+	 * @param tableNoeud
+	 * 		  index des noeuds dans la matrice des distances
+	 *
+	 * @return l'arbre NJ non-enraciné, sous la même forme que {@link PhylogenyNeighborJoining#neighborJoining(double[][], HashMap)}.
+	 */
+	public static BinTree neighborJoining(double[][] matriceDistance, HashMap<Integer, Node> tableNoeud) {
+		return new NJEngine(matriceDistance, tableNoeud).executer();
+	}
+
+	/**
+	 * Algorithme NJ en place.
+	 *
+	 * @param matriceDistance
+	 * 		  la matrice des distances, modifiée en place.
+	 * @param tableNoeud
+	 * 		  index des noeuds dans la matrice des distances
+	 * @param recherche
+	 * 		  la stratégie de recherche de la paire minimale.
+	 *
+	 * @return l'arbre NJ non-enraciné, sous la même forme que {@link PhylogenyNeighborJoining#neighborJoining(double[][], HashMap)}.
+	 */
+	public static BinTree neighborJoining(double[][] matriceDistance, HashMap<Integer, Node> tableNoeud, Recherche recherche) {
+		return new NJEngine(matriceDistance, tableNoeud, recherche).executer();
+	}
+
+	/**
+	 * Algorithme NJ en place, parallélisé sur un pool de threads.
+	 *
+	 * @param matriceDistance
+	 * 		  la matrice des distances, modifiée en place.
+	 * @param tableNoeud
+	 * 		  index des noeuds dans la matrice des distances
+	 * @param recherche
+	 * 		  la stratégie de recherche de la paire minimale.
+	 * @param pool
+	 * 		  le pool de threads à utiliser, <code>null</code> pour une exécution séquentielle.
+	 *
+	 * @return l'arbre NJ non-enraciné, identique à celui de l'exécution séquentielle.
+	 */
+	public static BinTree neighborJoining(double[][] matriceDistance, HashMap<Integer, Node> tableNoeud, Recherche recherche, ForkJoinPool pool) {
+		return new NJEngine(matriceDistance, tableNoeud, recherche, pool).executer();
+	}
+
+	/**
+	 * Algorithme NJ en place, parallélisé sur un pool de threads, avec la durée de chaque itération.
+	 *
+	 * @param matriceDistance
+	 * 		  la matrice des distances, modifiée en place.
+	 * @param tableNoeud
+	 * 		  index des noeuds dans la matrice des distances
+	 * @param recherche
+	 * 		  la stratégie de recherche de la paire minimale.
+	 * @param pool
+	 * 		  le pool de threads à utiliser, <code>null</code> pour une exécution séquentielle.
+	 * @param suivi
+	 * 		  le destinataire de la durée des itérations, ou <code>null</code>.
+	 *
+	 * @return l'arbre NJ non-enraciné, identique à celui de l'exécution séquentielle.
+	 */
+	public static BinTree neighborJoining(double[][] matriceDistance, HashMap<Integer, Node> tableNoeud, Recherche recherche, ForkJoinPool pool,
+			Suivi suivi) {
+		return new NJEngine(matriceDistance, tableNoeud, recherche, pool, suivi).executer();
+	}
+
+	/**
+	 * Exécute les itérations NJ jusqu'à ce qu'il ne reste que deux noeuds, puis construit l'arbre.
+	 *
+	 * @return l'arbre NJ non-enraciné.
+	 */
+	public BinTree executer() {
+		while (this.nbActifs > 2) {
+			long debut = this.suivi != null ? System.nanoTime() : 0;
+			int nbActifs = this.nbActifs;
+			FlightEvents.NJIteration evenement = null;
+			if (ITERATION.isEnabled()) {
+				evenement = new FlightEvents.NJIteration();
+				evenement.begin();
+			}
+			if (this.nbActifs > 4) {
+				this.calculerR();
+				if (this.recherche == Recherche.BORNEE)
+					this.chercherMinBorne();
+				else
+					this.chercherMin();
+				this.orienter();
+			}
+			/* Avec quatre noeuds ou moins, certaines valeurs NJ sont égales en arithmétique exacte (toutes les paires pour trois noeuds,
+			 * les paires complémentaires pour quatre noeuds): le choix de l'algorithme d'origine ne dépend alors que des arrondis.
+			 * On reproduit donc exactement son calcul pour ces dernières fusions, qui ne coûtent que quelques cases.*/
+			else
+				this.chercherMinExact();
+
+			/* La valeur NJ de la paire, calculée comme dans calculerR avant que la fusion ne modifie les sommes */
+			if (evenement != null && evenement.shouldCommit()) {
+				double facteur = (double) 1 / (nbActifs - 2);
+				evenement.noeuds = nbActifs;
+				evenement.i = this.paireI;
+				evenement.j = this.paireJ;
+				evenement.qMin = this.d[this.paireI][this.paireJ] - (this.sommes[this.paireI] * facteur + this.sommes[this.paireJ] * facteur);
+			}
+			this.fusionner();
+			if (evenement != null)
+				evenement.commit();
+			if (this.suivi != null)
+				this.suivi.iteration(nbActifs, System.nanoTime() - debut);
+		}
+
+		/* Comme pour l'algorithme d'origine, la racine a une distance de -1 et ses deux enfants portent la même distance.*/
+		int a = this.actifs[0];
+		int b = this.actifs[1];
+		BinTree tree = new BinTree(new Node());
+		tree.getRoot().addChild(this.noeuds[a]);
+		tree.getRoot().addChild(this.noeuds[b]);
+		tree.getRoot().getLeftChild().addDist(this.d[a][b]);
+		tree.getRoot().getRightChild().addDist(this.d[a][b]);
+		tree.getRoot().addDist(-1);
+		return tree;
+	}
+
+	/**
+	 * Calcul des valeurs ri de tous les emplacements actifs à partir des sommes conservées.
+	 */
+	private void calculerR() {
+		double facteur = (double) 1 / (this.nbActifs - 2);
+		for (int a = 0; a < this.nbActifs; a++) {
+			int s = this.actifs[a];
+			this.r[s] = this.sommes[s] * facteur;
+		}
+	}
+
+	/**
+	 * Recherche de la paire (i, j) qui minimise la valeur NJ <code>d(i,j) - (ri + rj)</code>. Les emplacements actifs sont parcourus
+	 * dans leur ordre de création et seule une stricte amélioration remplace le minimum: à égalité, la paire dont les noeuds ont
+	 * été créés les premiers l'emporte.
+	 *
+	 * La paire est rangée dans <code>paireI</code> et <code>paireJ</code>, i étant le noeud créé le premier.
+	 */
+	private void chercherMin() {
+		Candidat min = this.reduire(this.blocMin);
+		this.paireI = this.actifs[min.i];
+		this.paireJ = this.actifs[min.j];
+	}
+
+	/**
+	 * Recherche complète limitée aux lignes situées aux positions <code>debut</code> à <code>fin - 1</code> des emplacements actifs.
+	 *
+	 * @param min
+	 * 		  reçoit le minimum du bloc, les clés étant les positions des deux noeuds dans la liste des emplacements actifs.
+	 */
+	private void chercherMin(int debut, int fin, Candidat min) {
+		for (int a = debut; a < fin; a++) {
+			int sa = this.actifs[a];
+			double[] ligne = this.d[sa];
+			double ra = this.r[sa];
+			for (int b = a + 1; b < this.nbActifs; b++) {
+				int sb = this.actifs[b];
+				double q = ligne[sb] - (ra + this.r[sb]);
+				if (q < min.q) {
+					min.q = q;
+					min.i = a;
+					min.j = b;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Recherche bornée de la paire minimale. Chaque ligne est parcourue par distance croissante et le parcours s'arrête dès que
+	 * <code>d(i,j) - (ri + max r)</code> dépasse le minimum courant: aucune case restante de la ligne ne peut alors faire mieux.
+	 * Une paire est présente au moins dans la ligne du plus récent de ses deux noeuds. Les égalités sont départagées selon l'ordre
+	 * de création des deux noeuds, ce qui donne exactement la même paire que {@link #chercherMin()}.
+	 *
+	 * La paire est rangée dans <code>paireI</code> et <code>paireJ</code>, i étant le noeud créé le premier.
+	 */
+	private void chercherMinBorne() {
+		double maxR = Double.NEGATIVE_INFINITY;
+		for (int a = 0; a < this.nbActifs; a++)
+			maxR = Math.max(maxR, this.r[this.actifs[a]]);
+		this.maxR = maxR;
+
+		/* Le meilleur minimum trouvé par l'ensemble des blocs ne sert qu'à arrêter plus tôt le parcours des lignes: c'est toujours
+		 * une valeur réellement atteinte, donc une case dont la borne le dépasse ne peut pas être le minimum. Le résultat ne dépend
+		 * donc pas de l'ordre dans lequel les blocs s'exécutent. */
+		this.partage.set(Double.doubleToLongBits(Double.MAX_VALUE));
+		Candidat min = this.reduire(this.blocMinBorne);
+		this.paireI = this.emplacements[min.i];
+		this.paireJ = this.emplacements[min.j];
+	}
+
+	/**
+	 * Recherche bornée limitée aux lignes situées aux positions <code>debut</code> à <code>fin - 1</code> des emplacements actifs,
+	 * avec la plus grande valeur ri <code>maxR</code> et le meilleur minimum <code>partage</code> de l'itération.
+	 *
+	 * @param min
+	 * 		  reçoit le minimum du bloc, les clés étant les numéros de création des deux noeuds.
+	 */
+	private void chercherMinBorne(int debut, int fin, Candidat min) {
+		AtomicLong partage = this.partage;
+		double maxR = this.maxR;
+		for (int a = debut; a < fin; a++) {
+			int s = this.actifs[a];
+
+			/* Si la ligne contient surtout des noeuds déjà fusionnés, on la compacte avant de la parcourir */
+			if (this.triLongueurs[s] > 2 * this.nbActifs)
+				this.compacterTri(s);
+
+			float[] dist = this.triDist[s];
+			int[] voisins = this.triIds[s];
+			int longueur = this.triLongueurs[s];
+			double[] ligne = this.d[s];
+			double rs = this.r[s];
+			double borne = rs + maxR;
+			int idS = this.ids[s];
+			double limite = Math.min(min.q, Double.longBitsToDouble(partage.get()));
+
+			for (int e = 0; e < longueur; e++) {
+				if (dist[e] - borne > limite)
+					break;
+				int c = this.emplacements[voisins[e]];
+				if (c < 0)
+					continue;
+				double q = ligne[c] - (rs + this.r[c]);
+				int premier = Math.min(idS, voisins[e]);
+				int second = Math.max(idS, voisins[e]);
+				if (q < min.q || (q == min.q && (premier < min.i || (premier == min.i && second < min.j)))) {
+					min.q = q;
+					min.i = premier;
+					min.j = second;
+					limite = Math.min(limite, q);
+				}
+			}
+			publier(partage, min.q);
+		}
+	}
+
+	/**
+	 * Met à jour le meilleur minimum partagé entre les blocs s'il est amélioré.
+	 */
+	private static void publier(AtomicLong partage, double q) {
+		long courant;
+		while (q < Double.longBitsToDouble(courant = partage.get()))
+			if (partage.compareAndSet(courant, Double.doubleToLongBits(q)))
+				return;
+	}
+
+	/**
+	 * L'algorithme d'origine parcourt les cases (i, j) et (j, i) de la matrice NJ, qui peuvent différer d'un ulp selon l'ordre des
+	 * soustractions. Lorsque la case (j, i) est strictement plus petite, c'est elle qui est retenue et j devient le premier enfant
+	 * du nouveau noeud. On reproduit ce choix à partir des valeurs ri exactes de la paire, en O(m): la paire minimale
+	 * (<code>paireI</code>, <code>paireJ</code>), i étant le noeud créé le premier, est remise dans l'ordre où l'algorithme
+	 * d'origine la retient.
+	 */
+	private void orienter() {
+		int si = this.paireI;
+		int sj = this.paireJ;
+		double ri = this.riExact(si);
+		double rj = this.riExact(sj);
+		if (this.d[sj][si] - rj - ri < this.d[si][sj] - ri - rj) {
+			this.paireI = sj;
+			this.paireJ = si;
+		}
+	}
+
+	/**
+	 * Recherche de la paire minimale exactement comme {@link PhylogenyNeighborJoining#NJmatrix(double[][], HashMap)} suivi de
+	 * {@link PhylogenyNeighborJoining#findMin(double[][])}: les valeurs ri sont recalculées sans passer par les sommes conservées,
+	 * et les cases (i, j) et (j, i) sont toutes deux parcourues en ordre ligne par ligne. Cette recherche coûte O(m^2) pour m
+	 * noeuds actifs et n'est utilisée que pour les dernières fusions.
+	 *
+	 * La paire est rangée dans <code>paireI</code> et <code>paireJ</code>, dans l'ordre où l'algorithme d'origine la retient.
+	 */
+	private void chercherMinExact() {
+		for (int a = 0; a < this.nbActifs; a++) {
+			int s = this.actifs[a];
+			this.r[s] = this.riExact(s);
+		}
+
+		/* Comme findMin, la case (0, 0) est retenue si aucune valeur n'est inférieure à Double.MAX_VALUE */
+		double min = Double.MAX_VALUE;
+		this.paireI = 0;
+		this.paireJ = 0;
+		for (int a = 0; a < this.nbActifs; a++) {
+			int sa = this.actifs[a];
+			for (int b = 0; b < this.nbActifs; b++) {
+				int sb = this.actifs[b];
+				if (a != b && this.d[sa][sb] - this.r[sa] - this.r[sb] < min) {
+					min = this.d[sa][sb] - this.r[sa] - this.r[sb];
+					this.paireI = sa;
+					this.paireJ = sb;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Calcul de la valeur ri d'un emplacement sans passer par les sommes conservées, dans le même ordre de sommation que
+	 * {@link PhylogenyNeighborJoining#ri(double[][], int)}. Coûte O(m) pour m noeuds actifs.
+	 *
+	 * @param s
+	 * 		  l'emplacement dont on veut la valeur ri
+	 * @return la valeur ri
+	 */
+	private double riExact(int s) {
+		double ri = 0;
+		for (int c = 0; c < this.nbActifs; c++)
+			if (this.actifs[c] != s)
+				ri += this.d[s][this.actifs[c]];
+		return ri * ((double) 1 / (this.nbActifs - 2));
+	}
+
+	/**
+	 * Fusionne les noeuds de la paire retenue: <code>paireI</code> est l'emplacement du noeud i (premier enfant de k) et
+	 * <code>paireJ</code> celui du noeud j (second enfant de k).
+	 * Le nouveau noeud k prend l'emplacement du noeud i et passe en dernière position des emplacements actifs.
+	 */
+	private void fusionner() {
+		int si = this.paireI;
+		int sj = this.paireJ;
+		double[] di = this.d[si];
+		double dij = di[sj];
+
+		/* Ajouter i et j comme enfant d'un nouveau noeud k et mettre à jour les distances des arêtes [i,k] et [j,k].
+		 * Les valeurs ri et rj sont recalculées en O(m) pour que les longueurs de branches soient identiques à celles de l'algorithme
+		 * d'origine, les sommes conservées pouvant différer de quelques ulps après plusieurs mises à jour. */
+		Node i = this.noeuds[si];
+		Node j = this.noeuds[sj];
+		Node k = new Node();
+		k.addChild(i);
+		k.addChild(j);
+		i.addDist(((double) 1/2)*(dij + this.riExact(si) - this.riExact(sj)));
+		j.addDist(dij - i.getDist());
+
+		/* Calcul de la ligne/colonne du noeud k directement dans l'emplacement de i, et mise à jour des sommes des autres lignes */
+		this.parBlocs(this.blocFusion);
+
+		/* La somme de la ligne de k est faite séquentiellement, toujours dans le même ordre */
+		double sommeK = 0;
+		for (int c = 0; c < this.nbActifs; c++) {
+			int s = this.actifs[c];
+			if (s != si && s != sj)
+				sommeK += di[s];
+		}
+		di[si] = 0;
+		this.sommes[si] = sommeK;
+		this.noeuds[si] = k;
+		this.noeuds[sj] = null;
+
+		/* Retirer i et j de la liste des emplacements actifs, puis ajouter k à la fin (c'est le dernier noeud créé) */
+		int w = 0;
+		for (int c = 0; c < this.nbActifs; c++) {
+			int s = this.actifs[c];
+			if (s != si && s != sj)
+				this.actifs[w++] = s;
+		}
+		this.actifs[w++] = si;
+		this.nbActifs = w;
+
+		if (this.recherche == Recherche.BORNEE) {
+			this.emplacements[this.ids[si]] = -1;
+			this.emplacements[this.ids[sj]] = -1;
+			this.ids[sj] = -1;
+			this.ids[si] = this.prochainId;
+			this.emplacements[this.prochainId++] = si;
+			this.remplirTri(si);
+		}
+	}
+
+	/**
+	 * Calcule la ligne/colonne du nouveau noeud k dans l'emplacement de i pour les positions <code>debut</code> à
+	 * <code>fin - 1</code> des emplacements actifs, et met à jour la somme de leurs lignes. La paire fusionnée est
+	 * (<code>paireI</code>, <code>paireJ</code>).
+	 */
+	private void fusionnerLignes(int debut, int fin) {
+		int si = this.paireI;
+		int sj = this.paireJ;
+		double[] di = this.d[si];
+		double[] dj = this.d[sj];
+		double dij = di[sj];
+		for (int c = debut; c < fin; c++) {
+			int s = this.actifs[c];
+			if (s == si || s == sj)
+				continue;
+			double dk = ((double) 1/2)*(di[s] + dj[s] - dij);
+			this.sommes[s] += dk - di[s] - dj[s];
+			di[s] = dk;
+			this.d[s][si] = dk;
+		}
+	}
+
+/// Lignes triées de la recherche bornée ////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+
+	/**
+	 * Prépare les lignes triées de tous les emplacements. Coûte O(n^2 log n).
+	 */
+	private void initialiserTri() {
+		int n = this.d.length;
+		this.ids = new int[n];
+		this.emplacements = new int[2 * n];
+		this.triDist = new float[n][n - 1];
+		this.triIds = new int[n][n - 1];
+		this.triLongueurs = new int[n];
+		for (int s = 0; s < n; s++) {
+			this.ids[s] = s;
+			this.emplacements[s] = s;
+		}
+		this.prochainId = n;
+		this.parBlocs((debut, fin) -> {
+			for (int s = debut; s < fin; s++)
+				this.remplirTri(s);
+		});
+	}
+
+	/**
+	 * Remplit et trie la ligne d'un emplacement avec les distances vers tous les autres noeuds actifs.
+	 * Les tableaux de la ligne sont réutilisés: un noeud créé plus tard a toujours moins de voisins actifs que l'ancien occupant
+	 * de l'emplacement n'en avait à sa création.
+	 *
+	 * @param s
+	 * 		  l'emplacement dont on veut trier la ligne
+	 */
+	private void remplirTri(int s) {
+		float[] dist = this.triDist[s];
+		int[] voisins = this.triIds[s];
+		double[] ligne = this.d[s];
+		int longueur = 0;
+		for (int a = 0; a < this.nbActifs; a++) {
+			int c = this.actifs[a];
+			if (c == s)
+				continue;
+			dist[longueur] = versLeBas(ligne[c]);
+			voisins[longueur++] = this.ids[c];
+		}
+		this.triLongueurs[s] = longueur;
+		trier(dist, voisins, longueur);
+	}
+
+	/**
+	 * Retire d'une ligne triée les entrées dont le noeud a été fusionné, en conservant l'ordre.
+	 *
+	 * @param s
+	 * 		  l'emplacement dont on veut compacter la ligne
+	 */
+	private void compacterTri(int s) {
+		float[] dist = this.triDist[s];
+		int[] voisins = this.triIds[s];
+		int w = 0;
+		for (int e = 0; e < this.triLongueurs[s]; e++) {
+			if (this.emplacements[voisins[e]] >= 0) {
+				dist[w] = dist[e];
+				voisins[w++] = voisins[e];
+			}
+		}
+		this.triLongueurs[s] = w;
+	}
+
+	/**
+	 * Conversion d'une distance en float arrondi vers le bas, afin que la borne calculée à partir des lignes triées ne dépasse
+	 * jamais la vraie valeur NJ.
+	 */
+	private static float versLeBas(double x) {
+		float f = (float) x;
+		return f > x ? Math.nextDown(f) : f;
+	}
+
+	/**
+	 * Tri par tas des <code>longueur</code> premières distances, en déplaçant les numéros de noeuds avec elles.
+	 * Le tri se fait en place, sans allocation.
+	 */
+	private static void trier(float[] dist, int[] voisins, int longueur) {
+		for (int i = longueur / 2 - 1; i >= 0; i--)
+			tamiser(dist, voisins, i, longueur);
+		for (int fin = longueur - 1; fin > 0; fin--) {
+			echanger(dist, voisins, 0, fin);
+			tamiser(dist, voisins, 0, fin);
+		}
+	}
+
+	private static void tamiser(float[] dist, int[] voisins, int i, int longueur) {
+		while (true) {
+			int max = i;
+			int gauche = 2 * i + 1;
+			int droite = gauche + 1;
+			if (gauche < longueur && dist[gauche] > dist[max])
+				max = gauche;
+			if (droite < longueur && dist[droite] > dist[max])
+				max = droite;
+			if (max == i)
+				return;
+			echanger(dist, voisins, i, max);
+			i = max;
+		}
+	}
+
+	private static void echanger(float[] dist, int[] voisins, int i, int j) {
+		float tempDist = dist[i];
+		dist[i] = dist[j];
+		dist[j] = tempDist;
+		int tempId = voisins[i];
+		voisins[i] = voisins[j];
+		voisins[j] = tempId;
+	}
+
+/// Découpage en blocs de lignes ///////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+
+	/**
+	 * Un minimum partiel de la matrice NJ. Les clés <code>i</code> et <code>j</code> servent à départager les égalités:
+	 * la plus petite paire (i, j) dans l'ordre lexicographique l'emporte.
+	 */
+	private static final class Candidat {
+		double q = Double.MAX_VALUE;
+		int i = Integer.MAX_VALUE;
+		int j = Integer.MAX_VALUE;
+
+		void reinitialiser() {
+			this.q = Double.MAX_VALUE;
+			this.i = Integer.MAX_VALUE;
+			this.j = Integer.MAX_VALUE;
+		}
+
+		Candidat meilleur(Candidat autre) {
+			if (autre.q < this.q || (autre.q == this.q && (autre.i < this.i || (autre.i == this.i && autre.j < this.j))))
+				return autre;
+			return this;
+		}
+	}
+
+	private interface Bloc {
+		void traiter(int debut, int fin);
+	}
+
+	private interface BlocMin {
+		void chercher(int debut, int fin, Candidat min);
+	}
+
+	/**
+	 * Applique un traitement à toutes les positions des emplacements actifs, en parallèle si un pool est disponible et que la
+	 * matrice est assez grande.
+	 */
+	private void parBlocs(Bloc bloc) {
+		if (this.pool == null || this.nbActifs < SEUIL_PARALLELE)
+			bloc.traiter(0, this.nbActifs);
+		else
+			this.pool.invoke(new TacheBloc(bloc, 0, this.nbActifs));
+	}
+
+	/**
+	 * Recherche un minimum sur toutes les positions des emplacements actifs, en parallèle si un pool est disponible et que la
+	 * matrice est assez grande. Les minimums partiels sont combinés avec {@link Candidat#meilleur(Candidat)}, le résultat est
+	 * donc le même quel que soit le découpage. En séquentiel, le minimum est cherché dans le candidat réutilisé du moteur.
+	 */
+	private Candidat reduire(BlocMin bloc) {
+		if (this.pool == null || this.nbActifs < SEUIL_PARALLELE) {
+			this.candidat.reinitialiser();
+			bloc.chercher(0, this.nbActifs, this.candidat);
+			return this.candidat;
+		}
+		else
+			return this.pool.invoke(new TacheMin(bloc, 0, this.nbActifs));
+	}
+
+	@SuppressWarnings("serial")
+	private static final class TacheBloc extends RecursiveAction {
+		private final Bloc bloc;
+		private final int debut;
+		private final int fin;
+
+		TacheBloc(Bloc bloc, int debut, int fin) {
+			this.bloc = bloc;
+			this.debut = debut;
+			this.fin = fin;
+		}
+
+		@Override
+		protected void compute() {
+			if (this.fin - this.debut <= LIGNES_PAR_TACHE) {
+				this.bloc.traiter(this.debut, this.fin);
+				return;
+			}
+			int milieu = (this.debut + this.fin) >>> 1;
+			invokeAll(new TacheBloc(this.bloc, this.debut, milieu), new TacheBloc(this.bloc, milieu, this.fin));
+		}
+	}
+
+	@SuppressWarnings("serial")
+	private static final class TacheMin extends RecursiveTask<Candidat> {
+		private final BlocMin bloc;
+		private final int debut;
+		private final int fin;
+
+		TacheMin(BlocMin bloc, int debut, int fin) {
+			this.bloc = bloc;
+			this.debut = debut;
+			this.fin = fin;
+		}
+
+		@Override
+		protected Candidat compute() {
+			if (this.fin - this.debut <= LIGNES_PAR_TACHE) {
+				Candidat min = new Candidat();
+				this.bloc.chercher(this.debut, this.fin, min);
+				return min;
+			}
+			int milieu = (this.debut + this.fin) >>> 1;
+			TacheMin droite = new TacheMin(this.bloc, milieu, this.fin);
+			droite.fork();
+			Candidat gauche = new TacheMin(this.bloc, this.debut, milieu).compute();
+			return gauche.meilleur(droite.join());
+		}
+	}
+}
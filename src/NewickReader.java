@@ -0,0 +1,349 @@
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+/**
+ * Lecteur d'arbres au format Newick en un seul passage.
+ * <p>Contrairement à {@link BinTree#fromNewickToTree(String)} qui découpe récursivement la chaîne avec des
+ * <code>substring</code>, ce lecteur parcourt une seule fois les caractères d'un {@link Reader} ou d'un {@link ByteBuffer}
+ * et construit les noeuds de l'arbre au fil de la lecture à l'aide d'une pile: la lecture d'un arbre est linéaire en sa
+ * longueur et ne dépend pas de sa profondeur.</p>
+ * <p>Le format reconnu:</p>
+ * <ol>
+ * 		<li>un arbre se termine par ";" et peut s'étendre sur plusieurs lignes. Plusieurs arbres peuvent se suivre.</li>
+ * 		<li>les espaces blancs hors des noms entre apostrophes sont ignorés, comme dans {@link PhylogenyNeighborJoining#getNewick(String)}.</li>
+ * 		<li>un nom peut être écrit entre apostrophes ('nom de protéine'), une apostrophe y étant doublée ('l''arbre').</li>
+ * 		<li>la longueur d'une arête est donnée après ":" et devient la distance du noeud ({@link Node#getDist()}).</li>
+ * 		<li>les commentaires entre crochets sont ignorés, ainsi que les noms des noeuds internes.</li>
+ * </ol>
+ * Un noeud doit avoir un ou deux enfants, et une feuille doit avoir un nom. Sinon, une <code>IllegalArgumentException</code>
+ * est levée.
+ */
+public class NewickReader implements Closeable {
+
+	/* Marque de fin de la source, et marque d'absence de caractère remis dans la source. */
+	private static final int FIN = -1;
+	private static final int AUCUN = -2;
+
+	/* La source: un Reader lu par blocs dans tampon, ou un ByteBuffer lu octet par octet. */
+	private final Reader lecteur;
+	private final ByteBuffer octets;
+	private final char[] tampon;
+	private int position;
+	private int limite;
+
+	/* Un caractère lu puis remis dans la source, ou AUCUN. */
+	private int remis = AUCUN;
+
+	/* Nombre de caractères lus, pour situer les erreurs. */
+	private long lus;
+
+	/* Nombre de noeuds créés depuis le début de l'arbre en cours. */
+	private int noeuds;
+
+	/**
+	 * Prépare la lecture des arbres d'un <code>Reader</code>.
+	 *
+	 * @param lecteur
+	 * 		  la source des arbres
+	 */
+	public NewickReader(Reader lecteur) {
+		this.lecteur = lecteur;
+		this.octets = null;
+		this.tampon = new char[1 << 13];
+	}
+
+	/**
+	 * Prépare la lecture des arbres d'un <code>ByteBuffer</code> encodé en UTF-8, par exemple un fichier projeté en mémoire.
+	 * La lecture commence à la position courante du tampon.
+	 *
+	 * @param octets
+	 * 		  la source des arbres
+	 */
+	public NewickReader(ByteBuffer octets) {
+		this.lecteur = null;
+		this.octets = octets;
+		this.tampon = null;
+	}
+
+	/**
+	 * Lit un seul arbre dans une chaîne de Newick.
+	 *
+	 * @param newickTree
+	 * 		  une chaîne sous format valide Newick
+	 *
+	 * @return <code>BinTree</code> un arbre binaire enraciné qui représente la chaîne de Newick.
+	 *
+	 * @throws IllegalArgumentException si la chaîne ne contient pas exactement un arbre au format Newick valide
+	 */
+	public static BinTree lire(String newickTree) {
+		try (NewickReader lecteur = new NewickReader(new StringReader(newickTree))) {
+			BinTree tree = lecteur.lireArbre();
+			if (tree == null || lecteur.lireSignificatif() != FIN)
+				throw new IllegalArgumentException("L'arbre newick n'est pas au bon format");
+			return tree;
+		}
+		catch (IOException e) {
+			/* Un StringReader ne lève pas d'erreur d'entrée/sortie */
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	/**
+	 * Lit tous les arbres restants de la source.
+	 *
+	 * @return la liste des arbres lus, dans l'ordre de la source.
+	 *
+	 * @throws IOException si la source ne peut être lue.
+	 * @throws IllegalArgumentException si un arbre n'est pas au format Newick valide
+	 */
+	public ArrayList<BinTree> lireArbres() throws IOException {
+		ArrayList<BinTree> arbres = new ArrayList<BinTree>();
+		BinTree tree;
+		while ((tree = this.lireArbre()) != null)
+			arbres.add(tree);
+		return arbres;
+	}
+
+	/**
+	 * Lit le prochain arbre de la source.
+	 *
+	 * @return l'arbre lu, ou <code>null</code> s'il n'y a plus d'arbre dans la source.
+	 *
+	 * @throws IOException si la source ne peut être lue.
+	 * @throws IllegalArgumentException si l'arbre n'est pas au format Newick valide
+	 */
+	public BinTree lireArbre() throws IOException {
+		FlightEvents.ParseChunk evenement = new FlightEvents.ParseChunk();
+		evenement.begin();
+		long debut = this.lus;
+		this.noeuds = 0;
+		BinTree tree = this.analyserArbre();
+		if (tree != null && evenement.shouldCommit()) {
+			evenement.format = "nw";
+			evenement.debut = debut;
+			evenement.fin = this.lus;
+			evenement.elements = this.noeuds;
+			evenement.commit();
+		}
+		return tree;
+	}
+
+	/**
+	 * Analyse le prochain arbre de la source, comme {@link #lireArbre()}.
+	 */
+	private BinTree analyserArbre() throws IOException {
+		int c = this.lireSignificatif();
+		if (c == FIN)
+			return null;
+
+		/* Les noeuds internes dont la parenthèse n'est pas encore fermée */
+		ArrayDeque<Node> pile = new ArrayDeque<Node>();
+
+		/* Le dernier noeud terminé (feuille lue ou parenthèse fermée), auquel s'appliquent un nom ou une longueur d'arête */
+		Node dernier = null;
+
+		/* Vrai si le prochain élément doit être un noeud: au début, après "(" et après "," */
+		boolean noeudAttendu = true;
+
+		while (true) {
+			switch (c) {
+				case FIN:
+					throw this.erreur("fin de l'arbre \";\" manquante");
+
+				case '(': {
+					if (!noeudAttendu)
+						throw this.erreur("\"(\" inattendue");
+					Node noeud = new Node();
+					this.noeuds++;
+					if (!pile.isEmpty())
+						this.ajouterEnfant(pile.peek(), noeud);
+					pile.push(noeud);
+					dernier = null;
+					break;
+				}
+
+				case ',':
+					if (noeudAttendu || pile.isEmpty())
+						throw this.erreur("\",\" inattendue");
+					noeudAttendu = true;
+					dernier = null;
+					break;
+
+				case ')':
+					if (noeudAttendu || pile.isEmpty())
+						throw this.erreur("\")\" inattendue");
+					dernier = pile.pop();
+					noeudAttendu = false;
+					break;
+
+				case ':':
+					if (dernier == null)
+						throw this.erreur("longueur d'arête sans noeud");
+					dernier.addDist(this.lireLongueur());
+					break;
+
+				case ';':
+					if (noeudAttendu || !pile.isEmpty())
+						throw this.erreur("\";\" inattendu");
+					return new BinTree(dernier);
+
+				default: {
+					this.remis = c;
+					String nom = this.lireNom();
+					if (noeudAttendu) {
+						/* Une nouvelle feuille */
+						Node feuille = new Node(nom);
+						this.noeuds++;
+						if (!pile.isEmpty())
+							this.ajouterEnfant(pile.peek(), feuille);
+						dernier = feuille;
+						noeudAttendu = false;
+					}
+					else if (dernier == null || dernier.isLeave())
+						throw this.erreur("nom inattendu \"" + nom + "\"");
+					/* Sinon c'est le nom d'un noeud interne, qui est ignoré */
+				}
+			}
+			c = this.lireSignificatif();
+		}
+	}
+
+	@Override
+	public void close() throws IOException {
+		if (this.lecteur != null)
+			this.lecteur.close();
+	}
+
+	/**
+	 * Ajoute un enfant à un noeud interne, qui ne peut pas en avoir plus de deux.
+	 */
+	private void ajouterEnfant(Node parent, Node enfant) {
+		if (parent.getRightChild() != null)
+			throw this.erreur("un noeud a plus de deux enfants");
+		parent.addChild(enfant);
+	}
+
+	/**
+	 * Lit un nom, entre apostrophes ou non. Les espaces blancs d'un nom sans apostrophes sont ignorés.
+	 */
+	private String lireNom() throws IOException {
+		StringBuilder nom = new StringBuilder();
+		int c = this.lireCaractere();
+		if (c == '\'') {
+			while (true) {
+				c = this.lireCaractere();
+				if (c == FIN)
+					throw this.erreur("apostrophe fermante manquante");
+				if (c == '\'') {
+					/* Une apostrophe doublée représente une apostrophe du nom */
+					c = this.lireCaractere();
+					if (c != '\'') {
+						this.remis = c;
+						break;
+					}
+				}
+				nom.append((char) c);
+			}
+		}
+		else {
+			while (c != FIN && !estSpecial(c)) {
+				if (!Character.isWhitespace(c))
+					nom.append((char) c);
+				c = this.lireCaractere();
+			}
+			this.remis = c;
+		}
+		return this.decoder(nom);
+	}
+
+	/**
+	 * Lit la longueur d'une arête qui suit ":".
+	 */
+	private double lireLongueur() throws IOException {
+		StringBuilder nombre = new StringBuilder();
+		int c = this.lireSignificatif();
+		while (c != FIN && !estSpecial(c)) {
+			if (!Character.isWhitespace(c))
+				nombre.append((char) c);
+			c = this.lireCaractere();
+		}
+		this.remis = c;
+		try {
+			return Double.parseDouble(nombre.toString());
+		}
+		catch (NumberFormatException e) {
+			throw this.erreur("longueur d'arête invalide \"" + nombre + "\"");
+		}
+	}
+
+	/**
+	 * Les caractères lus dans un <code>ByteBuffer</code> sont des octets: un nom qui contient des caractères non ASCII est
+	 * décodé en UTF-8.
+	 */
+	private String decoder(StringBuilder nom) {
+		if (this.octets != null) {
+			for (int i = 0; i < nom.length(); i++)
+				if (nom.charAt(i) > 127)
+					return new String(nom.toString().getBytes(StandardCharsets.ISO_8859_1), StandardCharsets.UTF_8);
+		}
+		return nom.toString();
+	}
+
+	/**
+	 * @return <code>true</code> si le caractère termine un nom ou une longueur d'arête.
+	 */
+	private static boolean estSpecial(int c) {
+		return c == '(' || c == ')' || c == ',' || c == ':' || c == ';' || c == '[' || c == '\'';
+	}
+
+	/**
+	 * Lit le prochain caractère qui n'est ni un espace blanc ni dans un commentaire.
+	 */
+	private int lireSignificatif() throws IOException {
+		while (true) {
+			int c = this.lireCaractere();
+			if (c == '[') {
+				do {
+					c = this.lireCaractere();
+				} while (c != ']' && c != FIN);
+				if (c == FIN)
+					throw this.erreur("crochet fermant manquant");
+			}
+			else if (c == FIN || !Character.isWhitespace(c))
+				return c;
+		}
+	}
+
+	/**
+	 * Lit le prochain caractère de la source, ou {@link #FIN}.
+	 */
+	private int lireCaractere() throws IOException {
+		if (this.remis != AUCUN) {
+			int c = this.remis;
+			this.remis = AUCUN;
+			return c;
+		}
+		if (this.octets != null) {
+			if (!this.octets.hasRemaining())
+				return FIN;
+			this.lus++;
+			return this.octets.get() & 0xFF;
+		}
+		if (this.position == this.limite) {
+			this.limite = this.lecteur.read(this.tampon, 0, this.tampon.length);
+			this.position = 0;
+			if (this.limite <= 0) {
+				this.limite = 0;
+				return FIN;
+			}
+		}
+		this.lus++;
+		return this.tampon[this.position++];
+	}
+
+	private IllegalArgumentException erreur(String raison) {
+		return new IllegalArgumentException("L'arbre newick n'est pas au bon format (" + raison + ", caractère " + this.lus + ").");
+	}
+}
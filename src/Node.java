@@ -8,6 +8,8 @@ import java.util.*;
  * 		<li><code>dist</code> représente la longueur de l'arête parente du noeud.</li>
  * 		<li><code>left</code> représente l'enfant gauche d'un noeud</li>
  * 		<li><code>right</code> représente l'enfant droit d'un noeud</li>
+ * 		<li><code>support</code> est la proportion des réplicats bootstrap qui contiennent la bipartition de l'arête parente du
+ * 			noeud (voir {@link Bootstrap}), -1 si elle n'a pas été calculée.</li>
  * </ol>
  * @author Paul Chaffanet - CHAP23049307
  */
@@ -18,6 +20,7 @@ public class Node {
 	private double dist;
 	private Node left;
 	private Node right;
+	private double support = -1;
 
 	/* Constructeurs */
 	public Node() {
@@ -79,6 +82,14 @@ public class Node {
 		return this.right;
 	}
 	
+	public double getSupport() {
+		return this.support;
+	}
+	
+	public void setSupport(double support) {
+		this.support = support;
+	}
+	
 	/**
 	 * Méthode qui permet de vérifie si un noeud est une feuille ou non.
 	 * 
@@ -1,5 +1,10 @@
 import java.io.*;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
 import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * 
@@ -14,17 +19,21 @@ import java.util.*;
  *		<li>Élaborer une structure de donnée permettant de représenter un arbre: {@link BinTree#BinTree()}. Votre structure
  *			de donnée doit permettre d'effectuer une parcours en profondeur post-ordre: {@link BinTree#postOrder()} {@link Node#postOrder()}.
  *          Il faut pouvoir stocker de l'information aux noeuds: {@link Node}.</li>
- *		<li>Convertir une chaîne newick en une instance de votre structure d'arbre: {@link #construireArbres(ArrayList, HashMap)}.</li>
+ *		<li>Convertir une chaîne newick en une instance de votre structure d'arbre: {@link #construireArbres(ArrayList, HashMap)}, ou
+ *			lire directement tous les arbres d'un fichier en un seul passage: {@link #getArbres(String)} {@link NewickReader}.</li>
  *		<li>Être capable de calculer la distance RF entre deux instances de votre structure d'arbre: {@link BinTree#rf(BinTree)}}.</li>
  *		<li>Filtre les gaps des séquences: {@link #removeGaps(HashMap)}. Assigner les séquences aux feuilles correspondantes : 
  *			{@link #construireArbres(ArrayList, HashMap)} {@link BinTree#setSeqToLeaves(HashMap)}.</li>
  *	</ol>
  * Détermination de l'arbre NJ:
  * 	<ol>
- *		<li>Calculer la matrice de distance entre les séquences: {@link #matriceDistance(BinTree, double[][], HashMap)}</li>
- *		<li>Implémenter l'algorithme <i>Neighbor Joining</i>: {@link #neighborJoining(double[][], HashMap)}</li>
+ *		<li>Calculer la matrice de distance entre les séquences: {@link #matriceDistance(BinTree, double[][], HashMap)}, ou sa version
+ *			par tuiles parallèles: {@link DistanceMatrixBuilder}</li>
+ *		<li>Implémenter l'algorithme <i>Neighbor Joining</i>: {@link #neighborJoining(double[][], HashMap)}, ou sa version en place
+ *			en O(n^3): {@link NJEngine#neighborJoining(double[][], HashMap)}</li>
  *		<li>Calculer la distance RF entre l'arbre NJ et chacun des arbres entrés. Retourner l'arbre candidat ayant la plus petite distance RF avec l'arbre
- *			NJ: {@link #main(String[])}</li>
+ *			NJ: {@link #comparer(BinTree, ArrayList, int, PrintStream)}, ou en lisant les arbres candidats un par un:
+ *			{@link #comparerFlux(BinTree, BinTree, NewickReader, String, int, PrintStream)}</li>
  *	</ol>
  * Enracinement de l'arbre NJ:
  * 	<ol>
@@ -35,6 +44,9 @@ import java.util.*;
  */
 public class PhylogenyNeighborJoining {
 	
+	/* Les options facultatives reconnues après les trois fichiers, sous la forme "--nom=valeur". */
+	private static final String[] OPTIONS = {"threads", "recherche", "progression", "simd", "flux", "meilleurs", "rf-matrice", "rapport", "cache", "bootstrap", "graine"};
+	
 /// Traitement des fichiers passés en arguments ///////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
 	
 	/**
@@ -110,12 +122,13 @@ public class PhylogenyNeighborJoining {
 	}
 	
 	/**
-	 * <p>Cette méthode permet de vérifier que le nombre d'arguments entrés lors de l'exécution du programme soit exactement de trois:
+	 * <p>Cette méthode permet de vérifier que les arguments entrés lors de l'exécution du programme commencent par exactement trois fichiers:
 	 * 	<ol>
   	 *		<li>Le premier argument passé en paramètre doit être le fichier "arbres.newick" (ou un fichier "*.newick")</li>
   	 *		<li>Le deuxième argument passé en paramètre doit être le fichier "proteines.fa" (ou un fichier "*.fa")</li>
   	 *		<li>Le troisième argument passé en paramètre doit être le fichier "BLOSUM62.txt" (ou un fichier "*.txt")</li>
 	 *	</ol>
+	 * Ces trois fichiers peuvent être suivis d'options reconnues par {@link #getOptions(String[])}.
 	 * </p>
 	 * 
 	 * @param args
@@ -125,14 +138,94 @@ public class PhylogenyNeighborJoining {
 	 * 		   <code>false</code> sinon.
 	 */
 	public static boolean areValidArgs(String[] args) {
-		/* On vérifie que le nombre d'arguments est de 3*/
-		/* On vérifie la validité des extensions fichiers.*/
- 		if (args.length == 3 && isValidNewick(args[0]) && isValidFa(args[1]) && isValidTxt(args[2]))
+		/* On vérifie qu'il y a au moins 3 arguments*/
+		/* On vérifie la validité des extensions fichiers, puis des options.*/
+ 		if (args.length >= 3 && isValidNewick(args[0]) && isValidFa(args[1]) && isValidTxt(args[2]) && getOptions(args) != null)
 			return true;
 		else
 			return false;
 	}
-		
+	
+	/**
+	 * Cette méthode lit les options facultatives situées après les trois fichiers. Une option s'écrit "--nom=valeur", ou "--nom"
+	 * si elle n'a pas de valeur. Les options reconnues sont:
+	 * 	<ol>
+	 *		<li>"--threads=N": nombre de threads utilisés pour la lecture du fichier "*.fa" ({@link FastaReader}), la matrice des
+	 *			distances ({@link DistanceMatrixBuilder}) et par l'algorithme NJ ({@link NJEngine}). Par défaut 1.</li>
+	 *		<li>"--recherche=complete|bornee": stratégie de recherche de la paire minimale de l'algorithme NJ ({@link NJEngine.Recherche}).
+	 *			Par défaut complete.</li>
+	 *		<li>"--progression": affiche sur la sortie d'erreur (dans la réponse de la tâche pour {@link BatchServer}) l'avancement
+	 *			du calcul de la matrice des distances.</li>
+	 *		<li>"--simd": calcule les distances avec le noyau SIMD <code>VectorKernel</code>, s'il a été compilé et si le module
+	 *			<code>jdk.incubator.vector</code> est disponible.</li>
+	 *		<li>"--flux": lit les arbres candidats un par un pendant leur comparaison avec l'arbre NJ, au lieu de les lire tous au
+	 *			début ({@link #comparerFlux(BinTree, BinTree, NewickReader, String, int, PrintStream)}).</li>
+	 *		<li>"--meilleurs=K": n'affiche que les K arbres candidats les plus proches de l'arbre NJ ({@link CandidateSearch}).</li>
+	 *		<li>"--rf-matrice=fichier": écrit dans le fichier la matrice des distances RF entre tous les arbres candidats
+	 *			({@link #ecrireMatriceRF(String, String, ForkJoinPool, PrintStream)}).</li>
+	 *		<li>"--rapport" ou "--rapport=fichier": écrit à la fin de l'exécution, sur la sortie d'erreur (dans la réponse de la
+	 *			tâche pour {@link BatchServer}) ou dans le fichier, le rapport JSON des mesures de chaque étape
+	 *			({@link Instrumentation}).</li>
+	 *		<li>"--cache=repertoire": lit la matrice des distances dans le répertoire du cache si le fichier "*.fa" et la matrice
+	 *			BLOSUM n'ont pas changé, et l'y enregistre sinon ({@link DistanceCache}). Si seules quelques protéines ont été
+	 *			ajoutées, retirées ou modifiées, seules leurs distances sont calculées.</li>
+	 *		<li>"--bootstrap=N": calcule le support de chaque arête de l'arbre NJ sur N réplicats bootstrap ({@link Bootstrap}),
+	 *			écrit dans la chaîne de Newick de l'arbre enraciné.</li>
+	 *		<li>"--graine=S": graine du tirage des colonnes des réplicats bootstrap. Par défaut 1.</li>
+	 *	</ol>
+	 * 
+	 * @param args
+	 * 		  Un tableau contenant les arguments entrés pour l'exécution du programme.
+	 * 
+	 * @return une <code>HashMap</code> qui à un nom d'option associe sa valeur (chaîne vide si l'option n'a pas de valeur),
+	 * 		   <code>null</code> si un des arguments n'est pas une option reconnue.
+	 */
+	public static HashMap<String, String> getOptions(String[] args) {
+		HashMap<String, String> options = new HashMap<String, String>();
+		for (int i = 3; i < args.length; i++) {
+			if (!args[i].startsWith("--"))
+				return null;
+			
+			/* On sépare le nom de l'option de sa valeur au premier "=" */
+			int egal = args[i].indexOf('=');
+			String nom = egal < 0 ? args[i].substring(2) : args[i].substring(2, egal);
+			String valeur = egal < 0 ? "" : args[i].substring(egal + 1);
+			
+			if (!Arrays.asList(OPTIONS).contains(nom))
+				return null;
+			options.put(nom, valeur);
+		}
+		return options;
+	}
+	
+	/**
+	 * Obtenir la valeur entière strictement positive d'une option.
+	 * 
+	 * @param options
+	 * 		  les options lues par {@link #getOptions(String[])}
+	 * @param nom
+	 * 		  le nom de l'option
+	 * @param defaut
+	 * 		  la valeur à retourner si l'option est absente
+	 * 
+	 * @return la valeur de l'option.
+	 * 
+	 * @throws PipelineException si la valeur n'est pas un entier strictement positif.
+	 */
+	public static int getOptionEntier(HashMap<String, String> options, String nom, int defaut) {
+		if (!options.containsKey(nom))
+			return defaut;
+		try {
+			int valeur = Integer.parseInt(options.get(nom));
+			if (valeur > 0)
+				return valeur;
+		}
+		catch (NumberFormatException e) {
+			/* Traité avec les valeurs négatives ou nulles ci-dessous */
+		}
+		throw new PipelineException("L'option \"--" + nom + "\" doit être un entier strictement positif.");
+	}
+	
 	/**
 	 * <p>Cette méthode permet d'obtenir un <code>BufferedReader</code> d'un fichier afin de pouvoir lire ligne après ligne un fichier.</p>
 	 * 
@@ -140,22 +233,20 @@ public class PhylogenyNeighborJoining {
 	 * 		  un chemin vers un fichier à lire.
 	 * 
 	 * @return Retourne un <code>BufferedReader</code> qui nous permet de pouvoir lire les lignes d'un fichier.	   
+	 * 
+	 * @throws PipelineException si le fichier ne peut être ouvert.
 	 */
 	public static BufferedReader getBufReader(String file) {
-		BufferedReader buffer = null;
-	
 		/* Instanciation d'un BufferedReader afin de pouvoir lire les lignes du fichier spécifié.*/
 		try {
-			buffer = new BufferedReader(new FileReader(file));
+			return new BufferedReader(new FileReader(file));
 		}
 		
 		/* Si le fichier spécifié n'existe pas, si le fichier est un répertoire, ou pour tout autre raison pour
 		 * laquelle un fichier ne peut être ouvert pour être lu. */
 		catch (FileNotFoundException e) {
-			e.printStackTrace();
-			System.out.println("Le fichier ne peut être lu.");
+			throw new PipelineException("Le fichier " + file + " ne peut être lu.", e);
 		}
-		return buffer;
 	}
 	
 	/**
@@ -168,39 +259,20 @@ public class PhylogenyNeighborJoining {
 	 */
 	public static HashMap<String, String> removeGaps(HashMap<String, String> proteins) {
 	    
-		ArrayList<Integer> positionsGap = new ArrayList<Integer>();
-	    String seq;
+	    /* Dans un premier passage, je note dans un masque de bits toutes les colonnes qui contiennent un gap dans au moins une
+	     * séquence.*/
+		BitSet positionsGap = GapFilter.colonnesGap(proteins.values());
 	    
-	    /* Dans un premier passage de boucle, je vais noter toutes les positions des gaps dans toutes les séquences
-	     * aminés.*/
-	    for (String key : proteins.keySet()) {
-	    	seq = proteins.get(key);
-	    	for(int i = 0; i < seq.length(); i++) {
-	    		if (seq.substring(i, i + 1).equals("-")) {
-	    			if (!positionsGap.contains(i)) {
-	    				positionsGap.add(i);
-	    			}
-	    		}
-	    	}
-	    }
-	    
-	    /* Dans un deuxième passage, je vais cette fois retirer les gaps aux positions relevées précedemment.*/
-	    for (String key : proteins.keySet()) {
-	    	seq = proteins.get(key);
-	    	int j = 0;
-	    	int longueur = seq.length();
-	    	
-	    	/* Je parcours toute ma sequence et je retire les gaps. Comme je retire des caractères, les positions changent au fur
-	    	 * et à mesure. J'utilise donc une variable j qui me permet de calculer par rapport à la position initiale la position
-	    	 * réelle du gap que je dois supprimer */
-	    	for(int i = 0; i < longueur; i++) {
-	    		if (positionsGap.contains(i)) {
-	    			seq = seq.substring(0, i + j).concat(seq.substring(i + 1 + j));
-	    			j--;
-	    		}
+	    /* Dans un deuxième passage, je recopie chaque séquence une seule fois en sautant les colonnes relevées précédemment.*/
+	    for (Map.Entry<String, String> entree : proteins.entrySet()) {
+	    	String seq = entree.getValue();
+	    	StringBuilder filtree = new StringBuilder(seq.length());
+	    	for (int i = 0; i < seq.length(); i++) {
+	    		if (!positionsGap.get(i))
+	    			filtree.append(seq.charAt(i));
 	    	}
 	    	/* J'insère alors la nouvelle séquence dépourvue qui est maintenant filtrée des gaps.*/
-	    	proteins.put(key, seq);
+	    	entree.setValue(filtree.toString());
 	    }
 	    return proteins;
 	}
@@ -219,10 +291,9 @@ public class PhylogenyNeighborJoining {
 	public static ArrayList<String> getNewick(String file) {
 		
 		/* Si le fichier n'est pas un fichier ".nw", alors on ne peut pas utiliser cette méthode pour obtenir une liste d'arbres
-		 * de Newick. On quitte le programme qui ne peut donc s'exécuter correctement.*/
+		 * de Newick. On signale l'erreur par une PipelineException.*/
 		if (!isValidNewick(file)) {
-			System.out.println("Le fichier n'est pas au format \".nw\". Le programme ne peut pas s'exécuter normalement.");
-			System.exit(1);
+			throw new PipelineException("Le fichier n'est pas au format \".nw\". Le programme ne peut pas s'exécuter normalement.");
 		}
 		
 		/* Instanciation d'un BufferedReader afin de pouvoir lire les lignes de mon fichier.*/
@@ -242,12 +313,10 @@ public class PhylogenyNeighborJoining {
 			}	
 		}
 		
-		/* Si une erreur entrée/sortie se produit lors de la lecture ligne par ligne du fichier, on affiche un message pour signaler
-		 * l'erreur et on quitte le programme. */
+		/* Si une erreur entrée/sortie se produit lors de la lecture ligne par ligne du fichier, on signale
+		 * l'erreur par une PipelineException. */
 		catch (IOException e) {
-			e.printStackTrace();
-			System.out.println("Un problème est survenu lors de la lecture du fichier " + file + ".");
-			System.exit(1);
+			throw new PipelineException("Un problème est survenu lors de la lecture du fichier " + file + ".", e);
 		}
 		finally {
 			if (buffer != null) {
@@ -255,12 +324,10 @@ public class PhylogenyNeighborJoining {
 					buffer.close();
 				}
 				
-				/* Si une erreur entrée/sortie se produit lors de la fermeture du BufferedReader, on affiche un message pour signaler
-				 * l'erreur et on quitte le programme. */
+				/* Si une erreur entrée/sortie se produit lors de la fermeture du BufferedReader, on signale
+				 * l'erreur par une PipelineException. */
 				catch (IOException e) {
-					e.printStackTrace();
-					System.out.println("Une erreur est survenue lors de la fermeture du buffer.");
-					System.exit(1);
+					throw new PipelineException("Une erreur est survenue lors de la fermeture du buffer.", e);
 				}
 			}
 		}
@@ -272,6 +339,93 @@ public class PhylogenyNeighborJoining {
 		return arbres;
 	}
 	
+	/**
+	 * Cette méthode lit tous les arbres d'un fichier "*.nw" en un seul passage avec un {@link NewickReader}. Le fichier est
+	 * projeté en mémoire. Contrairement à {@link #getNewick(String)}, un arbre peut s'étendre sur plusieurs lignes et les arbres
+	 * lus sont directement des arbres binaires enracinés.
+	 * 
+	 * @param file
+	 * 		  un chemin vers un fichier au format "*.nw" à lire
+	 * 
+	 * @return Retourne une <code>ArrayList</code> des arbres du fichier, dans leur ordre d'apparition.
+	 */
+	public static ArrayList<BinTree> getArbres(String file) {
+		
+		/* Si le fichier n'est pas un fichier ".nw", on signale l'erreur par une PipelineException.*/
+		if (!isValidNewick(file)) {
+			throw new PipelineException("Le fichier n'est pas au format \".nw\". Le programme ne peut pas s'exécuter normalement.");
+		}
+		
+		ArrayList<BinTree> arbres = null;
+		try (FileChannel canal = FileChannel.open(Paths.get(file), StandardOpenOption.READ)) {
+			arbres = new NewickReader(canal.map(FileChannel.MapMode.READ_ONLY, 0, canal.size())).lireArbres();
+		}
+		
+		/* Si un arbre n'est pas au format Newick, on signale l'erreur par une PipelineException. */
+		catch (IllegalArgumentException e) {
+			throw new PipelineException(e.getMessage());
+		}
+		
+		/* Si une erreur entrée/sortie se produit lors de la lecture du fichier, on signale
+		 * l'erreur par une PipelineException. */
+		catch (IOException e) {
+			throw new PipelineException("Un problème est survenu lors de la lecture du fichier " + file + ".", e);
+		}
+		return arbres;
+	}
+	
+	/**
+	 * Ouvre un fichier "*.nw" pour en lire les arbres un par un avec un {@link NewickReader}. Contrairement à
+	 * {@link #getArbres(String)}, le fichier n'est pas projeté en mémoire: sa taille n'est pas limitée.
+	 * 
+	 * @param file
+	 * 		  un chemin vers un fichier au format "*.nw" à lire
+	 * 
+	 * @return le lecteur des arbres du fichier.
+	 */
+	public static NewickReader ouvrirArbres(String file) {
+		
+		/* Si le fichier n'est pas un fichier ".nw", on signale l'erreur par une PipelineException.*/
+		if (!isValidNewick(file)) {
+			throw new PipelineException("Le fichier n'est pas au format \".nw\". Le programme ne peut pas s'exécuter normalement.");
+		}
+		
+		NewickReader lecteur = null;
+		try {
+			lecteur = new NewickReader(new InputStreamReader(Files.newInputStream(Paths.get(file)), StandardCharsets.UTF_8));
+		}
+		catch (IOException e) {
+			throw new PipelineException("Un problème est survenu lors de la lecture du fichier " + file + ".", e);
+		}
+		return lecteur;
+	}
+	
+	/**
+	 * Lit le prochain arbre d'un fichier ouvert par {@link #ouvrirArbres(String)}.
+	 * 
+	 * @param lecteur
+	 * 		  le lecteur des arbres du fichier
+	 * @param file
+	 * 		  le chemin du fichier, pour les messages d'erreur
+	 * 
+	 * @return l'arbre lu, ou <code>null</code> s'il n'y a plus d'arbre dans le fichier.
+	 */
+	private static BinTree lireArbre(NewickReader lecteur, String file) {
+		BinTree arbre = null;
+		try {
+			arbre = lecteur.lireArbre();
+		}
+		
+		/* Si un arbre n'est pas au format Newick, on signale l'erreur par une PipelineException. */
+		catch (IllegalArgumentException e) {
+			throw new PipelineException(e.getMessage());
+		}
+		catch (IOException e) {
+			throw new PipelineException("Un problème est survenu lors de la lecture du fichier " + file + ".", e);
+		}
+		return arbre;
+	}
+	
 	/**
 	 * Cette méthode lit les lignes d'un fichier "*.fa". À chaque ligne lue, on supprime tous les espaces blancs.
 	 * La méthode retourne une <code>HashMap</code> contenant toutes les protéines lues dans le fichier et leurs séquences
@@ -286,10 +440,9 @@ public class PhylogenyNeighborJoining {
 	public static HashMap<String, String> getProteins(HashMap<String, Integer> tableIndex, String file) {
 		
 		/* Si le fichier n'est pas un fichier ".fa", alors on ne peut pas utiliser cette méthode pour obtenir
-		 * la liste des protéines et leurs séquences associées. On quitte le programme qui ne peut donc s'exécuter correctement.*/
+		 * la liste des protéines et leurs séquences associées. On signale l'erreur par une PipelineException.*/
 		if (!isValidFa(file)) {
-			System.out.println("Le fichier n'est pas au format \".fa\". Le programme ne peut pas s'exécuter normalement.");
-			System.exit(1);
+			throw new PipelineException("Le fichier n'est pas au format \".fa\". Le programme ne peut pas s'exécuter normalement.");
 		}
 		
 		/* Instanciation d'un BufferedReader afin de pouvoir lire les lignes de mon fichier. */
@@ -329,18 +482,15 @@ public class PhylogenyNeighborJoining {
 				 * procéder à l'extraction d'une séquence génétique étant donné qu'aucune protéine n'a été signalée avant
 				 * dans le fichier. */
 				else {
-					System.out.println("Le fichier n'est pas au format \".fa\". Le programme ne peut pas s'exécuter normalement.");
-					System.exit(1);
+					throw new PipelineException("Le fichier n'est pas au format \".fa\". Le programme ne peut pas s'exécuter normalement.");
 				}
 			}	
 		}
 		
-		/* Si une erreur entrée/sortie se produit lors de la lecture ligne par ligne du fichier, on affiche un message pour signaler
-		 * l'erreur et on quitte le programme. */
+		/* Si une erreur entrée/sortie se produit lors de la lecture ligne par ligne du fichier, on signale
+		 * l'erreur par une PipelineException. */
 		catch (IOException e) {
-			e.printStackTrace();
-			System.out.println("Un problème est survenu lors de la lecture du fichier " + file + ".");
-			System.exit(1);
+			throw new PipelineException("Un problème est survenu lors de la lecture du fichier " + file + ".", e);
 		}
 		finally {
 			if (buffer != null) {
@@ -376,10 +526,9 @@ public class PhylogenyNeighborJoining {
 	public static Object[] getBlosum(String file) {	
 		
 		/* Si le fichier n'est pas un fichier ".txt", alors on ne peut pas utiliser cette méthode pour obtenir une matrice
-		 * de mutation à partir du fichier. On quitte le programme qui ne peut donc s'exécuter correctement.*/
+		 * de mutation à partir du fichier. On signale l'erreur par une PipelineException.*/
 		if (!isValidTxt(file)) {
-			System.out.println("Le fichier n'est pas au format \".txt\". Le programme ne peut pas s'exécuter normalement.");
-			System.exit(1);
+			throw new PipelineException("Le fichier n'est pas au format \".txt\". Le programme ne peut pas s'exécuter normalement.");
 		}
 		
 		/* On instancie une HashMap qui à un acide aminé associe un index dans la matrice des mutations.
@@ -422,13 +571,12 @@ public class PhylogenyNeighborJoining {
 						if (!(charac[i].equals("") || charac[i].equals("*"))) {
 							/* On vérifie que l'acide aminé a une longueur 1 et est tel que A <= acide aminé <=Z. Si c'est le cas, on insère l'acide
 							 * aminé et la colonne associé à cet acide aminé dans la matrice BLOSUM dans table des index de la matrice. 
-							 * Sinon on quitte le programme en signalant l'erreur.*/
+							 * Sinon on signale l'erreur par une PipelineException.*/
 							if (charac[i].length() == 1 && charac[i].charAt(0) >= 65 && charac[i].charAt(0) <= 90) {
 								tableIndex.put(charac[i], j++);
 							}
 							else {
-								System.out.println("La matrice BLOSUM n'est pas au bon format. Les acides aminées doit respecter l'expression régulière \"[A-Z]{1}\"");
-								System.exit(1);
+								throw new PipelineException("La matrice BLOSUM n'est pas au bon format. Les acides aminées doit respecter l'expression régulière \"[A-Z]{1}\"");
 							}
 						}
 					}
@@ -473,16 +621,14 @@ public class PhylogenyNeighborJoining {
 								matriceBlosum[lineNumber - 2][++j - 1] = Double.parseDouble(charac[i]);
 							}
 							catch (NumberFormatException e) {
-								System.out.println("La matrice BLOSUM n'est pas au bon format. Le programme ne peut s'exécuter normalement.");
-								System.exit(1);
+								throw new PipelineException("La matrice BLOSUM n'est pas au bon format. Le programme ne peut s'exécuter normalement.");
 							}
 						}
 						else if (j >= tableIndex.size()) {
 							continue;
 						}
 						else {
-							System.out.println("La matrice BLOSUM n'est pas au bon format. Le programme ne peut s'exécuter normalement.");
-							System.exit(1);
+							throw new PipelineException("La matrice BLOSUM n'est pas au bon format. Le programme ne peut s'exécuter normalement.");
 						}
 					}
 				}
@@ -494,12 +640,10 @@ public class PhylogenyNeighborJoining {
 			}	
 		}
 		
-		/* Si une erreur entrée/sortie se produit lors de la lecture ligne par ligne du fichier, on affiche un message pour signaler
-		 * l'erreur et on quitte le programme. */
+		/* Si une erreur entrée/sortie se produit lors de la lecture ligne par ligne du fichier, on signale
+		 * l'erreur par une PipelineException. */
 		catch (IOException e) {
-			e.printStackTrace();
-			System.out.println("Un problème est survenu lors de la lecture du fichier " + file + ".");
-			System.exit(1);
+			throw new PipelineException("Un problème est survenu lors de la lecture du fichier " + file + ".", e);
 		}
 		finally {
 			if (buffer != null) {
@@ -591,18 +735,22 @@ public class PhylogenyNeighborJoining {
 	 * @return Un tableau d'objets de 2 éléments. En première position, il y aura une <code>HashMap</code> qui sera la table d'index des noeuds pour la matrice
 	 * des distances. En deuxième position se trouve la matrice des distances pour les séquences.
 	 * 
+	 * Les séquences sont encodées une seule fois (voir {@link EncodedAlignment}): les distances sont identiques à celles de
+	 * {@link #distance(double[][], HashMap, String, String)}, sans découpage des séquences en sous-chaînes.
+	 * 
 	 * @see BinTree#getLeavesNode();
-	 * @see #distance(double[][], HashMap, String, String)
+	 * @see EncodedAlignment#distance(int, int)
 	 */
 	public static Object[] matriceDistance(BinTree tree, double[][] matriceMutations, HashMap<String, Integer> tableIndex) {
 		ArrayList<Node> leaves = tree.getLeavesNode();
+		EncodedAlignment alignement = EncodedAlignment.fromLeaves(leaves, matriceMutations, tableIndex);
 		
 		double[][] matriceDistance = new double[leaves.size()][leaves.size()];
 		HashMap<Integer, Node> tableNoeud = new HashMap<Integer, Node>(leaves.size());
 		
 		for (int i = 0; i < matriceDistance.length; i++) {
 			for (int j = 0; j < matriceDistance[i].length; j++)
-				matriceDistance[i][j] = distance(matriceMutations, tableIndex, leaves.get(i).getSeq(), leaves.get(j).getSeq());
+				matriceDistance[i][j] = alignement.distance(i, j);
 			tableNoeud.put(i, leaves.get(i));
 		}
 		
@@ -875,70 +1023,464 @@ public class PhylogenyNeighborJoining {
 	
 ////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
 	
-	@SuppressWarnings("unchecked")
+	/**
+	 * Exécute le programme avec les arguments de la ligne de commande (voir {@link #executer(String[], PrintStream, PrintStream, Object[])}).
+	 * En cas d'erreur, le message est affiché et le programme s'arrête.
+	 */
 	public static void main(String[] args) {
-		
+		try {
+			executer(args, System.out, System.err, null);
+		}
+		catch (PipelineException e) {
+			if (e.getCause() != null)
+				e.getCause().printStackTrace();
+			System.out.println(e.getMessage());
+			System.exit(1);
+		}
+	}
+	
+	/**
+	 * Exécute le programme pour un jeu de fichiers: calcul de l'arbre NJ, comparaison avec les arbres candidats et
+	 * enracinement par mid-point. Les erreurs ne quittent pas le programme: plusieurs exécutions peuvent se suivre ou se
+	 * dérouler en même temps dans la même machine virtuelle ({@link BatchServer}).
+	 * 
+	 * @param args
+	 * 		  les fichiers "*.nw", "*.fa" et "*.txt", suivis des options (voir {@link #getOptions(String[])})
+	 * @param affichage
+	 * 		  la destination des résultats
+	 * @param suivi
+	 * 		  la destination de l'avancement ("--progression") et du rapport ("--rapport" sans fichier): la sortie d'erreur en
+	 * 		  ligne de commande. {@link BatchServer} y passe l'affichage de la tâche, car la sortie d'erreur est commune à toutes
+	 * 		  les tâches.
+	 * @param blosum
+	 * 		  le résultat de {@link #getBlosum(String)} pour le fichier "*.txt" s'il a déjà été lu, <code>null</code> sinon
+	 * 
+	 * @throws PipelineException si les arguments sont invalides, si un fichier est mal formé ou ne peut être lu ou écrit.
+	 */
+	public static void executer(String[] args, PrintStream affichage, PrintStream suivi, Object[] blosum) {
 		if (!areValidArgs(args)) {
-			System.out.println("Les arguments entrés ne sont pas au bon format.\n\n"
+			throw new PipelineException("Les arguments entrés ne sont pas au bon format.\n\n"
 					+ "Le premier argument passé en paramètre doit être le fichier \"arbres.nw\" (ou un fichier \"*.nw\")\n"
 					+ "Le deuxième argument passé en paramètre doit être le fichier \"proteines.fa\" (ou un fichier \"*.fa\")\n"
-					+ "Le troisième argument passé en paramètre doit être le fichier \"BLOSUM62.txt\" (ou un fichier \"*.txt\")\n");
-			System.exit(1);
+					+ "Le troisième argument passé en paramètre doit être le fichier \"BLOSUM62.txt\" (ou un fichier \"*.txt\")\n\n"
+					+ "Options facultatives:\n"
+					+ "--threads=N                   nombre de threads utilisés pour la lecture, les distances et NJ (1 par défaut)\n"
+					+ "--recherche=complete|bornee   recherche complète ou bornée (RapidNJ) de la paire minimale NJ\n"
+					+ "--progression                 affiche l'avancement du calcul de la matrice des distances\n"
+					+ "--simd                        calcule les distances avec l'API Vector (--add-modules jdk.incubator.vector)\n"
+					+ "--flux                        lit et compare les arbres candidats un par un, en mémoire constante\n"
+					+ "--meilleurs=K                 n'affiche que les K arbres candidats les plus proches de l'arbre NJ\n"
+					+ "--rf-matrice=fichier          écrit la matrice des distances RF entre tous les arbres candidats\n"
+					+ "--rapport[=fichier]           écrit le temps, le CPU et la mémoire de chaque étape en JSON (sortie d'erreur par défaut)\n"
+					+ "--cache=repertoire            réutilise la matrice des distances si les fichiers \".fa\" et \".txt\" n'ont pas changé\n"
+					+ "--bootstrap=N                 calcule le support des arêtes de l'arbre NJ sur N réplicats bootstrap\n"
+					+ "--graine=S                    graine du tirage des colonnes des réplicats bootstrap (1 par défaut)\n");
+		}
+		HashMap<String, String> options = getOptions(args);
+		
+		/* Le pool est arrêté même si l'exécution échoue*/
+		int threads = getOptionEntier(options, "threads", 1);
+		ForkJoinPool pool = threads > 1 ? new ForkJoinPool(threads) : null;
+		try {
+			executer(args, options, affichage, suivi, blosum, pool);
+		}
+		finally {
+			if (pool != null)
+				pool.shutdown();
+		}
+	}
+	
+	/**
+	 * Les étapes du programme, une fois les arguments validés.
+	 * 
+	 * @see #executer(String[], PrintStream, PrintStream, Object[])
+	 */
+	@SuppressWarnings("unchecked")
+	private static void executer(String[] args, HashMap<String, String> options, PrintStream affichage, PrintStream suivi,
+			Object[] blosum, ForkJoinPool pool) {
+		
+		/* Choix de la recherche de la paire minimale et du nombre de threads pour la matrice des distances et l'algorithme NJ*/
+		NJEngine.Recherche recherche = NJEngine.Recherche.COMPLETE;
+		if (options.containsKey("recherche")) {
+			if (options.get("recherche").equals("bornee"))
+				recherche = NJEngine.Recherche.BORNEE;
+			else if (!options.get("recherche").equals("complete")) {
+				throw new PipelineException("L'option \"--recherche\" doit valoir \"complete\" ou \"bornee\".");
+			}
 		}
+		int meilleurs = options.containsKey("meilleurs") ? getOptionEntier(options, "meilleurs", 1) : 0;
+		int nbReplicats = options.containsKey("bootstrap") ? getOptionEntier(options, "bootstrap", 1) : 0;
+		int graine = getOptionEntier(options, "graine", 1);
 		
-		/* Traitement du fichier "arbres.newick"*/
-		ArrayList<String> arbresNewick = getNewick(args[0]);
+		/* Mesure de chaque étape, seulement si un rapport est demandé*/
+		Instrumentation mesures = new Instrumentation(options.containsKey("rapport"));
+		
+		/* Traitement du fichier "arbres.newick". On obtient directement les arbres binaires enracinés du fichier.
+		 * En mode flux, seul le premier arbre est lu maintenant: les autres sont lus un par un lors de la comparaison avec l'arbre NJ.*/
+		ArrayList<BinTree> arbresBinEnracines = null;
+		NewickReader lecteurArbres = null;
+		BinTree premierArbre;
+		mesures.debut("arbres");
+		if (options.containsKey("flux")) {
+			lecteurArbres = ouvrirArbres(args[0]);
+			premierArbre = lireArbre(lecteurArbres, args[0]);
+			if (premierArbre == null) {
+				throw new PipelineException("Le fichier " + args[0] + " ne contient aucun arbre.");
+			}
+		}
+		else {
+			arbresBinEnracines = getArbres(args[0]);
+			if (arbresBinEnracines.isEmpty()) {
+				throw new PipelineException("Le fichier " + args[0] + " ne contient aucun arbre.");
+			}
+			premierArbre = arbresBinEnracines.get(0);
+		}
+		mesures.fin(arbresBinEnracines == null ? 1 : arbresBinEnracines.size());
 	    
 
 		/* Traitement du fichier "BLOSUM62.txt"*/
 		
-		Object[] result = getBlosum(args[2]);
+		mesures.debut("blosum");
+		Object[] result = blosum != null ? blosum : getBlosum(args[2]);
 		/* HashMap qui va contenir l'index des acides aminés dans la matrice de mutations qui correspond à ceux entrés dans la matrice BLOSUM.*/
 	    HashMap<String, Integer> tableIndex = (HashMap<String, Integer>) result[0];
 	    /* La matrice de mutations qui contient les coûts inscrits dans la matrice BLOSUM*/
 	    double[][] matriceMutation = (double[][]) result[1];
+	    mesures.fin(tableIndex.size());
 	    
-	    /* Traitement du fichier "proteins.fa". On obtient les protéines du ficher et leur séquence associée*/
-	    HashMap<String, String> proteins = getProteins(tableIndex, args[1]);
+	    /* Avec l'option "--cache", la matrice des distances est lue dans le cache si le fichier "*.fa" et la matrice BLOSUM n'ont
+	     * pas changé depuis son calcul: la lecture des protéines et le calcul de la matrice sont alors évités.*/
+		DistanceCache cache = null;
+		Object[] objets = null;
+		EncodedAlignment alignement = null;
+		if (options.containsKey("cache")) {
+			if (options.get("cache").isEmpty()) {
+				throw new PipelineException("L'option \"--cache\" doit donner le répertoire du cache.");
+			}
+			mesures.debut("cache-lecture");
+			try {
+				cache = new DistanceCache(Paths.get(options.get("cache")), args[1], args[2]);
+				objets = cache.charger(premierArbre);
+			}
+			catch (IOException e) {
+				throw new PipelineException("Un problème est survenu lors de la lecture du cache " + options.get("cache") + ".", e);
+			}
+			mesures.fin(objets == null ? 0 : ((double[][]) objets[1]).length);
+		}
+		
+		if (objets == null) {
+			/* Traitement du fichier "proteins.fa", projeté en mémoire et analysé par morceaux en parallèle.
+			 * On obtient les protéines du ficher et leur séquence associée filtrée des gaps, encodée par les index de la matrice de mutations*/
+			mesures.debut("proteines");
+			FastaReader.Enregistrements enregistrements;
+			try {
+				enregistrements = FastaReader.lireSequences(tableIndex, args[1], pool);
+			}
+			catch (IllegalArgumentException e) {
+				throw new PipelineException(e.getMessage());
+			}
+			catch (IOException e) {
+				throw new PipelineException("Un problème est survenu lors de la lecture du fichier " + args[1] + ".", e);
+			}
+			mesures.fin(enregistrements.size());
 	    
-	    /* Construction des arbres binaires enracinés.
-	     * Les arbres ont aux feuilles les protéines associées à leur séquence d'acides aminés filtrée.*/
-	    ArrayList<BinTree> arbresBinEnracines = construireArbres(arbresNewick, proteins);
+			/* L'alignement des feuilles du premier arbre, qui sert au calcul de la matrice des distances. Il reprend les séquences
+			 * encodées sans les recopier ni les décoder en chaînes de caractères.*/
+			mesures.debut("sequences");
+			try {
+				alignement = EncodedAlignment.fromLeaves(premierArbre.getLeavesNode(), enregistrements, matriceMutation);
+			}
+			catch (IllegalArgumentException e) {
+				throw new PipelineException(e.getMessage());
+			}
+			mesures.fin(alignement.size());
 	     
 		
-	    /* Appel à la fonction matriceDistance. On obtient donc la matrice des distances entre les séquences et la table d'index pour cette
-	     * matrice*/
-		Object[] objets = matriceDistance(arbresBinEnracines.get(0), matriceMutation, tableIndex);
+			/* Calcul de la matrice des distances par tuiles du triangle supérieur. On obtient donc la matrice des distances entre les séquences
+			 * et la table d'index pour cette matrice*/
+			DistanceMatrixBuilder.Progression progression = null;
+			if (options.containsKey("progression")) {
+				/* On affiche l'avancement par paliers de 10%, une seule fois par palier même si plusieurs tuiles terminent en même temps */
+				AtomicInteger palier = new AtomicInteger(-1);
+				progression = (faites, total) -> {
+					int pourcentage = (int) (faites * 10 / total) * 10;
+					int precedent = palier.get();
+					if (pourcentage > precedent && palier.compareAndSet(precedent, pourcentage))
+						suivi.println("Matrice des distances: " + pourcentage + "%");
+				};
+			}
+			mesures.debut("matrice");
+			
+			/* Si le cache contient la matrice d'une version précédente du fichier "*.fa", seules les lignes des protéines
+			 * ajoutées ou modifiées sont calculées*/
+			if (cache != null) {
+				try {
+					objets = cache.mettreAJour(premierArbre, alignement, pool);
+				}
+				catch (IOException e) {
+					throw new PipelineException("Un problème est survenu lors de la lecture du cache " + options.get("cache") + ".", e);
+				}
+			}
+			if (objets == null)
+				objets = DistanceMatrixBuilder.matriceDistance(premierArbre, alignement, pool, progression, options.containsKey("simd"));
+			int nbFeuilles = ((double[][]) objets[1]).length;
+			mesures.fin((long) nbFeuilles * (nbFeuilles - 1) / 2);
+		
+			/* La matrice est enregistrée dans le cache avant l'algorithme NJ, qui la modifie en place*/
+			if (cache != null) {
+				mesures.debut("cache-ecriture");
+				try {
+					cache.enregistrer(premierArbre, alignement, (double[][]) objets[1]);
+				}
+				catch (IOException e) {
+					throw new PipelineException("Un problème est survenu lors de l'écriture du fichier " + cache.getFichier() + ".", e);
+				}
+				mesures.fin(nbFeuilles);
+			}
+		}
 		/*  tableNoeuds contient la position des noeuds dans la matrice des distances*/
 		HashMap<Integer, Node> tableNoeuds = (HashMap<Integer, Node>) objets[0];
 		double[][] matriceDistance = (double[][]) objets[1];
+		int n = matriceDistance.length;
 		
-		/* Appel à neighborJoining pour créer un arbre au plus proche d'un arbre additif*/
-		BinTree tree = neighborJoining(matriceDistance, tableNoeuds);
+		/* Appel au moteur NJ en place pour créer un arbre au plus proche d'un arbre additif*/
+		mesures.debut("nj");
+		BinTree tree = NJEngine.neighborJoining(matriceDistance, tableNoeuds, recherche, pool, mesures.suiviNJ());
+		mesures.fin(Math.max(0, n - 2));
 		
-		/* Calculer et retourner la distance RF entre l'arbre Neighbor et chacun des arbres entrés*/
-		for (int i = 0; i < arbresBinEnracines.size(); i++) {
-			System.out.println("Arbre: " + arbresBinEnracines.get(i).toNewick());
-			System.out.println("Arbre NJ: " + tree.toNewick());
-			System.out.println("Distance: " + tree.rf(arbresBinEnracines.get(i)));
-			System.out.println();
+		/* En mode flux, les arbres candidats sont lus, comparés et affichés un par un */
+		mesures.debut("comparaison");
+		int nbCandidats;
+		if (lecteurArbres != null)
+			nbCandidats = comparerFlux(tree, premierArbre, lecteurArbres, args[0], meilleurs, affichage);
+		else
+			nbCandidats = comparer(tree, arbresBinEnracines, meilleurs, affichage);
+		mesures.fin(nbCandidats);
+		
+		/* Enracinement par mid-point de l'arbre NJ*/
+		mesures.debut("midpoint");
+		tree.midPoint();
+		mesures.fin(tree.getNbNoeuds());
+		
+		/* Supports bootstrap des arêtes de l'arbre NJ, écrits dans sa chaîne de Newick. Si la matrice des distances vient du
+		 * cache, les séquences n'ont pas encore été lues.*/
+		if (nbReplicats > 0) {
+			mesures.debut("bootstrap");
+			try {
+				if (alignement == null)
+					alignement = EncodedAlignment.fromLeaves(tree.getLeavesNode(), FastaReader.lireSequences(tableIndex, args[1], pool),
+							matriceMutation);
+				new Bootstrap(tree, alignement, recherche).executer(nbReplicats, graine, pool);
+			}
+			catch (IllegalArgumentException e) {
+				throw new PipelineException(e.getMessage());
+			}
+			catch (IOException e) {
+				throw new PipelineException("Un problème est survenu lors de la lecture du fichier " + args[1] + ".", e);
+			}
+			mesures.fin(nbReplicats);
 		}
+		affichage.println("Arbre NJ enraciné par mid-point: " + tree.toNewickDist());
 		
-		/* Candidat ayant la plus petite distance RF avec l'arbres NJ*/
-		double min = Double.MAX_VALUE;
-		int index = -1;
-		for (int i = 0; i < arbresBinEnracines.size(); i++) {
-			if (tree.rf(arbresBinEnracines.get(i)) < min) {
-				min = tree.rf(arbresBinEnracines.get(i));
-				index = i;
+		/* Matrice des distances RF entre tous les arbres candidats */
+		if (options.containsKey("rf-matrice")) {
+			mesures.debut("rf-matrice");
+			mesures.fin(ecrireMatriceRF(args[0], options.get("rf-matrice"), pool, affichage));
+		}
+		if (mesures.isActif())
+			ecrireRapport(mesures, options.get("rapport"), suivi);
+	}
+	
+	/**
+	 * Écrire le rapport JSON des mesures de chaque étape.
+	 * 
+	 * @param mesures
+	 * 		  les mesures de l'exécution
+	 * @param sortie
+	 * 		  le chemin du fichier dans lequel écrire le rapport, ou une chaîne vide pour l'écrire sur <code>suivi</code>
+	 * @param suivi
+	 * 		  la destination du rapport sans fichier (voir {@link #executer(String[], PrintStream, PrintStream, Object[])})
+	 * 
+	 * @see Instrumentation#ecrire(Writer)
+	 */
+	public static void ecrireRapport(Instrumentation mesures, String sortie, PrintStream suivi) {
+		try {
+			if (sortie.isEmpty())
+				mesures.ecrire(new OutputStreamWriter(suivi, StandardCharsets.UTF_8));
+			else {
+				try (Writer ecrivain = Files.newBufferedWriter(Paths.get(sortie), StandardCharsets.UTF_8)) {
+					mesures.ecrire(ecrivain);
+				}
+			}
+		}
+		catch (IOException e) {
+			throw new PipelineException("Un problème est survenu lors de l'écriture du fichier " + sortie + ".", e);
+		}
+	}
+	
+	/**
+	 * Écrire dans un fichier la matrice des distances RF entre tous les arbres d'un fichier "*.nw", calculée par {@link RFMatrix}.
+	 * 
+	 * @param file
+	 * 		  un chemin vers un fichier au format "*.nw"
+	 * @param sortie
+	 * 		  le chemin du fichier dans lequel écrire la matrice
+	 * @param pool
+	 * 		  le pool de threads, ou <code>null</code> pour une exécution séquentielle
+	 * @param affichage
+	 * 		  la destination du message de fin
+	 * 
+	 * @return le nombre d'arbres de la matrice
+	 */
+	public static int ecrireMatriceRF(String file, String sortie, ForkJoinPool pool, PrintStream affichage) {
+		if (sortie.isEmpty()) {
+			throw new PipelineException("L'option \"--rf-matrice\" doit donner le fichier dans lequel écrire la matrice.");
+		}
+		
+		NewickReader lecteur = ouvrirArbres(file);
+		RFMatrix matrice = null;
+		try {
+			matrice = RFMatrix.lire(lecteur, pool);
+			lecteur.close();
+		}
+		catch (IllegalArgumentException e) {
+			throw new PipelineException(e.getMessage());
+		}
+		catch (IOException e) {
+			throw new PipelineException("Un problème est survenu lors de la lecture du fichier " + file + ".", e);
+		}
+		
+		try (Writer ecrivain = Files.newBufferedWriter(Paths.get(sortie), StandardCharsets.UTF_8)) {
+			matrice.ecrire(ecrivain, pool);
+		}
+		catch (IOException e) {
+			throw new PipelineException("Un problème est survenu lors de l'écriture du fichier " + sortie + ".", e);
+		}
+		affichage.println();
+		affichage.println("Matrice des distances RF entre les " + matrice.size() + " arbres candidats écrite dans " + sortie + ".");
+		return matrice.size();
+	}
+	
+	/**
+	 * Afficher la distance RF entre l'arbre NJ et chacun des arbres candidats, puis le candidat le plus proche de l'arbre NJ.
+	 * Avec <code>meilleurs</code> >= 1, seuls les <code>meilleurs</code> candidats les plus proches sont affichés.
+	 * 
+	 * @param tree
+	 * 		  l'arbre obtenu par l'algorithme NJ
+	 * @param arbresBinEnracines
+	 * 		  les arbres candidats
+	 * @param meilleurs
+	 * 		  le nombre de candidats les plus proches à afficher, ou 0 pour afficher tous les candidats et le plus proche
+	 * @param affichage
+	 * 		  la destination des résultats
+	 * 
+	 * @return le nombre de candidats comparés
+	 * 
+	 * @see #comparer(BinTree, Iterator, int, PrintStream)
+	 */
+	public static int comparer(BinTree tree, ArrayList<BinTree> arbresBinEnracines, int meilleurs, PrintStream affichage) {
+		return comparer(tree, arbresBinEnracines.iterator(), meilleurs, affichage);
+	}
+	
+	/**
+	 * Afficher la distance RF entre l'arbre NJ et chacun des arbres candidats lus en flux, comme
+	 * {@link #comparer(BinTree, ArrayList, int, PrintStream)}.
+	 * <p>Chaque arbre est lu, comparé, affiché puis oublié: seuls l'arbre en cours et la chaîne Newick des meilleurs candidats sont
+	 * gardés en mémoire, quel que soit le nombre d'arbres du fichier.</p>
+	 * 
+	 * @param tree
+	 * 		  l'arbre obtenu par l'algorithme NJ
+	 * @param premier
+	 * 		  le premier arbre candidat, déjà lu
+	 * @param lecteur
+	 * 		  le lecteur des arbres candidats suivants, fermé à la fin de la lecture
+	 * @param file
+	 * 		  le chemin du fichier des arbres candidats, pour les messages d'erreur
+	 * @param meilleurs
+	 * 		  le nombre de candidats les plus proches à afficher, ou 0 pour afficher tous les candidats et le plus proche
+	 * @param affichage
+	 * 		  la destination des résultats
+	 * 
+	 * @return le nombre de candidats comparés
+	 */
+	public static int comparerFlux(BinTree tree, BinTree premier, NewickReader lecteur, String file, int meilleurs, PrintStream affichage) {
+		int nbCandidats = comparer(tree, new Iterator<BinTree>() {
+			private BinTree suivant = premier;
+			
+			@Override
+			public boolean hasNext() {
+				return this.suivant != null;
+			}
+			
+			@Override
+			public BinTree next() {
+				BinTree candidat = this.suivant;
+				this.suivant = lireArbre(lecteur, file);
+				return candidat;
+			}
+		}, meilleurs, affichage);
+		try {
+			lecteur.close();
+		}
+		catch (IOException e) {
+			/* Le fichier a été lu en entier: une erreur à la fermeture ne change pas le résultat */
+		}
+		return nbCandidats;
+	}
+	
+	/**
+	 * Comparer l'arbre NJ aux arbres candidats avec une {@link CandidateSearch}: les bipartitions de l'arbre NJ ne sont calculées
+	 * qu'une fois.
+	 * <ol>
+	 * 		<li>Si <code>meilleurs</code> vaut 0, on affiche chaque candidat et sa distance RF, puis le premier candidat de plus petite
+	 * 			distance.</li>
+	 * 		<li>Sinon, on n'affiche que les <code>meilleurs</code> candidats les plus proches et leur distance: le calcul de RF d'un
+	 * 			candidat s'arrête dès qu'il ne peut plus être parmi eux.</li>
+	 * </ol>
+	 * 
+	 * @return le nombre de candidats comparés
+	 */
+	private static int comparer(BinTree tree, Iterator<BinTree> candidats, int meilleurs, PrintStream affichage) {
+		CandidateSearch recherche = new CandidateSearch(tree, Math.max(1, meilleurs));
+		if (meilleurs > 0) {
+			while (candidats.hasNext())
+				recherche.ajouter(candidats.next());
+			
+			affichage.println("Les " + meilleurs + " arbres candidats ayant les plus petites distances RF (sur " + recherche.getNbCandidats()
+					+ " candidats):");
+			affichage.println();
+			for (CandidateSearch.Candidat candidat : recherche.getMeilleurs()) {
+				affichage.println("Arbre " + (candidat.getIndex() + 1) + ": " + candidat.getNewick());
+				affichage.println("Distance: " + candidat.getDistance());
+				affichage.println();
 			}
+			return recherche.getNbCandidats();
 		}
-		System.out.println("Arbre candidat ayant la plus petite distance RF: " + arbresBinEnracines.get(index).toNewick());
-		System.out.println();
 		
-		/* Enracinement par mid-point de l'arbre NJ*/
-		tree.midPoint();
-		System.out.println("Arbre NJ enraciné par mid-point: " + tree.toNewickDist());
+		/* Calculer et retourner la distance RF entre l'arbre Neighbor et chacun des arbres entrés*/
+		String newickNJ = tree.toNewick();
+		double min = Double.MAX_VALUE;
+		String meilleur = null;
+		int nbCandidats = 0;
+		while (candidats.hasNext()) {
+			BinTree candidat = candidats.next();
+			nbCandidats++;
+			String newick = candidat.toNewick();
+			double rf = recherche.rf(candidat);
+			affichage.println("Arbre: " + newick);
+			affichage.println("Arbre NJ: " + newickNJ);
+			affichage.println("Distance: " + rf);
+			affichage.println();
+			
+			/* Candidat ayant la plus petite distance RF avec l'arbres NJ*/
+			if (rf < min) {
+				min = rf;
+				meilleur = newick;
+			}
+		}
+		affichage.println("Arbre candidat ayant la plus petite distance RF: " + meilleur);
+		affichage.println();
+		return nbCandidats;
 	}
 
 }
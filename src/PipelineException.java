@@ -0,0 +1,18 @@
+/**
+ * Une erreur qui empêche l'exécution du programme: arguments invalides, fichier mal formé ou erreur de lecture ou d'écriture.
+ * <p>Le message est celui à afficher à l'utilisateur. La cause, s'il y en a une, est l'erreur d'entrée/sortie d'origine.
+ * {@link PhylogenyNeighborJoining#main(String[])} affiche le message et quitte le programme; {@link BatchServer} le renvoie
+ * comme résultat de la tâche et continue avec les suivantes.</p>
+ */
+public class PipelineException extends RuntimeException {
+
+	private static final long serialVersionUID = 1L;
+
+	public PipelineException(String message) {
+		super(message);
+	}
+
+	public PipelineException(String message, Throwable cause) {
+		super(message, cause);
+	}
+}
@@ -0,0 +1,322 @@
+import java.io.*;
+import java.nio.LongBuffer;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Matrice des distances RF entre tous les arbres d'un fichier, dans l'esprit de HashRF.
+ * <p>Au lieu de comparer les arbres deux à deux, chaque bipartition distincte de l'ensemble des arbres reçoit un numéro dans
+ * une table de hachage commune, et on retient pour chaque bipartition la liste des arbres qui la contiennent. Le nombre de
+ * bipartitions communes à l'arbre i et à chaque autre arbre s'obtient alors en parcourant, pour chaque bipartition de i, la
+ * liste de ses arbres: une ligne de la matrice coûte la somme des tailles de ces listes, et non un calcul de RF par arbre.</p>
+ * <p>La case (i, j) vaut <code>arbre(i).rf(arbre(j))</code> ({@link BinTree#rf(BinTree)}), au bit près. Les bipartitions des
+ * arbres et les lignes de la matrice sont calculées en parallèle sur un {@link ForkJoinPool} si un pool est fourni.</p>
+ */
+public class RFMatrix {
+
+	/* Nombre de cases visé pour un bloc de lignes calculées avant d'être écrites. */
+	private static final int CASES_PAR_BLOC = 1 << 22;
+
+	/* Nombre d'arbres, et pour chaque arbre: son nombre de feuilles, son nombre de bipartitions et le numéro de son ensemble de
+	 * protéines (deux arbres qui n'ont pas les mêmes protéines n'ont aucune bipartition commune). */
+	private final int nbArbres;
+	private final int[] nbFeuilles;
+	private final int[] tailles;
+	private final int[] ensembles;
+
+	/* Les numéros des bipartitions de l'arbre i: bipartitions[debutsArbres[i] .. debutsArbres[i + 1] - 1]. */
+	private final int[] debutsArbres;
+	private final int[] bipartitions;
+
+	/* Les arbres qui contiennent la bipartition b: arbres[debutsBipartitions[b] .. debutsBipartitions[b + 1] - 1]. */
+	private final int[] debutsBipartitions;
+	private final int[] arbres;
+
+	/**
+	 * Prépare le calcul de la matrice RF d'une liste d'arbres compacts.
+	 *
+	 * @param compacts
+	 * 		  les arbres, numérotés avec la même table de protéines (voir {@link CompactTree#fromBinTree(BinTree, HashMap)})
+	 * @param pool
+	 * 		  le pool de threads sur lequel répartir le calcul des bipartitions, ou <code>null</code> pour une exécution séquentielle
+	 */
+	public RFMatrix(List<CompactTree> compacts, ForkJoinPool pool) {
+		this.nbArbres = compacts.size();
+		this.nbFeuilles = new int[this.nbArbres];
+		this.tailles = new int[this.nbArbres];
+		this.ensembles = new int[this.nbArbres];
+
+		/* Les bipartitions de chaque arbre, en parallèle: les arbres compacts ne sont que lus */
+		Bipartitions[] parArbre = new Bipartitions[this.nbArbres];
+		if (pool == null) {
+			for (int i = 0; i < this.nbArbres; i++)
+				parArbre[i] = new Bipartitions(compacts.get(i));
+		}
+		else {
+			pool.invoke(new Taches(0, this.nbArbres, grain(this.nbArbres, pool), (debut, fin) -> {
+				for (int i = debut; i < fin; i++)
+					parArbre[i] = new Bipartitions(compacts.get(i));
+			}));
+		}
+
+		/* Numérotation des ensembles de protéines et largeur commune des bipartitions */
+		HashMap<LongBuffer, Integer> numerosEnsembles = new HashMap<LongBuffer, Integer>();
+		int largeur = 1;
+		int total = 0;
+		for (int i = 0; i < this.nbArbres; i++) {
+			Integer numero = numerosEnsembles.putIfAbsent(LongBuffer.wrap(parArbre[i].getEnsemble()), numerosEnsembles.size());
+			this.ensembles[i] = numero == null ? numerosEnsembles.size() - 1 : numero;
+			this.nbFeuilles[i] = parArbre[i].getNbFeuilles();
+			this.tailles[i] = parArbre[i].size();
+			largeur = Math.max(largeur, parArbre[i].getEnsemble().length);
+			total += this.tailles[i];
+		}
+
+		/* Chaque bipartition distincte reçoit un numéro dans la table commune */
+		Dictionnaire dictionnaire = new Dictionnaire(largeur);
+		this.debutsArbres = new int[this.nbArbres + 1];
+		this.bipartitions = new int[total];
+		int k = 0;
+		for (int i = 0; i < this.nbArbres; i++) {
+			long[] cles = parArbre[i].exporter(largeur);
+			parArbre[i] = null;
+			for (int b = 0; b < this.tailles[i]; b++)
+				this.bipartitions[k++] = dictionnaire.numero(cles, b * largeur);
+			this.debutsArbres[i + 1] = k;
+		}
+
+		/* Listes des arbres de chaque bipartition, rangées bout à bout */
+		this.debutsBipartitions = new int[dictionnaire.size() + 1];
+		for (int b : this.bipartitions)
+			this.debutsBipartitions[b + 1]++;
+		for (int b = 0; b < dictionnaire.size(); b++)
+			this.debutsBipartitions[b + 1] += this.debutsBipartitions[b];
+		this.arbres = new int[total];
+		int[] positions = Arrays.copyOf(this.debutsBipartitions, dictionnaire.size());
+		for (int i = 0; i < this.nbArbres; i++)
+			for (int c = this.debutsArbres[i]; c < this.debutsArbres[i + 1]; c++)
+				this.arbres[positions[this.bipartitions[c]]++] = i;
+	}
+
+	/**
+	 * Lit tous les arbres restants d'un lecteur et prépare le calcul de leur matrice RF. Seules les copies compactes des arbres
+	 * sont gardées en mémoire.
+	 *
+	 * @param lecteur
+	 * 		  la source des arbres
+	 * @param pool
+	 * 		  le pool de threads, ou <code>null</code>
+	 *
+	 * @return la matrice RF des arbres lus, dans leur ordre de lecture.
+	 *
+	 * @throws IOException si la source ne peut être lue.
+	 * @throws IllegalArgumentException si un arbre n'est pas au format Newick valide
+	 */
+	public static RFMatrix lire(NewickReader lecteur, ForkJoinPool pool) throws IOException {
+		HashMap<String, Integer> taxons = new HashMap<String, Integer>();
+		ArrayList<CompactTree> compacts = new ArrayList<CompactTree>();
+		BinTree tree;
+		while ((tree = lecteur.lireArbre()) != null)
+			compacts.add(CompactTree.fromBinTree(tree, taxons));
+		return new RFMatrix(compacts, pool);
+	}
+
+	/**
+	 * @return le nombre d'arbres de la matrice.
+	 */
+	public int size() {
+		return this.nbArbres;
+	}
+
+	/**
+	 * @return le nombre de bipartitions distinctes de l'ensemble des arbres.
+	 */
+	public int getNbBipartitions() {
+		return this.debutsBipartitions.length - 1;
+	}
+
+	/**
+	 * Calcule une ligne de la matrice.
+	 *
+	 * @param i
+	 * 		  le numéro de l'arbre de la ligne
+	 *
+	 * @return la distance RF de l'arbre i à chaque arbre j.
+	 */
+	public double[] ligne(int i) {
+		double[] ligne = new double[this.nbArbres];
+		this.ligne(i, new int[this.nbArbres], ligne);
+		return ligne;
+	}
+
+	/**
+	 * Calcule la ligne i de la matrice dans <code>ligne</code>, avec un tableau de compteurs nuls qui est remis à zéro à la fin.
+	 */
+	private void ligne(int i, int[] communes, double[] ligne) {
+		/* Chaque arbre qui partage une bipartition avec l'arbre i voit son compteur augmenter */
+		for (int c = this.debutsArbres[i]; c < this.debutsArbres[i + 1]; c++) {
+			int b = this.bipartitions[c];
+			for (int a = this.debutsBipartitions[b]; a < this.debutsBipartitions[b + 1]; a++)
+				communes[this.arbres[a]]++;
+		}
+
+		/* RF comme Bipartitions#rf: deux fois les bipartitions de j absentes de i, sur 2 * (n - 3) pour les n feuilles de i */
+		double denominateur = (double) (2 * (this.nbFeuilles[i] - 3));
+		for (int j = 0; j < this.nbArbres; j++) {
+			int nb = this.ensembles[j] == this.ensembles[i] ? communes[j] : 0;
+			ligne[j] = (double) 2 * ((double) this.tailles[j] - (double) nb) / denominateur;
+			communes[j] = 0;
+		}
+	}
+
+	/**
+	 * Écrit la matrice complète: une première ligne avec le nombre d'arbres, puis une ligne par arbre avec ses distances RF à
+	 * chaque arbre, séparées par des tabulations. Les lignes sont calculées par blocs, en parallèle si un pool est fourni, et
+	 * écrites au fur et à mesure: la matrice n'est jamais entièrement en mémoire.
+	 *
+	 * @param sortie
+	 * 		  la destination de la matrice
+	 * @param pool
+	 * 		  le pool de threads sur lequel répartir les lignes d'un bloc, ou <code>null</code> pour une exécution séquentielle
+	 *
+	 * @throws IOException si l'écriture échoue.
+	 */
+	public void ecrire(Writer sortie, ForkJoinPool pool) throws IOException {
+		sortie.write(Integer.toString(this.nbArbres));
+		sortie.write('\n');
+		int lignesParBloc = Math.max(1, CASES_PAR_BLOC / Math.max(1, this.nbArbres));
+		double[][] bloc = new double[Math.min(lignesParBloc, this.nbArbres)][this.nbArbres];
+		StringBuilder texte = new StringBuilder();
+
+		for (int debutBloc = 0; debutBloc < this.nbArbres; debutBloc += lignesParBloc) {
+			int premier = debutBloc;
+			int finBloc = Math.min(this.nbArbres, debutBloc + lignesParBloc);
+			Bloc calcul = (debut, fin) -> {
+				int[] communes = new int[this.nbArbres];
+				for (int i = debut; i < fin; i++)
+					this.ligne(i, communes, bloc[i - premier]);
+			};
+			if (pool == null)
+				calcul.traiter(debutBloc, finBloc);
+			else
+				pool.invoke(new Taches(debutBloc, finBloc, grain(finBloc - debutBloc, pool), calcul));
+
+			for (int i = debutBloc; i < finBloc; i++) {
+				texte.setLength(0);
+				for (int j = 0; j < this.nbArbres; j++) {
+					if (j > 0)
+						texte.append('\t');
+					texte.append(bloc[i - premier][j]);
+				}
+				texte.append('\n');
+				sortie.append(texte);
+			}
+		}
+		sortie.flush();
+	}
+
+	/**
+	 * Table de hachage à adressage ouvert qui numérote les bipartitions distinctes, chacune sur <code>largeur</code> mots.
+	 */
+	private static final class Dictionnaire {
+		private final int largeur;
+		private long[] cles;
+		private long[] empreintes;
+		private int[] numeros;
+		private int taille;
+
+		Dictionnaire(int largeur) {
+			this.largeur = largeur;
+			this.cles = new long[16 * largeur];
+			this.empreintes = new long[16];
+			this.numeros = new int[16];
+		}
+
+		int size() {
+			return this.taille;
+		}
+
+		/**
+		 * @return le numéro de la bipartition rangée dans <code>tableau</code> à partir de <code>debut</code>, attribué si elle
+		 * 		   n'est pas encore dans la table.
+		 */
+		int numero(long[] tableau, int debut) {
+			long empreinte = Bipartitions.empreinte(tableau, debut, this.largeur);
+			int masque = this.empreintes.length - 1;
+			int k = (int) empreinte & masque;
+			for (; this.empreintes[k] != 0; k = (k + 1) & masque) {
+				if (this.empreintes[k] == empreinte && Arrays.equals(this.cles, k * this.largeur, (k + 1) * this.largeur,
+						tableau, debut, debut + this.largeur))
+					return this.numeros[k];
+			}
+			if (2 * (this.taille + 1) > this.empreintes.length) {
+				this.agrandir();
+				return this.numero(tableau, debut);
+			}
+			this.empreintes[k] = empreinte;
+			this.numeros[k] = this.taille;
+			System.arraycopy(tableau, debut, this.cles, k * this.largeur, this.largeur);
+			return this.taille++;
+		}
+
+		/**
+		 * Double la capacité de la table.
+		 */
+		private void agrandir() {
+			long[] anciennesCles = this.cles;
+			long[] anciennesEmpreintes = this.empreintes;
+			int[] anciensNumeros = this.numeros;
+			this.cles = new long[anciennesCles.length * 2];
+			this.empreintes = new long[anciennesEmpreintes.length * 2];
+			this.numeros = new int[anciensNumeros.length * 2];
+			int masque = this.empreintes.length - 1;
+			for (int c = 0; c < anciennesEmpreintes.length; c++) {
+				if (anciennesEmpreintes[c] == 0)
+					continue;
+				int k = (int) anciennesEmpreintes[c] & masque;
+				while (this.empreintes[k] != 0)
+					k = (k + 1) & masque;
+				this.empreintes[k] = anciennesEmpreintes[c];
+				this.numeros[k] = anciensNumeros[c];
+				System.arraycopy(anciennesCles, c * this.largeur, this.cles, k * this.largeur, this.largeur);
+			}
+		}
+	}
+
+	/**
+	 * @return le nombre d'arbres ou de lignes d'une tâche: environ quatre tâches par thread.
+	 */
+	private static int grain(int nb, ForkJoinPool pool) {
+		return Math.max(1, nb / (4 * pool.getParallelism()));
+	}
+
+	/* Le traitement des arbres ou des lignes [debut, fin) */
+	private interface Bloc {
+		void traiter(int debut, int fin);
+	}
+
+	@SuppressWarnings("serial")
+	private static final class Taches extends RecursiveAction {
+		private final int debut;
+		private final int fin;
+		private final int grain;
+		private final Bloc bloc;
+
+		Taches(int debut, int fin, int grain, Bloc bloc) {
+			this.debut = debut;
+			this.fin = fin;
+			this.grain = grain;
+			this.bloc = bloc;
+		}
+
+		@Override
+		protected void compute() {
+			if (this.fin - this.debut <= this.grain) {
+				this.bloc.traiter(this.debut, this.fin);
+				return;
+			}
+			int milieu = (this.debut + this.fin) >>> 1;
+			invokeAll(new Taches(this.debut, milieu, this.grain, this.bloc), new Taches(milieu, this.fin, this.grain, this.bloc));
+		}
+	}
+}
@@ -0,0 +1,415 @@
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Placement de nouvelles séquences sur un arbre existant, sans reconstruire l'arbre par l'algorithme NJ.
+ * <p>Comme APPLES (Balaban et al., 2020), la séquence à placer est comparée à chaque feuille de l'arbre avec la même distance
+ * que la matrice des distances ({@link EncodedAlignment#distances(byte[])}), puis elle est rattachée à l'arête qui explique le
+ * mieux ces distances au sens des moindres carrés. Pour une arête de longueur <code>l</code> entre un noeud <code>v</code> et
+ * son parent <code>u</code>, la séquence est rattachée à la distance <code>x</code> de <code>v</code> par une arête pendante de
+ * longueur <code>p</code>; l'erreur est</p>
+ * <pre>
+ * Q(x, p) = somme sur les feuilles i sous v de w(i) (d(i) - d(v, i) - x - p)²
+ *         + somme sur les autres feuilles i de w(i) (d(i) - d(u, i) - (l - x) - p)²
+ * </pre>
+ * <p>où <code>d(i)</code> est la distance entre la séquence et la feuille i, et <code>d(v, i)</code> la longueur du chemin de
+ * l'arbre entre v et i. Le poids <code>w(i)</code> vaut 1 ({@link Critere#OLS}) ou <code>1 / d(i)²</code>
+ * ({@link Critere#FM}, Fitch-Margoliash, le critère par défaut d'APPLES).</p>
+ * <p>Q ne dépend que de six sommes de chaque côté de l'arête (poids, distances, longueurs de chemins et leurs produits).
+ * Ces sommes sont obtenues pour toutes les arêtes par deux parcours de l'arbre: des feuilles vers la racine pour les
+ * feuilles sous chaque noeud, puis de la racine vers les feuilles pour les autres. Après le calcul des n distances, le
+ * placement d'une séquence coûte donc O(n), au lieu de O(n³) pour reconstruire l'arbre.</p>
+ * <p>Les longueurs d'arêtes négatives, que l'algorithme NJ peut produire, sont comptées comme nulles.</p>
+ */
+public class TreePlacement {
+
+	/**
+	 * Le critère des moindres carrés.
+	 */
+	public enum Critere {
+		/* Moindres carrés ordinaires: toutes les feuilles ont le même poids */
+		OLS,
+		/* Fitch-Margoliash: les feuilles proches de la séquence comptent davantage */
+		FM
+	}
+
+	/**
+	 * Le meilleur placement d'une séquence: l'arête au-dessus de {@link #getNoeud()}, la position sur l'arête et la longueur de
+	 * l'arête pendante.
+	 */
+	public static final class Placement {
+		private final Node noeud;
+		private final double distanceNoeud;
+		private final double pendante;
+		private final double erreur;
+
+		Placement(Node noeud, double distanceNoeud, double pendante, double erreur) {
+			this.noeud = noeud;
+			this.distanceNoeud = distanceNoeud;
+			this.pendante = pendante;
+			this.erreur = erreur;
+		}
+
+		/**
+		 * @return le noeud du bas de l'arête choisie, son parent étant le noeud du haut.
+		 */
+		public Node getNoeud() {
+			return this.noeud;
+		}
+
+		/**
+		 * @return la distance entre {@link #getNoeud()} et le point de rattachement sur l'arête.
+		 */
+		public double getDistanceNoeud() {
+			return this.distanceNoeud;
+		}
+
+		/**
+		 * @return la longueur de l'arête entre le point de rattachement et la nouvelle feuille.
+		 */
+		public double getPendante() {
+			return this.pendante;
+		}
+
+		/**
+		 * @return l'erreur des moindres carrés du placement.
+		 */
+		public double getErreur() {
+			return this.erreur;
+		}
+	}
+
+	/* Nombre de séquences placées par une tâche parallèle avant de ne plus être découpée. */
+	private static final int SEQUENCES_PAR_TACHE = 4;
+
+	/* Distance minimale utilisée dans les poids 1 / d² du critère FM, pour une séquence identique à une feuille. */
+	private static final double DISTANCE_MINIMALE_FM = 1e-4;
+
+	/* Les six sommes d'un ensemble de feuilles, mesurées depuis un noeud: poids, poids × distance, poids × chemin,
+	 * poids × distance × chemin, poids × chemin², poids × distance². */
+	private static final int SOMMES = 6;
+
+	private final BinTree arbre;
+	private final Critere critere;
+	private final byte[] table;
+	private final EncodedAlignment alignement;
+
+	/* Les noeuds en pre-order, avec pour chacun l'index de son parent et de ses enfants (-1 s'il n'y en a pas), la longueur de
+	 * l'arête vers son parent et, pour une feuille, l'index de sa séquence dans l'alignement. */
+	private final Node[] noeuds;
+	private final int[] parents;
+	private final int[] gauches;
+	private final int[] droites;
+	private final double[] longueurs;
+	private final int[] feuilles;
+
+	/* Les noeuds internes ajoutés par inserer, qui coupent les arêtes de l'arbre initial. */
+	private final Set<Node> ajoutes = Collections.newSetFromMap(new IdentityHashMap<Node, Boolean>());
+
+	/**
+	 * Prépare le placement sur un arbre avec le critère {@link Critere#FM}.
+	 *
+	 * @see #TreePlacement(BinTree, double[][], HashMap, Critere)
+	 */
+	public TreePlacement(BinTree arbre, double[][] matriceMutations, HashMap<String, Integer> tableIndex) {
+		this(arbre, matriceMutations, tableIndex, Critere.FM);
+	}
+
+	/**
+	 * Prépare le placement sur un arbre: les séquences des feuilles sont encodées une seule fois pour tous les placements.
+	 *
+	 * @param arbre
+	 * 		  l'arbre, avec ses longueurs d'arêtes et les séquences filtrées aux feuilles (par exemple l'arbre NJ)
+	 * @param matriceMutations
+	 * 		  la matrice qui contient les coûts de mutations des acides aminés pour les séquences.
+	 * @param tableIndex
+	 * 		  une <code>HashMap</code> qui à un caractère d'acide aminé associe un index dans la matrice de mutations.
+	 * @param critere
+	 * 		  le critère des moindres carrés
+	 *
+	 * @throws IllegalArgumentException si l'arbre a moins de deux feuilles ou si une feuille n'a pas de séquence valide.
+	 */
+	public TreePlacement(BinTree arbre, double[][] matriceMutations, HashMap<String, Integer> tableIndex, Critere critere) {
+		this.arbre = arbre;
+		this.critere = critere;
+		this.table = EncodedAlignment.tableEncodage(tableIndex);
+
+		/* Copie de l'index de l'arbre, en pre-order: un parent est toujours avant ses enfants. Les placements restent ainsi
+		 * calculés sur l'arbre initial quand inserer modifie l'arbre et son index. */
+		int m = arbre.getNbNoeuds();
+		this.noeuds = new Node[m];
+		this.parents = new int[m];
+		this.gauches = new int[m];
+		this.droites = new int[m];
+		this.longueurs = new double[m];
+		this.feuilles = new int[m];
+		ArrayList<Node> feuilles = new ArrayList<Node>();
+		for (int k = 0; k < m; k++) {
+			Node noeud = arbre.getNoeud(k);
+			this.noeuds[k] = noeud;
+			this.parents[k] = arbre.getPositionParent(k);
+			this.gauches[k] = arbre.getPositionGauche(k);
+			this.droites[k] = arbre.getPositionDroit(k);
+			this.longueurs[k] = Math.max(0, noeud.getDist());
+			if (noeud.isLeave()) {
+				this.feuilles[k] = feuilles.size();
+				feuilles.add(noeud);
+			}
+			else
+				this.feuilles[k] = -1;
+		}
+		if (feuilles.size() < 2)
+			throw new IllegalArgumentException("L'arbre doit avoir au moins deux feuilles pour y placer une séquence.");
+		this.alignement = EncodedAlignment.fromLeaves(feuilles, matriceMutations, tableIndex);
+	}
+
+	public BinTree getArbre() {
+		return this.arbre;
+	}
+
+	/**
+	 * Active le noyau SIMD pour le calcul des distances aux feuilles.
+	 *
+	 * @see EncodedAlignment#activerVectoriel()
+	 */
+	public boolean activerVectoriel() {
+		return this.alignement.activerVectoriel();
+	}
+
+	/**
+	 * Trouver le meilleur placement d'une séquence. L'arbre n'est pas modifié: plusieurs placements peuvent être calculés en
+	 * même temps.
+	 *
+	 * @param sequence
+	 * 		  la séquence, alignée et filtrée des gaps comme les séquences des feuilles (même longueur)
+	 *
+	 * @return le placement de plus petite erreur, le premier des noeuds en pre-order en cas d'égalité.
+	 *
+	 * @throws IllegalArgumentException si la séquence n'a pas la longueur des séquences des feuilles, ou contient un caractère
+	 * 		   absent de la matrice de mutations.
+	 */
+	public Placement placer(String sequence) {
+		double[] distances = this.alignement.distances(EncodedAlignment.encoder(sequence, this.table));
+		int m = this.noeuds.length;
+
+		/* Sommes des feuilles sous chaque noeud, mesurées depuis ce noeud: les enfants sont après leur parent en pre-order */
+		double[] dessous = new double[SOMMES * m];
+		for (int k = m - 1; k >= 0; k--) {
+			if (this.feuilles[k] >= 0) {
+				double d = distances[this.feuilles[k]];
+				double w = this.poids(d);
+				dessous[SOMMES * k] = w;
+				dessous[SOMMES * k + 1] = w * d;
+				dessous[SOMMES * k + 5] = w * d * d;
+			}
+			if (this.parents[k] >= 0)
+				ajouterDecale(dessous, this.parents[k], dessous, k, this.longueurs[k]);
+		}
+
+		/* Sommes des feuilles qui ne sont pas sous chaque noeud, mesurées depuis son parent */
+		double[] dessus = new double[SOMMES * m];
+		for (int k = 1; k < m; k++) {
+			int parent = this.parents[k];
+			if (this.parents[parent] >= 0)
+				ajouterDecale(dessus, k, dessus, parent, this.longueurs[parent]);
+			int frere = this.gauches[parent] == k ? this.droites[parent] : this.gauches[parent];
+			if (frere >= 0)
+				ajouterDecale(dessus, k, dessous, frere, this.longueurs[frere]);
+		}
+
+		/* L'arête de chaque noeud sauf la racine */
+		Placement meilleur = null;
+		for (int k = 1; k < m; k++) {
+			Placement placement = this.placerSurArete(k, dessous, dessus);
+			if (meilleur == null || placement.erreur < meilleur.erreur)
+				meilleur = placement;
+		}
+		return meilleur;
+	}
+
+	/**
+	 * Trouver le meilleur placement de plusieurs séquences, chacune indépendamment des autres sur l'arbre tel qu'il est.
+	 *
+	 * @param sequences
+	 * 		  les séquences, alignées et filtrées des gaps comme les séquences des feuilles
+	 * @param pool
+	 * 		  le pool de threads sur lequel répartir les séquences, ou <code>null</code> pour une exécution séquentielle
+	 *
+	 * @return les placements, dans l'ordre des séquences.
+	 *
+	 * @see #placer(String)
+	 */
+	public Placement[] placer(List<String> sequences, ForkJoinPool pool) {
+		Placement[] placements = new Placement[sequences.size()];
+		TachePlacement tache = new TachePlacement(this, sequences, placements, 0, placements.length);
+		if (pool == null)
+			tache.compute();
+		else
+			pool.invoke(tache);
+		return placements;
+	}
+
+	/**
+	 * Ajouter une séquence à l'arbre à l'endroit donné par son placement: l'arête est coupée par un nouveau noeud interne,
+	 * auquel est rattachée une nouvelle feuille.
+	 * <p>Les placements de plusieurs séquences calculés sur l'arbre initial peuvent être insérés les uns après les autres: si
+	 * l'arête a déjà été coupée par une insertion précédente, la séquence est rattachée au morceau qui contient son point de
+	 * rattachement. Les séquences insérées ne sont pas prises en compte par les placements suivants; il faut pour cela préparer
+	 * un nouveau <code>TreePlacement</code> sur l'arbre modifié.</p>
+	 *
+	 * @param prot
+	 * 		  le nom de la protéine
+	 * @param sequence
+	 * 		  sa séquence filtrée
+	 * @param placement
+	 * 		  le placement obtenu par {@link #placer(String)} sur cet arbre
+	 *
+	 * @return la nouvelle feuille.
+	 */
+	public Node inserer(String prot, String sequence, Placement placement) {
+		/* On remonte les morceaux de l'arête coupée jusqu'à celui qui contient le point de rattachement */
+		Node dessous = placement.noeud;
+		double x = placement.distanceNoeud;
+		while (x > Math.max(0, dessous.getDist()) && this.ajoutes.contains(this.arbre.getParent(dessous))) {
+			x -= Math.max(0, dessous.getDist());
+			dessous = this.arbre.getParent(dessous);
+		}
+		Node dessus = this.arbre.getParent(dessous);
+		double longueur = Math.max(0, dessous.getDist());
+		x = Math.min(x, longueur);
+
+		/* Le nouveau noeud interne prend la place de l'ancien enfant */
+		Node interne = new Node();
+		this.ajoutes.add(interne);
+		interne.addDist(longueur - x);
+		if (dessus.getLeftChild() == dessous)
+			dessus.addLeftChild(interne);
+		else
+			dessus.addRightChild(interne);
+		dessous.addDist(x);
+		interne.addLeftChild(dessous);
+
+		Node feuille = new Node(prot, sequence);
+		feuille.addDist(placement.pendante);
+		interne.addRightChild(feuille);
+		this.arbre.invaliderIndex();
+		return feuille;
+	}
+
+	/**
+	 * Le meilleur placement sur l'arête entre le noeud <code>k</code> et son parent. Q(x, p) est un polynôme convexe de degré
+	 * 2: son minimum sur 0 <= x <= l, p >= 0 est le minimum sans contrainte s'il est dans ces limites, sinon il est sur un des
+	 * bords p = 0, x = 0 ou x = l.
+	 */
+	private Placement placerSurArete(int k, double[] dessous, double[] dessus) {
+		double l = this.longueurs[k];
+		int a = SOMMES * k;
+
+		/* Feuilles sous le noeud: poids, somme des résidus r = d(i) - d(v, i), somme des carrés des résidus */
+		double wa = dessous[a];
+		double ra = dessous[a + 1] - dessous[a + 2];
+		double rra = dessous[a + 5] - 2 * dessous[a + 3] + dessous[a + 4];
+
+		/* Autres feuilles, résidus s = d(i) - d(u, i) */
+		double wb = dessus[a];
+		double sb = dessus[a + 1] - dessus[a + 2];
+		double ssb = dessus[a + 5] - 2 * dessus[a + 3] + dessus[a + 4];
+
+		double meilleurX = 0;
+		double meilleurP = pendanteOptimale(wa, ra, wb, sb, l, 0);
+		double meilleureErreur = erreur(wa, ra, rra, wb, sb, ssb, l, meilleurX, meilleurP);
+
+		double[] xs = { l, clamp((ra - sb + wb * l) / (wa + wb), l), Double.NaN };
+		double[] ps = { pendanteOptimale(wa, ra, wb, sb, l, l), 0, Double.NaN };
+		if (wa > 0 && wb > 0) {
+			xs[2] = (ra / wa + l - sb / wb) / 2;
+			ps[2] = (ra / wa - l + sb / wb) / 2;
+		}
+		for (int c = 0; c < xs.length; c++) {
+			if (!(xs[c] >= 0 && xs[c] <= l && ps[c] >= 0))
+				continue;
+			double erreur = erreur(wa, ra, rra, wb, sb, ssb, l, xs[c], ps[c]);
+			if (erreur < meilleureErreur) {
+				meilleureErreur = erreur;
+				meilleurX = xs[c];
+				meilleurP = ps[c];
+			}
+		}
+		return new Placement(this.noeuds[k], meilleurX, meilleurP, meilleureErreur);
+	}
+
+	/**
+	 * @return la longueur de l'arête pendante qui minimise Q pour un point de rattachement <code>x</code> fixé.
+	 */
+	private static double pendanteOptimale(double wa, double ra, double wb, double sb, double l, double x) {
+		return Math.max(0, (ra - wa * x + sb - wb * (l - x)) / (wa + wb));
+	}
+
+	/**
+	 * @return Q(x, p), développé à partir des sommes des résidus et de leurs carrés.
+	 */
+	private static double erreur(double wa, double ra, double rra, double wb, double sb, double ssb, double l, double x, double p) {
+		double haut = x + p;
+		double bas = l - x + p;
+		return rra - 2 * ra * haut + wa * haut * haut + ssb - 2 * sb * bas + wb * bas * bas;
+	}
+
+	private static double clamp(double x, double l) {
+		return Math.max(0, Math.min(l, x));
+	}
+
+	private double poids(double d) {
+		if (this.critere == Critere.OLS)
+			return 1;
+		double distance = Math.max(Math.abs(d), DISTANCE_MINIMALE_FM);
+		return 1 / (distance * distance);
+	}
+
+	/**
+	 * Ajoute aux sommes du noeud <code>d</code> de <code>destination</code> les sommes du noeud <code>s</code> de
+	 * <code>source</code>, mesurées depuis un noeud plus éloigné de <code>longueur</code>: chaque chemin c devient
+	 * c + longueur.
+	 */
+	private static void ajouterDecale(double[] destination, int d, double[] source, int s, double longueur) {
+		int i = SOMMES * d;
+		int j = SOMMES * s;
+		double w = source[j];
+		double wd = source[j + 1];
+		double wc = source[j + 2];
+		destination[i] += w;
+		destination[i + 1] += wd;
+		destination[i + 2] += wc + longueur * w;
+		destination[i + 3] += source[j + 3] + longueur * wd;
+		destination[i + 4] += source[j + 4] + 2 * longueur * wc + longueur * longueur * w;
+		destination[i + 5] += source[j + 5];
+	}
+
+	@SuppressWarnings("serial")
+	private static final class TachePlacement extends RecursiveAction {
+		private final TreePlacement placement;
+		private final List<String> sequences;
+		private final Placement[] placements;
+		private final int debut;
+		private final int fin;
+
+		TachePlacement(TreePlacement placement, List<String> sequences, Placement[] placements, int debut, int fin) {
+			this.placement = placement;
+			this.sequences = sequences;
+			this.placements = placements;
+			this.debut = debut;
+			this.fin = fin;
+		}
+
+		@Override
+		protected void compute() {
+			if (this.fin - this.debut <= SEQUENCES_PAR_TACHE) {
+				for (int i = this.debut; i < this.fin; i++)
+					this.placements[i] = this.placement.placer(this.sequences.get(i));
+				return;
+			}
+			int milieu = (this.debut + this.fin) >>> 1;
+			invokeAll(new TachePlacement(this.placement, this.sequences, this.placements, this.debut, milieu),
+					new TachePlacement(this.placement, this.sequences, this.placements, milieu, this.fin));
+		}
+	}
+}
@@ -0,0 +1,233 @@
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Vérifie que les matrices des distances lues ou mises à jour par {@link DistanceCache} sont identiques, au bit près, à celles
+ * calculées par {@link DistanceMatrixBuilder}:
+ * <ol>
+ * 		<li>lecture d'un fichier du cache ({@link DistanceCache#charger(BinTree)}) par un arbre qui liste les protéines dans un
+ * 			autre ordre, ou seulement une partie d'entre elles;</li>
+ * 		<li>mise à jour après l'ajout, le retrait et la modification de protéines
+ * 			({@link DistanceCache#mettreAJour(BinTree, EncodedAlignment, ForkJoinPool)}), en séquentiel et en parallèle;</li>
+ * 		<li>les deux formats du fichier: le triangle supérieur avec la matrice BLOSUM, symétrique, et la matrice complète avec
+ * 			une copie rendue asymétrique.</li>
+ * </ol>
+ * <p>Elle vérifie aussi que le répertoire ne garde pas le fichier remplacé par une mise à jour, ni plus de
+ * {@link DistanceCache#FICHIERS_MAX} fichiers. Les alignements sont générés à partir d'une graine dans un répertoire temporaire.
+ * Argument facultatif: le fichier ".txt" de la matrice BLOSUM (par défaut BLOSUM62.txt). Le programme quitte avec le code 1 au
+ * premier écart.</p>
+ */
+public class DistanceCacheCheck {
+
+	private static final String ACIDES = "ARNDCQEGHILKMFPSTWYV";
+
+	private static final int LONGUEUR = 300;
+
+	private static String blosum;
+	private static HashMap<String, Integer> tableIndex;
+	private static SplittableRandom aleatoire = new SplittableRandom(1);
+
+	public static void main(String[] args) throws IOException {
+		blosum = args.length > 0 ? args[0] : "BLOSUM62.txt";
+		Object[] result = PhylogenyNeighborJoining.getBlosum(blosum);
+		@SuppressWarnings("unchecked")
+		HashMap<String, Integer> table = (HashMap<String, Integer>) result[0];
+		tableIndex = table;
+		double[][] matriceMutation = (double[][]) result[1];
+
+		/* La même matrice avec un coût A -> R différent du coût R -> A: le cache enregistre alors la matrice complète */
+		double[][] asymetrique = new double[matriceMutation.length][];
+		for (int a = 0; a < matriceMutation.length; a++)
+			asymetrique[a] = matriceMutation[a].clone();
+		asymetrique[tableIndex.get("A")][tableIndex.get("R")] += 1;
+
+		Path temporaire = Files.createTempDirectory("cache-njdm");
+		ForkJoinPool pool = new ForkJoinPool(4);
+		try {
+			verifier(temporaire.resolve("triangle"), matriceMutation, pool);
+			verifier(temporaire.resolve("complete"), asymetrique, pool);
+		}
+		finally {
+			pool.shutdown();
+			supprimer(temporaire);
+		}
+		System.out.println("Lectures et mises à jour du cache: identiques au calcul complet.");
+	}
+
+	/**
+	 * Fait évoluer un fichier "*.fa" sur plusieurs versions avec un même répertoire de cache, en comparant à chaque exécution
+	 * la matrice obtenue par le cache et la matrice calculée.
+	 */
+	private static void verifier(Path repertoire, double[][] matriceMutation, ForkJoinPool pool) throws IOException {
+		Files.createDirectories(repertoire);
+		String format = repertoire.getFileName().toString();
+
+		/* Version 1: 60 protéines */
+		LinkedHashMap<String, String> proteines = new LinkedHashMap<String, String>();
+		for (int i = 0; i < 60; i++)
+			proteines.put("P" + i, sequence());
+		ArrayList<String> noms = new ArrayList<String>(proteines.keySet());
+		Path fa = ecrireFasta(repertoire, "v1", proteines);
+		executer(repertoire, fa, matriceMutation, melanger(noms, noms.size()), null, "calcul", format + ", version 1");
+		executer(repertoire, fa, matriceMutation, melanger(noms, noms.size()), null, "charger", format + ", relecture");
+		executer(repertoire, fa, matriceMutation, melanger(noms, 25), null, "charger", format + ", sous-ensemble");
+
+		/* Version 2: deux protéines retirées, quatre ajoutées et trois modifiées */
+		proteines.remove("P0");
+		proteines.remove("P1");
+		for (int i = 0; i < 4; i++)
+			proteines.put("N" + i, sequence());
+		for (String nom : new String[] {"P5", "P10", "P15"})
+			proteines.put(nom, muter(proteines.get(nom)));
+		noms = new ArrayList<String>(proteines.keySet());
+		fa = ecrireFasta(repertoire, "v2", proteines);
+		executer(repertoire, fa, matriceMutation, melanger(noms, noms.size()), null, "mise à jour", format + ", version 2");
+		verifierFichiers(repertoire, 1, format + ", version 2");
+		executer(repertoire, fa, matriceMutation, melanger(noms, 30), null, "charger", format + ", version 2 relue");
+
+		/* Version 3, mise à jour en parallèle: une protéine ajoutée et une modifiée */
+		proteines.put("N4", sequence());
+		proteines.put("P20", muter(proteines.get("P20")));
+		noms = new ArrayList<String>(proteines.keySet());
+		fa = ecrireFasta(repertoire, "v3", proteines);
+		executer(repertoire, fa, matriceMutation, melanger(noms, noms.size()), pool, "mise à jour", format + ", version 3");
+		verifierFichiers(repertoire, 1, format + ", version 3");
+
+		/* D'autres jeux de protéines, sans protéine commune: seuls les plus récents sont gardés */
+		for (int k = 0; k < DistanceCache.FICHIERS_MAX + 2; k++) {
+			LinkedHashMap<String, String> jeu = new LinkedHashMap<String, String>();
+			for (int i = 0; i < 8; i++)
+				jeu.put("J" + k + "_" + i, sequence());
+			ArrayList<String> nomsJeu = new ArrayList<String>(jeu.keySet());
+			Path faJeu = ecrireFasta(repertoire, "j" + k, jeu);
+			executer(repertoire, faJeu, matriceMutation, melanger(nomsJeu, nomsJeu.size()), null, "calcul", format + ", jeu " + k);
+		}
+		verifierFichiers(repertoire, DistanceCache.FICHIERS_MAX, format + ", jeux");
+	}
+
+	/**
+	 * Exécute les étapes du cache comme le programme (lecture, sinon mise à jour, sinon calcul complet, puis enregistrement)
+	 * et compare la matrice obtenue à celle de {@link DistanceMatrixBuilder}.
+	 *
+	 * @param attendu
+	 * 		  l'étape qui doit fournir la matrice: "charger", "mise à jour" ou "calcul"
+	 */
+	private static void executer(Path repertoire, Path fa, double[][] matriceMutation, String newick, ForkJoinPool pool,
+			String attendu, String cas) throws IOException {
+		BinTree arbre = NewickReader.lire(newick);
+		DistanceCache cache = new DistanceCache(repertoire, fa.toString(), blosum);
+		String etape = "charger";
+		Object[] objets = cache.charger(arbre);
+		if (objets == null) {
+			EncodedAlignment alignement = EncodedAlignment.fromLeaves(arbre.getLeavesNode(),
+					FastaReader.lireSequences(tableIndex, fa.toString(), null), matriceMutation);
+			etape = "mise à jour";
+			objets = cache.mettreAJour(arbre, alignement, pool);
+			if (objets == null) {
+				etape = "calcul";
+				objets = DistanceMatrixBuilder.matriceDistance(arbre, alignement, null, null, false);
+			}
+			cache.enregistrer(arbre, alignement, (double[][]) objets[1]);
+		}
+		if (!etape.equals(attendu))
+			echec(cas + ": la matrice vient de l'étape \"" + etape + "\" au lieu de \"" + attendu + "\".");
+
+		/* La matrice calculée, pour un autre exemplaire du même arbre */
+		BinTree reference = NewickReader.lire(newick);
+		EncodedAlignment alignement = EncodedAlignment.fromLeaves(reference.getLeavesNode(),
+				FastaReader.lireSequences(tableIndex, fa.toString(), null), matriceMutation);
+		double[][] attendue = (double[][]) DistanceMatrixBuilder.matriceDistance(reference, alignement, null, null, false)[1];
+
+		@SuppressWarnings("unchecked")
+		HashMap<Integer, Node> tableNoeud = (HashMap<Integer, Node>) objets[0];
+		double[][] obtenue = (double[][]) objets[1];
+		ArrayList<Node> feuilles = reference.getLeavesNode();
+		if (obtenue.length != attendue.length)
+			echec(cas + ": " + obtenue.length + " lignes au lieu de " + attendue.length + ".");
+		for (int i = 0; i < attendue.length; i++) {
+			if (!tableNoeud.get(i).getProt().equals(feuilles.get(i).getProt()))
+				echec(cas + ": la ligne " + i + " est celle de " + tableNoeud.get(i).getProt() + " au lieu de " + feuilles.get(i).getProt() + ".");
+			for (int j = 0; j < attendue.length; j++)
+				if (Double.doubleToRawLongBits(obtenue[i][j]) != Double.doubleToRawLongBits(attendue[i][j]))
+					echec(cas + ": distance (" + i + ", " + j + ") " + obtenue[i][j] + " au lieu de " + attendue[i][j] + ".");
+		}
+	}
+
+	/**
+	 * Vérifie que le répertoire contient au plus <code>maximum</code> fichiers de matrice.
+	 */
+	private static void verifierFichiers(Path repertoire, int maximum, String cas) throws IOException {
+		int n = 0;
+		try (DirectoryStream<Path> fichiers = Files.newDirectoryStream(repertoire, "*.njdm")) {
+			for (Path fichier : fichiers)
+				n++;
+		}
+		if (n > maximum)
+			echec(cas + ": le cache contient " + n + " fichiers au lieu d'au plus " + maximum + ".");
+	}
+
+	/**
+	 * @return un arbre en chenille sur <code>nb</code> protéines tirées au hasard parmi <code>noms</code>.
+	 */
+	private static String melanger(List<String> noms, int nb) {
+		ArrayList<String> tirage = new ArrayList<String>(noms);
+		for (int i = tirage.size() - 1; i > 0; i--)
+			Collections.swap(tirage, i, aleatoire.nextInt(i + 1));
+		StringBuilder newick = new StringBuilder(tirage.get(0));
+		for (int i = 1; i < nb; i++)
+			newick.insert(0, '(').append(',').append(tirage.get(i)).append(')');
+		return newick.append(';').toString();
+	}
+
+	private static String sequence() {
+		StringBuilder sequence = new StringBuilder(LONGUEUR);
+		for (int c = 0; c < LONGUEUR; c++)
+			sequence.append(ACIDES.charAt(aleatoire.nextInt(ACIDES.length())));
+		return sequence.toString();
+	}
+
+	/**
+	 * @return la séquence avec quelques acides aminés remplacés.
+	 */
+	private static String muter(String sequence) {
+		char[] acides = sequence.toCharArray();
+		for (int k = 0; k < 5; k++) {
+			int c = aleatoire.nextInt(acides.length);
+			acides[c] = ACIDES.charAt((ACIDES.indexOf(acides[c]) + 1 + aleatoire.nextInt(ACIDES.length() - 1)) % ACIDES.length());
+		}
+		return new String(acides);
+	}
+
+	private static Path ecrireFasta(Path repertoire, String nom, Map<String, String> proteines) throws IOException {
+		Path fichier = repertoire.resolve(nom + ".fa");
+		try (BufferedWriter ecrivain = Files.newBufferedWriter(fichier, StandardCharsets.UTF_8)) {
+			for (Map.Entry<String, String> entree : proteines.entrySet()) {
+				ecrivain.write(">" + entree.getKey());
+				ecrivain.newLine();
+				ecrivain.write(entree.getValue());
+				ecrivain.newLine();
+			}
+		}
+		return fichier;
+	}
+
+	private static void supprimer(Path repertoire) throws IOException {
+		try (DirectoryStream<Path> contenu = Files.newDirectoryStream(repertoire)) {
+			for (Path fichier : contenu) {
+				if (Files.isDirectory(fichier))
+					supprimer(fichier);
+				else
+					Files.delete(fichier);
+			}
+		}
+		Files.delete(repertoire);
+	}
+
+	private static void echec(String message) {
+		System.out.println("ÉCHEC: " + message);
+		System.exit(1);
+	}
+}
@@ -0,0 +1,75 @@
+import java.util.*;
+
+/**
+ * Vérifie que le noyau SIMD ({@link EncodedAlignment#noyauVectoriel()}) donne exactement les mêmes résultats que le calcul
+ * scalaire:
+ * <ol>
+ * 		<li>la matrice des distances des séquences du premier arbre, calculée avec et sans le noyau, est identique au bit près;</li>
+ * 		<li>les scores de séquences aléatoires de longueurs variées, y compris plus courtes qu'un vecteur et assez longues pour
+ * 			reporter plusieurs fois les sommes des voies, sont égaux à la somme scalaire.</li>
+ * </ol>
+ * <p>Les sources de <code>src</code>, <code>simd/src</code> et <code>test/src</code> doivent être compilées ensemble avec l'option
+ * <code>--add-modules jdk.incubator.vector</code>, qui est aussi donnée à l'exécution. Arguments facultatifs: les fichiers
+ * ".nw", ".fa" et ".txt" (par défaut arbres.nw, proteines.fa et BLOSUM62.txt). Le programme quitte avec le code 1 au premier
+ * écart.</p>
+ */
+public class VectorKernelCheck {
+
+	public static void main(String[] args) {
+		String arbres = args.length > 0 ? args[0] : "arbres.nw";
+		String fasta = args.length > 1 ? args[1] : "proteines.fa";
+		String blosum = args.length > 2 ? args[2] : "BLOSUM62.txt";
+
+		EncodedAlignment.Noyau noyau = EncodedAlignment.noyauVectoriel();
+		if (noyau == null)
+			echec("Le noyau SIMD n'est pas disponible (--add-modules jdk.incubator.vector, sources de simd/src).");
+
+		/* Matrice des distances du pipeline, scalaire puis SIMD */
+		Object[] result = PhylogenyNeighborJoining.getBlosum(blosum);
+		@SuppressWarnings("unchecked")
+		HashMap<String, Integer> tableIndex = (HashMap<String, Integer>) result[0];
+		double[][] matriceMutation = (double[][]) result[1];
+		BinTree arbre = PhylogenyNeighborJoining.getArbres(arbres).get(0);
+		try {
+			arbre.setSeqToLeaves(FastaReader.getProteins(tableIndex, fasta, null));
+		}
+		catch (Exception e) {
+			echec("Le fichier " + fasta + " ne peut être lu: " + e);
+		}
+		double[][] scalaire = (double[][]) DistanceMatrixBuilder.matriceDistance(arbre, matriceMutation, tableIndex, null, null, false)[1];
+		double[][] vectoriel = (double[][]) DistanceMatrixBuilder.matriceDistance(arbre, matriceMutation, tableIndex, null, null, true)[1];
+		for (int i = 0; i < scalaire.length; i++)
+			for (int j = 0; j < scalaire.length; j++)
+				if (Double.doubleToRawLongBits(scalaire[i][j]) != Double.doubleToRawLongBits(vectoriel[i][j]))
+					echec("Distance (" + i + ", " + j + "): " + scalaire[i][j] + " en scalaire, " + vectoriel[i][j] + " en SIMD.");
+		System.out.println("Matrice des distances de " + fasta + " (" + scalaire.length + " séquences): identique.");
+
+		/* Scores de séquences aléatoires, avec une matrice de coûts aux bornes permises */
+		int taille = tableIndex.size();
+		SplittableRandom aleatoire = new SplittableRandom(1);
+		int[] matrice = new int[taille * taille];
+		for (int k = 0; k < matrice.length; k++)
+			matrice[k] = aleatoire.nextInt(-(1 << 20) + 1, 1 << 20);
+		int[] longueurs = {0, 1, 7, 8, 9, 31, 64, 1000, 20000, 70001};
+		for (int longueur : longueurs) {
+			byte[] seq1 = new byte[longueur];
+			byte[] seq2 = new byte[longueur];
+			for (int c = 0; c < longueur; c++) {
+				seq1[c] = (byte) aleatoire.nextInt(taille);
+				seq2[c] = (byte) aleatoire.nextInt(taille);
+			}
+			long attendu = 0;
+			for (int c = 0; c < longueur; c++)
+				attendu += matrice[seq1[c] * taille + seq2[c]];
+			long obtenu = noyau.scoreEntier(matrice, taille, seq1, seq2);
+			if (obtenu != attendu)
+				echec("Score de longueur " + longueur + ": " + attendu + " en scalaire, " + obtenu + " en SIMD.");
+		}
+		System.out.println("Scores de " + longueurs.length + " paires de séquences aléatoires: identiques.");
+	}
+
+	private static void echec(String message) {
+		System.out.println("ÉCHEC: " + message);
+		System.exit(1);
+	}
+}